@@ -7,5 +7,11 @@ for jar in $(ls $DIR/lib/*.jar); do
     CLASSPATH=$CLASSPATH:$jar
 done
 
-export CLASSPATH
+# use the class data sharing archive created by "ant cds", unless the classes have been compiled since
+CDS_OPTS=
+if [ -f $DIR/build/generator.jsa ] && [ -z "$(find $DIR/classes -newer $DIR/build/generator.jar -print -quit)" ]; then
+    CLASSPATH=$(cat $DIR/build/generator.classpath)
+    CDS_OPTS="-XX:SharedArchiveFile=$DIR/build/generator.jsa -Xshare:auto"
+fi
 
+export CLASSPATH
@@ -2,19 +2,44 @@
  *
  */
 
-import org.apache.commons.math.stat.descriptive.DescriptiveStatistics;
-import org.griphyn.vdl.dax.PseudoText;
+import gnu.getopt.Getopt;
+import gnu.getopt.LongOpt;
+import simulation.generator.CorpusManifest;
+import simulation.generator.MemoryAwareScheduler;
 import simulation.generator.app.*;
+import simulation.generator.util.DistributionSketch;
+import simulation.generator.util.LatinHypercube;
 import simulation.generator.util.LinearModel;
+import simulation.generator.util.Misc;
 
-import java.io.File;
-import java.io.FileOutputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Locale;
+import java.util.Queue;
 import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
 /**
  * Created by Carl Witt on 11/28/18.
  *
@@ -22,18 +47,247 @@ import java.util.Random;
  */
 public class GenerateCorpus {
 
+    /** How the random parameters of the workflow instances of one configuration (class, num tasks) are chosen. */
+    enum Sampling {
+        /** Each instance draws its parameters independently. */
+        RANDOM,
+        /** The parameters of the instances form a latin hypercube design, see {@link LatinHypercube}. */
+        LHS
+    }
+
+    /** The seed from which the parameters and the seeds of all workflow instances are derived. */
+    private static final long SEED = 1L;
+
+    // fixed middle ground between optimistic (0) and pessimistic (1)
+    private static final double peakMemoryRelativeTime = 0.5;
+    // normally distributed and capped to range [0, 1]
+//    double peakMemoryRelativeTime = Math.min(1, Math.max(0, random.nextDouble()*0.7+0.3));
+
+    /** A generated workflow, along with the console output produced while generating it. */
+    private static class Instance {
+        final String filename;
+        final long seed;
+        /** See {@link WorkflowStatistics#toCsvRow(String)} */
+        final String statisticsRow;
+        final String log;
+        /** Completes with the checksum of the file when the workflow has been written to disk. */
+        final Future<Long> written;
+
+        Instance(String filename, long seed, String statisticsRow, String log, Future<Long> written) {
+            this.filename = filename;
+            this.seed = seed;
+            this.statisticsRow = statisticsRow;
+            this.log = log;
+            this.written = written;
+        }
+    }
+
+    /** Writes a workflow to a stream. */
+    private interface Printer {
+        void print(OutputStream out) throws Exception;
+    }
+
+    /**
+     * The topology of a workflow that is reused by all instances of a configuration (class, num tasks) in template mode.
+     * Each instance overwrites the runtimes, input sizes and memory annotations of the template's tasks and then rebuilds
+     * the statistics, such that an instance does not depend on the instances the thread generated before.
+     */
+    private static class Template {
+        final String key;
+        final AbstractApplication app;
+        /** The tasks of each task type, in the order of {@link AbstractApplication#getTasktypes()} */
+        final AppJob[][] tasks;
+
+        Template(String key, AbstractApplication app) {
+            this.key = key;
+            this.app = app;
+            String[] tasktypes = app.getTasktypes();
+            tasks = new AppJob[tasktypes.length][];
+            for (int t = 0; t < tasktypes.length; t++) tasks[t] = app.getTasks(tasktypes[t]);
+        }
+    }
+
+    /** The summary file that describes all generated workflows (e.g., their number of tasks, memory models, etc.) */
+    private static final String STATISTICS_FILE = "workflowStatistics.csv";
+    /** The summary file of shard i of N, see {@link #mergeShards(Path, int)} */
+    private static final String SHARD_STATISTICS_FILE = "workflowStatistics.shard-%s-of-%s.csv";
+    /** The summary of all workflows of the corpus, merged from the peak_memory_sketch column of the statistics file. */
+    private static final String CORPUS_STATISTICS_FILE = "corpusStatistics.csv";
+    private static final String CORPUS_STATISTICS_HEADER = "num_workflows,num_tasks,peak_memory_mean_mb,peak_memory_sd_mb,peak_memory_p50_mb,peak_memory_p95_mb,peak_memory_p99_mb,maximum_peak_memory_mb";
+    /** Records the completed workflows, see {@link CorpusManifest} */
+    private static final String MANIFEST_FILE = "manifest.csv";
+    private static final String SHARD_MANIFEST_FILE = "manifest.shard-%s-of-%s.csv";
+    /** The option in the manifest that records the number of workflows of the run (or shard), see {@link #mergeShards(Path, int)} */
+    private static final String WORKFLOWS_OPTION = "workflows=";
+
+    // retained heap of a generated workflow after garbage collection, fitted to the applications in this package with
+    // 1000 to 16000 tasks (64 bit JVM with compressed pointers): about 1900 bytes per task for Cybershake (3 file
+    // references per task), 2000 to 2400 for Ligo and Montage (6.5) and 16900 for Sipht (67)
+    static final double BYTES_PER_TASK = 1100;
+    static final double BYTES_PER_FILE_REFERENCE = 240;
+    /**
+     * Annotating, computing statistics and serializing allocate more than the workflow retains: the smallest heap that
+     * generates and writes a workflow is about 1.15 times its retained heap. The rest leaves room for the garbage collector.
+     */
+    static final double PEAK_FACTOR = 1.5;
+    /** The number of tasks of the workflow used to measure the file references per task of an application, see {@link #estimateHeapBytes(Class, int)} */
+    private static final int PROBE_SIZE = 200;
+    private static final Map<Class<? extends AbstractApplication>, Double> fileReferencesPerTaskCache = new HashMap<>();
+
+    /** The template last used by the current thread. Instances are submitted ordered by configuration, so a thread rarely builds a template twice. */
+    private static final ThreadLocal<Template> templates = new ThreadLocal<>();
+
+    private static void usage(int exitCode) {
+        String msg = "GenerateCorpus [-h] [options] <target directory>" +
+                "\n--instances | -i Number of workflow instances per application and workflow size (default 100)." +
+                "\n--sampling | -s How the memory models and target spacetimes of the instances are chosen:" +
+                "\n                  random (default, independently) or lhs (latin hypercube design over the instances)." +
+                "\n--tibweeks | -t Target spacetime in TiB-weeks, either a value or a range min:max sampled log-uniformly (default 1)." +
+                "\n--parallelism | -p Maximum number of workflows generated concurrently (default number of processors)." +
+                "\n                  Large workflows are only started while their estimated heap usage fits into the heap." +
+                "\n                  The output does not depend on the parallelism." +
+                "\n--heap-fraction | -M Fraction of the maximum heap size that concurrently generated workflows may use (default 0.8)." +
+                "\n--writers | -w Number of threads writing finished workflows to disk (default 2)." +
+                "\n--template | -T Build the topology of each application and workflow size once and only re-sample runtimes," +
+                "\n                  input sizes and peak memory consumptions for each instance." +
+                "\n--shard | -S i/N Only generate the instances with ordinal number i modulo N (0 <= i < N), e.g., to distribute a corpus" +
+                "\n                  over several processes. The instances are the same as in a run without shards." +
+                "\n                  Statistics are written to " + String.format(SHARD_STATISTICS_FILE, "i", "N") + "." +
+                "\n--records | -r csv|binary Also write one record per task (id, type, input size, peak memory, runtime) of each workflow" +
+                "\n                  to <workflow>.tasks.csv or <workflow>.tasks.bin, see TaskRecordWriter." +
+                "\n--ranks | -R MB/s Annotate each task with its upward rank, top level and slack after normalization, transferring" +
+                "\n                  files at the given bandwidth in megabytes per second (Infinity to ignore transfers)." +
+                "\n                  The ranks are also added to the task records." +
+                "\n--statistics-only | -X Only compute the statistics of the workflows, without writing them. The rows equal those of" +
+                "\n                  the written workflows, except that they are named after the instance (e.g., Montage.n.1000.0)" +
+                "\n                  and the structural statistics are not computed. Not with -T, -r or -R." +
+                "\n--merge | -m N  Merge the statistics files of N shards in the target directory into " + STATISTICS_FILE + " and" +
+                "\n                  the quantiles of the peak memory of all tasks into " + CORPUS_STATISTICS_FILE + ", then exit." +
+                "\n                  Fails if a shard has fewer workflows than its manifest says it generates." +
+                "\n--help | -h Print help message." +
+                "\n\nCompleted workflows are recorded in " + MANIFEST_FILE + " (one per shard). Running again with the same options" +
+                "\nand target directory only generates the workflows that are missing.";
+
+        System.out.println(msg);
+        System.exit(exitCode);
+    }
+
     public static void main(String[] args) throws Exception {
 
+        LongOpt[] longopts = new LongOpt[13];
+        longopts[0] = new LongOpt("instances", LongOpt.REQUIRED_ARGUMENT, null, 'i');
+        longopts[1] = new LongOpt("sampling", LongOpt.REQUIRED_ARGUMENT, null, 's');
+        longopts[2] = new LongOpt("tibweeks", LongOpt.REQUIRED_ARGUMENT, null, 't');
+        longopts[3] = new LongOpt("parallelism", LongOpt.REQUIRED_ARGUMENT, null, 'p');
+        longopts[4] = new LongOpt("writers", LongOpt.REQUIRED_ARGUMENT, null, 'w');
+        longopts[5] = new LongOpt("template", LongOpt.NO_ARGUMENT, null, 'T');
+        longopts[6] = new LongOpt("shard", LongOpt.REQUIRED_ARGUMENT, null, 'S');
+        longopts[7] = new LongOpt("merge", LongOpt.REQUIRED_ARGUMENT, null, 'm');
+        longopts[8] = new LongOpt("heap-fraction", LongOpt.REQUIRED_ARGUMENT, null, 'M');
+        longopts[9] = new LongOpt("help", LongOpt.NO_ARGUMENT, null, 'h');
+        longopts[10] = new LongOpt("records", LongOpt.REQUIRED_ARGUMENT, null, 'r');
+        longopts[11] = new LongOpt("ranks", LongOpt.REQUIRED_ARGUMENT, null, 'R');
+        longopts[12] = new LongOpt("statistics-only", LongOpt.NO_ARGUMENT, null, 'X');
+
+        Getopt g = new Getopt("GenerateCorpus", args, "i:s:t:p:w:TS:m:M:r:R:Xh", longopts);
+        g.setOpterr(false);
+
+        // number of workflow instances per configuration (class, num tasks)
+        // since each workflow has randomized runtimes, memory consumptions, etc. we want
+        // more than one instance per configuration
+        int numInstances = 100;
+        Sampling sampling = Sampling.RANDOM;
         // scale workflows to this area (Terabyte-Weeks as measured in accumulated runtime times accumulated peak memory usage)
-        double targetTibWeeks = 1.0;
+        // if min and max differ, each instance gets a target in that range
+        double minTargetTibWeeks = 1.0;
+        double maxTargetTibWeeks = 1.0;
+        int parallelism = Runtime.getRuntime().availableProcessors();
+        double heapFraction = 0.8;
+        int numWriters = 2;
+        boolean template = false;
+        // generate only every numShards-th instance, starting with shardIndex
+        int shardIndex = 0;
+        int numShards = 1;
+        // the number of shards to merge, if any
+        int merge = 0;
+        // the format of the per task records, null to write none
+        TaskRecordWriter.Format records = null;
+        // the bandwidth used to annotate ranks in megabytes per second, NaN to annotate none
+        double ranksMegabytesPerSecond = Double.NaN;
+        // whether to write only the statistics of the workflows
+        boolean statisticsOnly = false;
+
+        int c;
+        while ((c = g.getopt()) != -1) {
+            switch (c) {
+                case 'i':
+                    numInstances = Integer.parseInt(g.getOptarg());
+                    break;
+                case 's':
+                    sampling = Sampling.valueOf(g.getOptarg().toUpperCase());
+                    break;
+                case 't':
+                    String[] range = g.getOptarg().split(":");
+                    minTargetTibWeeks = Double.parseDouble(range[0]);
+                    maxTargetTibWeeks = Double.parseDouble(range[range.length - 1]);
+                    break;
+                case 'p':
+                    parallelism = Integer.parseInt(g.getOptarg());
+                    break;
+                case 'M':
+                    heapFraction = Double.parseDouble(g.getOptarg());
+                    break;
+                case 'w':
+                    numWriters = Integer.parseInt(g.getOptarg());
+                    break;
+                case 'T':
+                    template = true;
+                    break;
+                case 'S':
+                    String[] shard = g.getOptarg().split("/");
+                    if (shard.length != 2) usage(1);
+                    shardIndex = Integer.parseInt(shard[0]);
+                    numShards = Integer.parseInt(shard[1]);
+                    if (shardIndex < 0 || shardIndex >= numShards) usage(1);
+                    break;
+                case 'm':
+                    merge = Integer.parseInt(g.getOptarg());
+                    break;
+                case 'r':
+                    records = TaskRecordWriter.Format.valueOf(g.getOptarg().toUpperCase());
+                    break;
+                case 'R':
+                    ranksMegabytesPerSecond = Double.parseDouble(g.getOptarg());
+                    if ( ! (ranksMegabytesPerSecond > 0)) usage(1);
+                    break;
+                case 'X':
+                    statisticsOnly = true;
+                    break;
+                case 'h':
+                    usage(0);
+                    break;
+                default:
+                    usage(1);
+            }
+        }
+        if (g.getOptind() != args.length - 1) usage(1);
+        // neither the template nor the task records nor the ranks exist without the tasks
+        if (statisticsOnly && (template || records != null || ! Double.isNaN(ranksMegabytesPerSecond))) usage(1);
 
         // TODO the distributions of the workflow generator (by Bharathi) do not exactly match the published numbers in Juve 2013 (FGCS)
         // for instance the TmpltBank task type has a mean runtime of 20 seconds in the generator vs 500 sec in the publication
         // also, some of the workflow's task types as published do not appear in the simulation
 
-        Path targetDir = Paths.get(args[0]);
-        // doesn't work.
-        if(! targetDir.toFile().exists() && ! targetDir.toFile().mkdir()){
+        Path targetDir = Paths.get(args[g.getOptind()]);
+        if (merge > 0) {
+            mergeShards(targetDir, merge);
+            return;
+        }
+
+        // shards started at the same time may create the directory concurrently
+        try {
+            Files.createDirectories(targetDir);
+        } catch (IOException e) {
             System.out.println("Couldn't create dir "+targetDir);
             System.out.println("targetDir.toFile() = " + targetDir.toFile());
             System.exit(-1);
@@ -43,7 +297,15 @@ public class GenerateCorpus {
         // avoid mixing up commas and dots when converting floating points to string (german vs. english locales)
         Locale.setDefault(new Locale("EN_us")); //Locale.setDefault();//setDefault(new Locale());
 
-        Random random = new Random(1L);
+        // the workflows recorded in the manifest are skipped
+        String manifestFile = numShards == 1 ? MANIFEST_FILE : String.format(SHARD_MANIFEST_FILE, shardIndex, numShards);
+        String options = String.format(Locale.US, "seed=%d,instances=%d,sampling=%s,tibweeks=%s:%s,template=%s", SEED, numInstances, sampling, minTargetTibWeeks, maxTargetTibWeeks, template);
+        // a workflow listed in the manifest is resumed without writing its task records, so runs with and without records must not share a manifest
+        if (records != null) options += ",records=" + records;
+        if ( ! Double.isNaN(ranksMegabytesPerSecond)) options += ",ranks=" + ranksMegabytesPerSecond;
+        if (statisticsOnly) options += ",statistics-only=true";
+
+        Random random = new Random(SEED);
         // workflow classes
         List<Class<? extends AbstractApplication>> applicationClasses = new LinkedList<>();
         applicationClasses.add(Cybershake.class);
@@ -61,112 +323,352 @@ public class GenerateCorpus {
 //                10000,
         };
 
-        // number of workflow instances per configuration (class, num tasks)
-        // since each workflow has randomized runtimes, memory consumptions, etc. we want
-        // more than one instance per configuration
-        int numInstances = 100;
+        // the number of workflows of this shard, checked when merging the shards
+        int numWorkflows = applicationClasses.size() * workflowSizes.length * numInstances;
+        options += "," + WORKFLOWS_OPTION + (numWorkflows - shardIndex + numShards - 1) / numShards;
+        CorpusManifest manifest = new CorpusManifest(targetDir.resolve(manifestFile), options);
 
         // create a new workflow for each configuration (workflow type, num tasks, instance id)
-        // write the dax output file
-        // assemble workflow statistics
+        // each instance is generated independently from its own seed, such that the result does not depend on the number of threads
+        MemoryAwareScheduler executor = new MemoryAwareScheduler(parallelism, heapFraction);
+        // the generators hand finished workflows to the writers, such that generating and writing overlap.
+        // at most a few workflows wait to be written: if the queue is full, the generator writes the workflow itself, which throttles generation to the speed of the disk.
+        ExecutorService writers = new ThreadPoolExecutor(numWriters, numWriters, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(2 * numWriters), new ThreadPoolExecutor.CallerRunsPolicy());
+        Queue<Future<Instance>> instances = new ArrayDeque<>();
+        // the position of the instance in a sequential run, determines the shard
+        int ordinal = 0;
         for(Class<? extends AbstractApplication> appClass : applicationClasses){
-            for (Integer workflowSize : workflowSizes) {
-                for (int instanceID = 0; instanceID < numInstances; instanceID++) {
-
-                    WorkflowStatistics statistics;
-                    AbstractApplication app;
-
-                    // create a new Ligo/Cybershake/etc. object
-                    app = appClass.newInstance();
-                    // create the workflow topology and sample the runtimes
-                    app.generateWorkflow("-n", workflowSize.toString());
-
-                    // generate random memory model for each task type
-                    for (String tasktype : app.getTasktypes()) {
-
-                        // get tasks of current type
-                        AppJob[] tasks = app.getTasks(tasktype);
-
-                        // random memory model
-                        double minFileSize = 10e3;
-                        double maxMemConsumption = 1.5e12;
-                        double linearTaskChance = 0.5;
-                        double minSlope = 0.2;
-                        double maxSlope = 2;
-                        LinearModel linearModel = LinearModel.randomMemoryModel(tasks.length, minFileSize, maxMemConsumption, linearTaskChance, minSlope, maxSlope);
-
-                        app.memoryModels.put(tasktype, linearModel);
-
-                        // annotate tasks of current type
-                        for (int i = 0; i < tasks.length; i++) {
-
-                            // add memory consumption both as XML element attribute and (as a dax specification compatibility hack, as a separate <argument> element)
-                            long peakMemoryConsumptionByte = (long) linearModel.getSamples()[1][i];
-
-                            // fixed middle ground between optimistic (0) and pessimistic (1)
-                            double peakMemoryRelativeTime = 0.5;
-                            // normally distributed and capped to range [0, 1]
-//                            double peakMemoryRelativeTime = Math.min(1, Math.max(0, random.nextDouble()*0.7+0.3));
-
-                            tasks[i].addAnnotation("peak_mem_bytes", Long.toString(peakMemoryConsumptionByte));
-                            tasks[i].addArgument(new PseudoText(String.format("peak_mem_bytes=%d,peak_memory_relative_time=%.3f", peakMemoryConsumptionByte, peakMemoryRelativeTime)));
-
-                            double[] filesizes = linearModel.getSamples()[0];
-                            if (tasks[i].getInputs().size() == 0) {
-                                System.err.printf("AppGeneratorTest.generateWorkflows: %s (%s.n.%s.%s.dax) has zero input files to distribute input size to%n", tasktype, appClass.getSimpleName(), workflowSize, instanceID);
-                                continue;
-                            }
-                            long averageInputSize = ((long) filesizes[i]) / tasks[i].getInputs().size();
-                            tasks[i].getInputs().forEach(appFilename -> appFilename.setSize(averageInputSize));
-                        }
-                    }
-                    statistics = app.getStatistics();
-
-                    // scale the workflows to a uniform amount of resources
-                    double tibWeeks = statistics.totalSpacetimeMegabyteSeconds / 1024. / 1024. / 3600. / 24. / 7.;
-                    System.out.println("TBw before normalization = " + tibWeeks);
-
-                    double scaleFactor = tibWeeks / targetTibWeeks;
-                    for(String type: app.getTasktypes()){
-                        for(AppJob task: app.getTasks(type)){
-                            double scaledRuntime = Double.parseDouble(task.getAnnotation("runtime")) / scaleFactor;
-                            task.addAnnotation("runtime", String.valueOf(scaledRuntime));
-                        }
-                    }
-
-                    // update app statistics
-                    statistics = app.getStatistics();
-                    double tibWeeks2 = statistics.totalSpacetimeMegabyteSeconds / 1024. / 1024. / 3600. / 24. / 7.;
-                    System.out.println("TBw after normalization = " + tibWeeks2);
-
-                    // write the workflow to text file (DAX format)
-                    String filename = String.format("%s.n.%d.%d.dax", app.getClass().getSimpleName(), statistics.numberOfTasks, instanceID);
-                    FileOutputStream fop = new FileOutputStream(new File(targetDir.resolve(filename).toString()));
-                    app.printWorkflow(fop);
-                    fop.close();
-
-                    // add this workflow's statistics to the corpus currently being generated for later writing a file that describes all workflows
-                    WorkflowStatistics.addStatistics(filename, statistics);
-
-                    for(String tasktype : app.getTasktypes()) {
-                        DescriptiveStatistics memory = statistics.memoryUsagesPerTaskType.get(tasktype);
-                        System.out.printf("%s,%s,%s,%s,%s,µ=%.2f,s=%.2f,peak = %.2f%n", app.getClass().getSimpleName(), workflowSize, instanceID, tasktype, statistics.numberOfTasksPerTaskType.get(tasktype), memory.getMean() / 1e9, memory.getStandardDeviation() / 1e9, memory.getMax() / 1e9);
+            for (int workflowSize : workflowSizes) {
+
+                // the parameters of all instances of this configuration: the memory model parameters for each task type and the target spacetime
+                int numTasktypes = appClass.getDeclaredConstructor().newInstance().getTasktypes().length;
+                int dimensions = numTasktypes * LinearModel.NUM_PARAMETERS + 1;
+                double[][] design = sampling == Sampling.LHS ?
+                        LatinHypercube.sample(numInstances, dimensions, random) :
+                        LatinHypercube.independent(numInstances, dimensions, random);
+                long heapEstimate = estimateHeapBytes(appClass, workflowSize);
+
+                for (int instanceID = 0; instanceID < numInstances; instanceID++, ordinal++) {
+                    // all shards compute all designs, such that the parameters of an instance are the same in each shard
+                    if (ordinal % numShards != shardIndex) continue;
+                    double[] parameters = design[instanceID];
+                    // the class name's hash code is stable across runs
+                    long seed = Misc.deriveSeed(SEED, appClass.getName().hashCode(), workflowSize, instanceID);
+                    int id = instanceID;
+                    double targetTibWeeks = minTargetTibWeeks * Math.pow(maxTargetTibWeeks / minTargetTibWeeks, parameters[dimensions - 1]);
+                    boolean reuseTopology = template;
+                    boolean onlyStatistics = statisticsOnly;
+                    TaskRecordWriter.Format recordFormat = records;
+                    double ranksBytesPerSecond = ranksMegabytesPerSecond * 1e6;
+                    CorpusManifest.Entry completed = manifest.get(seed);
+                    instances.add(executor.submit(heapEstimate, () -> {
+                        Instance instance = resume(completed, targetDir, onlyStatistics);
+                        return instance != null ? instance : generateInstance(appClass, workflowSize, id, parameters, targetTibWeeks, seed, reuseTopology, onlyStatistics, recordFormat, ranksBytesPerSecond, targetDir, writers);
+                    }));
+                }
+
+            } // workflow size
+
+        } // workflow type
+        executor.shutdown();
+
+        // collect the workflows in the order of a sequential run
+        // write summary file that describes all generated workflows (e.g., their number of tasks, memory models, etc.)
+        String statisticsFile = numShards == 1 ? STATISTICS_FILE : String.format(SHARD_STATISTICS_FILE, shardIndex, numShards);
+        // the peak memory of all tasks of the corpus, see mergeShards for a run with shards
+        DistributionSketch corpusPeakMemory = new DistributionSketch();
+        int numWorkflowsWritten = 0;
+        try (StatisticsWriter statisticsWriter = new StatisticsWriter(targetDir.resolve(statisticsFile)); CorpusManifest manifestWriter = manifest) {
+            while ( ! instances.isEmpty()) {
+                Instance instance = instances.poll().get();
+                long checksum = instance.written.get();
+                System.out.print(instance.log);
+                statisticsWriter.addRow(instance.statisticsRow);
+                corpusPeakMemory.merge(WorkflowStatistics.parsePeakMemorySketch(instance.statisticsRow));
+                numWorkflowsWritten++;
+                // the file is on disk, so the manifest can list it (again, if it has been regenerated)
+                CorpusManifest.Entry entry = manifestWriter.get(instance.seed);
+                if (entry == null || entry.checksum != checksum) manifestWriter.add(instance.filename, instance.seed, checksum, instance.statisticsRow);
+            }
+        } catch (ExecutionException e) {
+            executor.shutdownNow();
+            writers.shutdownNow();
+            throw new RuntimeException("Could not generate workflow.", e.getCause());
+        }
+        writers.shutdown();
+        if (numShards == 1) writeCorpusStatistics(targetDir, numWorkflowsWritten, corpusPeakMemory);
+
+    }
+
+    /**
+     * Generates a workflow, annotates it with peak memory consumptions and input sizes, scales it to the target spacetime and passes it to the writers.
+     * @param parameters the memory model parameters for each task type, see {@link LinearModel#randomMemoryModel(int, double, double, double, double, double, double[], long)}
+     * @param seed determines the topology, runtimes, memory consumptions, etc. of the workflow
+     * @param reuseTopology whether to re-sample the resource usage of the current thread's {@link Template} instead of generating a new workflow
+     * @param statisticsOnly whether to generate the workflow in {@link AbstractApplication#setStatisticsOnly(boolean) statistics only} mode and write nothing
+     * @param records the format of the task records written next to the workflow, null to write none
+     * @param ranksBytesPerSecond the bandwidth used to annotate the ranks of the tasks, see {@link AbstractApplication#annotateRanks(double)}, NaN to annotate none
+     * @param writers writes the workflow to the target directory
+     */
+    private static Instance generateInstance(Class<? extends AbstractApplication> appClass, int workflowSize, int instanceID, double[] parameters, double targetTibWeeks, long seed, boolean reuseTopology, boolean statisticsOnly, TaskRecordWriter.Format records, double ranksBytesPerSecond, Path targetDir, ExecutorService writers) throws Exception {
+
+        StringBuilder log = new StringBuilder();
+
+        AbstractApplication app;
+        AppJob[][] tasksByType;
+        if (reuseTopology) {
+            Template template = getTemplate(appClass, workflowSize);
+            app = template.app;
+            tasksByType = template.tasks;
+            Misc.setSeed(seed);
+            // the tasks draw their runtimes from the application's distributions, like a new workflow would
+            app.redrawRuntimes();
+        } else if (statisticsOnly) {
+            Misc.setSeed(seed);
+            app = appClass.getDeclaredConstructor().newInstance();
+            app.setStatisticsOnly(true);
+            // draws the same random numbers as a written workflow, such that the memory models below are the same
+            app.generateWorkflow("-n", Integer.toString(workflowSize));
+            tasksByType = null;
+        } else {
+            Misc.setSeed(seed);
+            // create a new Ligo/Cybershake/etc. object
+            app = appClass.getDeclaredConstructor().newInstance();
+            // create the workflow topology and sample the runtimes
+            app.generateWorkflow("-n", Integer.toString(workflowSize));
+            tasksByType = new AppJob[app.getTasktypes().length][];
+            for (int t = 0; t < tasksByType.length; t++) tasksByType[t] = app.getTasks(app.getTasktypes()[t]);
+        }
+
+        annotatePeakMemory(app, tasksByType, parameters, workflowSize, instanceID);
+        // the updates of the template's statistics removed the previous instance's values, which leaves rounding errors
+        if (reuseTopology) app.rebuildStatistics();
+        WorkflowStatistics statistics = app.getStatistics();
+
+        // scale the workflows to a uniform amount of resources
+        double tibWeeks = statistics.totalSpacetimeMegabyteSeconds / 1024. / 1024. / 3600. / 24. / 7.;
+        log.append("TBw before normalization = ").append(tibWeeks).append(System.lineSeparator());
+
+        double scaleFactor = tibWeeks / targetTibWeeks;
+        app.scaleRuntimes(null, 1 / scaleFactor);
+
+        // update app statistics
+        statistics = app.getStatistics();
+        double tibWeeks2 = statistics.totalSpacetimeMegabyteSeconds / 1024. / 1024. / 3600. / 24. / 7.;
+        log.append("TBw after normalization = ").append(tibWeeks2).append(System.lineSeparator());
+
+        // the ranks depend on the normalized runtimes
+        boolean ranks = ! Double.isNaN(ranksBytesPerSecond);
+        if (ranks) app.annotateRanks(ranksBytesPerSecond);
+
+        // write the workflow to text file (DAX format), the row of a workflow that is not written is named after the instance
+        String instance = String.format("%s.n.%d.%d", app.getClass().getSimpleName(), statistics.numberOfTasks, instanceID);
+        String filename = statisticsOnly ? instance : instance + ".dax";
+        // the task records are written before the workflow, such that a workflow in the manifest always has its records
+        Path recordsFile = records == null ? null : targetDir.resolve(instance + (records == TaskRecordWriter.Format.CSV ? ".tasks.csv" : ".tasks.bin"));
+        Future<Long> written;
+        if (statisticsOnly) {
+            written = CompletableFuture.completedFuture(0L);
+        } else if (reuseTopology) {
+            // the next instance overwrites the template, so the generating thread writes it before returning, without buffering it
+            if (records != null) writeAtomically(recordsFile, out -> writeTaskRecords(app, records, ranks, out));
+            written = CompletableFuture.completedFuture(writeAtomically(targetDir.resolve(filename), app::printWorkflow));
+        } else {
+            written = writers.submit(() -> {
+                if (records != null) writeAtomically(recordsFile, out -> writeTaskRecords(app, records, ranks, out));
+                return writeAtomically(targetDir.resolve(filename), app::printWorkflow);
+            });
+        }
+
+        for(String tasktype : app.getTasktypes()) {
+            DistributionSketch memory = statistics.memoryUsagesPerTaskType.get(tasktype);
+            log.append(String.format("%s,%s,%s,%s,%s,µ=%.2f,s=%.2f,p95 = %.2f,peak = %.2f%n", app.getClass().getSimpleName(), workflowSize, instanceID, tasktype, statistics.numberOfTasksPerTaskType.get(tasktype), memory.getMean() / 1e9, memory.getStandardDeviation() / 1e9, memory.getQuantile(0.95) / 1e9, memory.getMax() / 1e9));
 //            System.out.println("numberOfTasksPerTaskType = " + statistics.numberOfTasksPerTaskType.get(tasktype));
 //                        System.out.println("inputSizes = " + descriptiveStats(statistics.inputSizesPerTaskType.get(tasktype)));
 //                        System.out.println("peakMem = " + descriptiveStats(statistics.memoryUsagesPerTaskType.get(tasktype)));
-                    } //task type info
+        } //task type info
 
-                } //instance
+        return new Instance(filename, seed, statistics.toCsvRow(filename), log.toString(), written);
+    }
 
+    /**
+     * Draws a random memory model for each task type and annotates the tasks with its samples: each task gets the peak
+     * memory of a sample and its input files share the sample's input size.
+     * @param tasksByType the tasks of each task type, in the order of {@link AbstractApplication#getTasktypes()}, null in
+     *                    statistics only mode, where only the peak memory of the tasks is annotated
+     */
+    private static void annotatePeakMemory(AbstractApplication app, AppJob[][] tasksByType, double[] parameters, int workflowSize, int instanceID) {
+        String[] tasktypes = app.getTasktypes();
+        for (int t = 0; t < tasktypes.length; t++) {
+
+            String tasktype = tasktypes[t];
+            // get tasks of current type
+            AppJob[] tasks = tasksByType == null ? null : tasksByType[t];
+            int numTasks = tasks == null ? app.getNumTasks(tasktype) : tasks.length;
+
+            double[] modelParameters = Arrays.copyOfRange(parameters, t * LinearModel.NUM_PARAMETERS, (t + 1) * LinearModel.NUM_PARAMETERS);
+            LinearModel linearModel = LinearModel.randomMemoryModel(numTasks, LinearModel.MIN_FILE_SIZE, LinearModel.MAX_MEM_CONSUMPTION, LinearModel.LINEAR_TASK_CHANCE, LinearModel.MIN_SLOPE, LinearModel.MAX_SLOPE, modelParameters, Misc.getRandom().nextLong());
+
+            app.memoryModels.put(tasktype, linearModel);
+
+            // annotate tasks of current type
+            double[] filesizes = linearModel.getSamples()[0];
+            double[] peakMemoryConsumption = linearModel.getSamples()[1];
+            long[] peakMemBytes = new long[numTasks];
+            for (int i = 0; i < numTasks; i++) peakMemBytes[i] = (long) peakMemoryConsumption[i];
+            // one pass over the tasks, the statistics of the type are rebuilt once
+            app.annotatePeakMemory(tasktype, peakMemBytes);
+            if (tasks == null) continue;
+            for (int i = 0; i < tasks.length; i++) {
+
+                // add memory consumption both as XML element attribute and (as a dax specification compatibility hack, as a separate <argument> element)
+                // a task reused from a template keeps its argument, which follows the new peak memory
+                tasks[i].addPeakMemoryArgument(peakMemoryRelativeTime);
+
+                Set<AppFilename> inputs = tasks[i].getInputs();
+                if (inputs.size() == 0) {
+                    System.err.printf("AppGeneratorTest.generateWorkflows: %s (%s.n.%s.%s.dax) has zero input files to distribute input size to%n", tasktype, app.getClass().getSimpleName(), workflowSize, instanceID);
+                    continue;
+                }
+                long averageInputSize = ((long) filesizes[i]) / inputs.size();
+                for (AppFilename input : inputs) input.setSize(averageInputSize);
+            }
+        }
+    }
 
+    /**
+     * @return the heap needed to generate, annotate and serialize a workflow of the given configuration.
+     * The heap usage of a workflow is dominated by its tasks and their file references. The number of file references
+     * per task is application specific (e.g., three for Cybershake, over sixty for Sipht) and is measured by
+     * generating a small workflow of each application once.
+     */
+    static long estimateHeapBytes(Class<? extends AbstractApplication> appClass, int workflowSize) throws Exception {
+        Double fileReferencesPerTask = fileReferencesPerTaskCache.get(appClass);
+        if (fileReferencesPerTask == null) {
+            AbstractApplication probe = appClass.getDeclaredConstructor().newInstance();
+            probe.generateWorkflow("-n", Integer.toString(PROBE_SIZE));
+            int tasks = 0;
+            long fileReferences = 0;
+            for (Iterator<?> jobs = probe.getDAX().iterateJob(); jobs.hasNext(); tasks++) {
+                fileReferences += ((AppJob) jobs.next()).getUsesCount();
+            }
+            fileReferencesPerTask = fileReferences / (double) tasks;
+            fileReferencesPerTaskCache.put(appClass, fileReferencesPerTask);
+        }
+        return (long) (PEAK_FACTOR * workflowSize * (BYTES_PER_TASK + fileReferencesPerTask * BYTES_PER_FILE_REFERENCE));
+    }
 
-            } // workflow size
+    private static void writeTaskRecords(AbstractApplication app, TaskRecordWriter.Format format, boolean ranks, OutputStream out) throws IOException {
+        TaskRecordWriter writer = new TaskRecordWriter(out, format, ranks);
+        writer.writeWorkflow(app);
+        writer.flush();
+    }
 
-        } // workflow type
+    /**
+     * Writes to a temporary file that is then renamed, such that the target file is either complete or missing.
+     * @return the CRC32 checksum of the written bytes
+     */
+    private static long writeAtomically(Path target, Printer printer) throws Exception {
+        Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+        CRC32 crc = new CRC32();
+        try (OutputStream fop = new BufferedOutputStream(new CheckedOutputStream(Files.newOutputStream(temp), crc))) {
+            printer.print(fop);
+        }
+        Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        return crc.getValue();
+    }
 
-        // write summary file that describes all generated workflows (e.g., their number of tasks, memory models, etc.)
-        WorkflowStatistics.writeStatisticsCSV(targetDir.resolve("workflowStatistics.csv").toString());
+    /**
+     * @param completed the manifest entry of the workflow, null if it has not been generated yet
+     * @param statisticsOnly whether the workflow was not written, such that the manifest entry suffices
+     * @return the completed workflow or null if it needs to be generated, e.g., because the file was modified or deleted
+     */
+    private static Instance resume(CorpusManifest.Entry completed, Path targetDir, boolean statisticsOnly) throws IOException {
+        if (completed == null) return null;
+        Path file = targetDir.resolve(completed.file);
+        if ( ! statisticsOnly && ( ! Files.exists(file) || CorpusManifest.checksum(file) != completed.checksum)) return null;
+        String log = String.format("Skipping %s (found in manifest)%n", completed.file);
+        return new Instance(completed.file, completed.seed, completed.statisticsRow, log, CompletableFuture.completedFuture(completed.checksum));
+    }
 
+    /**
+     * Combines the statistics files of the given number of shards into a single statistics file.
+     * Shard i contains the instances with ordinal i, i+N, i+2N, etc. so taking one row from each shard in turn
+     * restores the order of a run without shards.
+     * Each shard must have as many workflows in its manifest and rows in its statistics as its manifest says it generates.
+     */
+    private static void mergeShards(Path targetDir, int numShards) throws IOException {
+        BufferedReader[] shards = new BufferedReader[numShards];
+        int[] expectedRows = new int[numShards];
+        int totalRows = 0;
+        try (StatisticsWriter statisticsWriter = new StatisticsWriter(targetDir.resolve(STATISTICS_FILE))) {
+            for (int i = 0; i < numShards; i++) {
+                Path manifest = targetDir.resolve(String.format(SHARD_MANIFEST_FILE, i, numShards));
+                if ( ! Files.exists(manifest)) throw new RuntimeException("Missing manifest of shard " + manifest);
+                expectedRows[i] = numWorkflows(CorpusManifest.readOptions(manifest), manifest);
+                int completed = CorpusManifest.readEntries(manifest).size();
+                if (completed != expectedRows[i]) throw new RuntimeException(String.format("%s lists %d of %d workflows, is the shard incomplete?", manifest, completed, expectedRows[i]));
+                totalRows += expectedRows[i];
+
+                Path shard = targetDir.resolve(String.format(SHARD_STATISTICS_FILE, i, numShards));
+                if ( ! Files.exists(shard)) throw new RuntimeException("Missing statistics of shard " + shard);
+                shards[i] = Files.newBufferedReader(shard);
+                String header = shards[i].readLine();
+                if ( ! WorkflowStatistics.CSV_HEADER.equals(header)) throw new RuntimeException("Unexpected columns in " + shard + ": " + header);
+            }
+            int[] rowsRead = new int[numShards];
+            int rows = 0;
+            DistributionSketch corpusPeakMemory = new DistributionSketch();
+            for (int i = 0; rows < totalRows; i = (i + 1) % numShards) {
+                if (rowsRead[i] == expectedRows[i]) continue;
+                String row = shards[i].readLine();
+                if (row == null) throw new RuntimeException(String.format("Shard %d has %d of %d statistics rows, is it incomplete?", i, rowsRead[i], expectedRows[i]));
+                statisticsWriter.addRow(row);
+                corpusPeakMemory.merge(WorkflowStatistics.parsePeakMemorySketch(row));
+                rowsRead[i]++;
+                rows++;
+            }
+            for (int i = 0; i < numShards; i++) {
+                if (shards[i].readLine() != null) throw new RuntimeException(String.format("Shard %d has more than %d statistics rows.", i, expectedRows[i]));
+            }
+            System.out.printf("Merged %d rows from %d shards into %s%n", rows, numShards, targetDir.resolve(STATISTICS_FILE));
+            writeCorpusStatistics(targetDir, rows, corpusPeakMemory);
+        } finally {
+            for (BufferedReader shard : shards) if (shard != null) shard.close();
+        }
+    }
+
+    /** Writes the summary of the whole corpus, e.g., the quantiles of the peak memory of all its tasks, to {@link #CORPUS_STATISTICS_FILE}. */
+    private static void writeCorpusStatistics(Path targetDir, int numWorkflows, DistributionSketch peakMemory) throws IOException {
+        String row = numWorkflows + "," + peakMemory.getN() + "," + 1e-6 * peakMemory.getMean() + "," + 1e-6 * peakMemory.getStandardDeviation() + "," +
+                1e-6 * peakMemory.getQuantile(0.5) + "," + 1e-6 * peakMemory.getQuantile(0.95) + "," + 1e-6 * peakMemory.getQuantile(0.99) + "," + 1e-6 * peakMemory.getMax();
+        Files.write(targetDir.resolve(CORPUS_STATISTICS_FILE), Arrays.asList(CORPUS_STATISTICS_HEADER, row));
+    }
+
+    /** @return the number of workflows in the options of the given manifest, see {@link #WORKFLOWS_OPTION} */
+    private static int numWorkflows(String options, Path manifest) {
+        for (String option : options.split(",")) {
+            if (option.startsWith(WORKFLOWS_OPTION)) return Integer.parseInt(option.substring(WORKFLOWS_OPTION.length()));
+        }
+        throw new RuntimeException(manifest + " does not record the number of workflows of the shard, was it written by an older version?");
+    }
+
+    /**
+     * @return the template for the given configuration, built by the current thread.
+     * The topology only depends on the configuration, so every thread builds the same template.
+     */
+    private static Template getTemplate(Class<? extends AbstractApplication> appClass, int workflowSize) throws Exception {
+        String key = appClass.getName() + "." + workflowSize;
+        Template template = templates.get();
+        if (template == null || ! template.key.equals(key)) {
+            Misc.setSeed(Misc.deriveSeed(SEED, appClass.getName().hashCode(), workflowSize));
+            AbstractApplication app = appClass.getDeclaredConstructor().newInstance();
+            app.generateWorkflow("-n", Integer.toString(workflowSize));
+            template = new Template(key, app);
+            templates.set(template);
+        }
+        return template;
     }
 
 }
@@ -1,10 +1,19 @@
 package simulation.generator;
 
+import simulation.generator.app.AbstractApplication;
 import simulation.generator.app.AppFactory;
 import simulation.generator.app.Application;
+import simulation.generator.app.UsageException;
+import simulation.generator.app.WorkflowStatistics;
+
+import simulation.generator.util.LinearModel;
+import simulation.generator.util.Misc;
 
 import gnu.getopt.Getopt;
 import gnu.getopt.LongOpt;
+import java.io.ByteArrayOutputStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
 import java.util.Arrays;
 
 /**
@@ -15,32 +24,143 @@ import java.util.Arrays;
 class AppGenerator {
 
     private static void usage(int exitCode) {
-        String msg = "AppGenerator -a <application> [-h] -- <application args>" +
+        String msg = "AppGenerator [-p <profile>] [-s <seed>] [-c <cache dir>] [-S] [-R <MB/s>] -a <application> [-h] -- <application args>" +
                 "\n--application | -a Application type." +
+                "\n--profile | -p Distribution profile overriding the application's distributions (see DistributionFitter), must precede -a." +
+                "\n--seed | -s Seed of the random number generator (default " + Misc.DEFAULT_SEED + "), must precede -a." +
+                "\n--cache | -c Directory of previously generated workflows, see WorkflowCache. Generates the workflow only" +
+                "\n             if it is not in the cache, must precede -a." +
+                "\n--cache-size | -C Maximum size of the cache directory in megabytes (default 1024), must precede -a." +
+                "\n--statistics | -S Print the workflow's statistics (see WorkflowStatistics) instead of the workflow, without" +
+                "\n                  keeping the workflow in memory. Task types without peak memory annotations get a random memory model" +
+                "\n                  and the structural statistics are not computed. Must precede -a." +
+                "\n--ranks | -R Annotate each task with its upward rank, top level and slack (see AbstractApplication.annotateRanks)," +
+                "\n             transferring files at the given bandwidth in megabytes per second (Infinity to ignore transfers)," +
+                "\n             must precede -a." +
                 "\n--help | -h Print help message.";
 
-        System.out.println(msg);
-        System.exit(exitCode);
+        throw new UsageException(msg, exitCode);
     }
 
     public static void main(String[] args) throws Exception {
-        LongOpt[] longopts = new LongOpt[3];
+        try {
+            generate(args);
+        } catch (UsageException e) {
+            System.out.println(e.getMessage());
+            System.exit(e.exitCode);
+        }
+    }
+
+    private static void generate(String[] args) throws Exception {
+        LongOpt[] longopts = new LongOpt[8];
 
         longopts[0] = new LongOpt("application", LongOpt.REQUIRED_ARGUMENT,null, 'a');
         longopts[1] = new LongOpt("help", LongOpt.NO_ARGUMENT, null, 'h');
+        longopts[2] = new LongOpt("profile", LongOpt.REQUIRED_ARGUMENT, null, 'p');
+        longopts[3] = new LongOpt("seed", LongOpt.REQUIRED_ARGUMENT, null, 's');
+        longopts[4] = new LongOpt("cache", LongOpt.REQUIRED_ARGUMENT, null, 'c');
+        longopts[5] = new LongOpt("cache-size", LongOpt.REQUIRED_ARGUMENT, null, 'C');
+        longopts[6] = new LongOpt("statistics", LongOpt.NO_ARGUMENT, null, 'S');
+        longopts[7] = new LongOpt("ranks", LongOpt.REQUIRED_ARGUMENT, null, 'R');
 
-        Getopt g = new Getopt("AppGenerator", args, "a:h", longopts);
+        Getopt g = new Getopt("AppGenerator", args, "a:hp:s:c:C:SR:", longopts);
         g.setOpterr(false);
 
         Application app = null;
+        String profile = null;
+        long seed = Misc.DEFAULT_SEED;
+        String cacheDirectory = null;
+        long cacheMegabytes = 1024;
+        boolean statisticsOnly = false;
+        // the bandwidth used to annotate ranks in megabytes per second, NaN to annotate none
+        double ranksMegabytesPerSecond = Double.NaN;
 
-        if (g.getopt() == 'a')
-            app = AppFactory.getApp(g.getOptarg());
-        else
+        // everything after the application type is passed to the application
+        int c;
+        while (app == null && (c = g.getopt()) != -1) {
+            switch (c) {
+                case 'a':
+                    app = AppFactory.getApp(g.getOptarg());
+                    break;
+                case 'p':
+                    profile = g.getOptarg();
+                    break;
+                case 's':
+                    seed = Long.parseLong(g.getOptarg());
+                    break;
+                case 'c':
+                    cacheDirectory = g.getOptarg();
+                    break;
+                case 'C':
+                    cacheMegabytes = Long.parseLong(g.getOptarg());
+                    break;
+                case 'S':
+                    statisticsOnly = true;
+                    break;
+                case 'R':
+                    ranksMegabytesPerSecond = Double.parseDouble(g.getOptarg());
+                    if ( ! (ranksMegabytesPerSecond > 0)) usage(1);
+                    break;
+                case 'h':
+                    usage(0);
+                    break;
+                default:
+                    usage(1);
+            }
+        }
+        if (app == null)
             usage(1);
+        boolean ranks = ! Double.isNaN(ranksMegabytesPerSecond);
+        if (ranks && statisticsOnly) {
+            System.err.println("Ranks can not be annotated in statistics only mode.");
+            usage(1);
+        }
+
+        if (profile != null)
+            ((AbstractApplication) app).setDistributionProfile(profile);
 
         String[] newArgs = Arrays.copyOfRange(args, g.getOptind(), args.length);
+
+        if (statisticsOnly) {
+            AbstractApplication application = (AbstractApplication) app;
+            application.setStatisticsOnly(true);
+            Misc.setSeed(seed);
+            // task types whose peak memory the application doesn't annotate get a random memory model
+            application.generateWorkflow(LinearModel.randomMemoryModels(application.getTasktypes(), seed), newArgs);
+            System.out.println(WorkflowStatistics.CSV_HEADER);
+            System.out.println(((AbstractApplication) app).getStatistics().toCsvRow(app.getClass().getSimpleName()));
+            return;
+        }
+
+        if (cacheDirectory == null) {
+            Misc.setSeed(seed);
+            app.generateWorkflow(newArgs);
+            if (ranks) ((AbstractApplication) app).annotateRanks(ranksMegabytesPerSecond * 1e6);
+            app.printWorkflow(System.out);
+            return;
+        }
+
+        WorkflowCache cache = new WorkflowCache(Paths.get(cacheDirectory), cacheMegabytes * 1024 * 1024, false);
+        // workflows with ranks are cached separately from those without
+        String[] keyArgs = ranks ? appendRanks(newArgs, ranksMegabytesPerSecond) : newArgs;
+        String key = WorkflowCache.key(app.getClass().getName(), keyArgs, profile == null ? null : Files.readAllBytes(Paths.get(profile)), seed);
+        if (cache.get(key, System.out)) {
+            System.out.flush();
+            return;
+        }
+        Misc.setSeed(seed);
         app.generateWorkflow(newArgs);
-        app.printWorkflow(System.out);
+        if (ranks) ((AbstractApplication) app).annotateRanks(ranksMegabytesPerSecond * 1e6);
+        ByteArrayOutputStream workflow = new ByteArrayOutputStream();
+        app.printWorkflow(workflow);
+        cache.put(key, workflow.toByteArray());
+        workflow.writeTo(System.out);
+        System.out.flush();
+    }
+
+    private static String[] appendRanks(String[] args, double megabytesPerSecond) {
+        String[] keyArgs = Arrays.copyOf(args, args.length + 1);
+        keyArgs[args.length] = "--ranks=" + megabytesPerSecond;
+        return keyArgs;
     }
 }
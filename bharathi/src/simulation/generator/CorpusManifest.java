@@ -0,0 +1,149 @@
+package simulation.generator;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * An append-only record of the workflows of a corpus that have been completely written to disk.
+ * Each line holds the file name, the seed the workflow was generated from, the CRC32 checksum of the file and the
+ * workflow's statistics row (see {@link simulation.generator.app.WorkflowStatistics#toCsvRow(String)}).
+ * The first line describes the options of the run, a run with different options must not resume the corpus.
+ *
+ * A run that was killed leaves at most an incomplete last line, which is ignored when reading the manifest.
+ */
+public class CorpusManifest implements Closeable {
+
+    /** A completed workflow. */
+    public static class Entry {
+        public final String file;
+        public final long seed;
+        public final long checksum;
+        public final String statisticsRow;
+
+        Entry(String file, long seed, long checksum, String statisticsRow) {
+            this.file = file;
+            this.seed = seed;
+            this.checksum = checksum;
+            this.statisticsRow = statisticsRow;
+        }
+    }
+
+    private static final String OPTIONS_PREFIX = "# ";
+
+    /** The completed workflows, by seed. */
+    private final Map<Long, Entry> entries = new HashMap<>();
+    private final BufferedWriter writer;
+
+    /**
+     * Reads the entries of the given manifest, if it exists, and opens it for appending.
+     * @param options describes the parameters that determine the workflows of the corpus
+     * @throws IllegalStateException if the existing manifest was written with different options
+     */
+    public CorpusManifest(Path file, String options) throws IOException {
+        boolean exists = Files.exists(file) && Files.size(file) > 0;
+        boolean endsWithLineBreak = ! exists || endsWithLineBreak(file);
+        if (exists) {
+            List<String> lines = Files.readAllLines(file);
+            if ( ! (OPTIONS_PREFIX + options).equals(lines.get(0))) {
+                throw new IllegalStateException(String.format("%s was written by a run with different options (%s instead of %s), use another target directory.", file, lines.get(0), OPTIONS_PREFIX + options));
+            }
+            entries.putAll(parseEntries(lines, endsWithLineBreak));
+        }
+        writer = Files.newBufferedWriter(file, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        if ( ! exists) {
+            writer.write(OPTIONS_PREFIX + options);
+            writer.write('\n');
+        } else if ( ! endsWithLineBreak) {
+            // terminate the incomplete line of the killed run
+            writer.write('\n');
+        }
+        writer.flush();
+    }
+
+    /** @return the entry of the workflow generated from the given seed, or null if there is none. */
+    public Entry get(long seed) {
+        return entries.get(seed);
+    }
+
+    /** Records a workflow that has been completely written. The entry is on disk when this method returns. */
+    public synchronized void add(String file, long seed, long checksum, String statisticsRow) throws IOException {
+        writer.write(file + ',' + seed + ',' + Long.toHexString(checksum) + ',' + statisticsRow);
+        writer.write('\n');
+        writer.flush();
+        entries.put(seed, new Entry(file, seed, checksum, statisticsRow));
+    }
+
+    /** @return the options the given manifest was written with, see {@link #CorpusManifest(Path, String)} */
+    public static String readOptions(Path file) throws IOException {
+        try (BufferedReader reader = Files.newBufferedReader(file)) {
+            String first = reader.readLine();
+            if (first == null || ! first.startsWith(OPTIONS_PREFIX)) throw new IOException(file + " is not a manifest.");
+            return first.substring(OPTIONS_PREFIX.length());
+        }
+    }
+
+    /** @return the completed workflows of the given manifest by seed, without opening it for appending */
+    public static Map<Long, Entry> readEntries(Path file) throws IOException {
+        if (Files.size(file) == 0) return new HashMap<>();
+        return parseEntries(Files.readAllLines(file), endsWithLineBreak(file));
+    }
+
+    /** @return the entries in the lines after the options, without the last line if it is incomplete */
+    private static Map<Long, Entry> parseEntries(List<String> lines, boolean endsWithLineBreak) {
+        Map<Long, Entry> entries = new HashMap<>();
+        // the last line is incomplete if the run was killed while writing it
+        int complete = endsWithLineBreak ? lines.size() : lines.size() - 1;
+        for (int i = 1; i < complete; i++) {
+            Entry entry = parse(lines.get(i));
+            if (entry != null) entries.put(entry.seed, entry);
+        }
+        return entries;
+    }
+
+    /** @return the CRC32 checksum of the given file */
+    public static long checksum(Path file) throws IOException {
+        CRC32 crc = new CRC32();
+        byte[] buffer = new byte[1 << 16];
+        try (InputStream in = Files.newInputStream(file)) {
+            int read;
+            while ((read = in.read(buffer)) != -1) crc.update(buffer, 0, read);
+        }
+        return crc.getValue();
+    }
+
+    /** @return the entry described by the given line, or null if the line is malformed */
+    private static Entry parse(String line) {
+        String[] fields = line.split(",", 4);
+        if (fields.length < 4 || ! fields[3].startsWith(fields[0] + ',')) return null;
+        try {
+            return new Entry(fields[0], Long.parseLong(fields[1]), Long.parseLong(fields[2], 16), fields[3]);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static boolean endsWithLineBreak(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file)) {
+            ByteBuffer last = ByteBuffer.allocate(1);
+            channel.read(last, channel.size() - 1);
+            return last.get(0) == '\n';
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        writer.close();
+    }
+}
@@ -0,0 +1,281 @@
+package simulation.generator;
+
+import gnu.getopt.Getopt;
+import gnu.getopt.LongOpt;
+import simulation.generator.app.WorkflowStatistics;
+import simulation.generator.util.KdTree;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Selects workflows from a corpus by their statistics, as written by GenerateCorpus to workflowStatistics.csv
+ * (see {@link WorkflowStatistics#CSV_HEADER}).
+ *
+ * The workflows are indexed in a {@link KdTree} over the selected columns, each scaled to [0,1] over the corpus such
+ * that distances do not depend on the units of the columns. The selection is applied in this order:
+ * <ol>
+ * <li>range constraints keep the workflows whose values lie within the given bounds,</li>
+ * <li>a nearest neighbor query keeps the k workflows closest to the target values,</li>
+ * <li>a diversity query keeps k workflows that cover the remaining ones, chosen by farthest point sampling.</li>
+ * </ol>
+ * The rows of the selected workflows are printed with the header of the statistics file.
+ */
+public class CorpusSelector {
+
+    /** The columns used for distances if none are given. */
+    static final String DEFAULT_COLUMNS = "memory_heterogeneity,cpu_to_mem_ratio_4GB,num_tasks";
+
+    /** The header and the rows of the statistics file. */
+    private final String header;
+    private final List<String> rows;
+    /** The columns that span the index, the first numDistanceColumns are used for distances. */
+    private final String[] columns;
+    private final int numDistanceColumns;
+    /** The smallest value and the range of each indexed column over the corpus, to scale values to [0,1]. */
+    private final double[] offset;
+    private final double[] scale;
+    /** The scaled values of the indexed columns of each workflow. */
+    private final double[][] points;
+    private final KdTree index;
+
+    /**
+     * @param distanceColumns the columns used for nearest neighbor and diversity queries
+     * @param rangeColumns additional columns that can be constrained with {@link #range(Map)}
+     */
+    CorpusSelector(List<String> lines, List<String> distanceColumns, List<String> rangeColumns) {
+        if (lines.isEmpty()) throw new IllegalArgumentException("The statistics file is empty.");
+        this.header = lines.get(0);
+        this.rows = lines.subList(1, lines.size());
+        List<String> headerColumns = Arrays.asList(header.split(","));
+
+        List<String> indexed = new ArrayList<>(distanceColumns);
+        for (String column : rangeColumns) if ( ! indexed.contains(column)) indexed.add(column);
+        this.columns = indexed.toArray(new String[0]);
+        this.numDistanceColumns = distanceColumns.size();
+        int[] positions = new int[columns.length];
+        for (int c = 0; c < columns.length; c++) {
+            positions[c] = headerColumns.indexOf(columns[c]);
+            if (positions[c] < 0) throw new IllegalArgumentException(String.format("Unknown column %s, the columns are %s", columns[c], header));
+        }
+
+        this.points = new double[rows.size()][columns.length];
+        for (int i = 0; i < rows.size(); i++) {
+            String[] fields = rows.get(i).split(",");
+            for (int c = 0; c < columns.length; c++) {
+                try {
+                    points[i][c] = Double.parseDouble(fields[positions[c]]);
+                } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+                    throw new IllegalArgumentException(String.format("Row %d has no numeric value in column %s: %s", i + 2, columns[c], rows.get(i)));
+                }
+            }
+        }
+
+        this.offset = new double[columns.length];
+        this.scale = new double[columns.length];
+        for (int c = 0; c < columns.length; c++) {
+            double min = Double.POSITIVE_INFINITY, max = Double.NEGATIVE_INFINITY;
+            for (double[] point : points) {
+                min = Math.min(min, point[c]);
+                max = Math.max(max, point[c]);
+            }
+            offset[c] = rows.isEmpty() ? 0 : min;
+            scale[c] = max > min ? max - min : 1;
+        }
+        for (double[] point : points) for (int c = 0; c < columns.length; c++) point[c] = scaled(c, point[c]);
+        this.index = new KdTree(points);
+    }
+
+    private double scaled(int column, double value) {
+        return (value - offset[column]) / scale[column];
+    }
+
+    private int column(String name) {
+        for (int c = 0; c < columns.length; c++) if (columns[c].equals(name)) return c;
+        throw new IllegalArgumentException("Column " + name + " is not indexed.");
+    }
+
+    /**
+     * @param bounds the minimum and maximum (inclusive) of some of the indexed columns
+     * @return the workflows within the bounds, in the order of the statistics file
+     */
+    int[] range(Map<String, double[]> bounds) {
+        double[] min = new double[columns.length], max = new double[columns.length];
+        Arrays.fill(min, Double.NEGATIVE_INFINITY);
+        Arrays.fill(max, Double.POSITIVE_INFINITY);
+        for (Map.Entry<String, double[]> bound : bounds.entrySet()) {
+            int c = column(bound.getKey());
+            min[c] = scaled(c, bound.getValue()[0]);
+            max[c] = scaled(c, bound.getValue()[1]);
+        }
+        List<Integer> selected = new ArrayList<>();
+        index.range(min, max, selected::add);
+        return selected.stream().mapToInt(Integer::intValue).sorted().toArray();
+    }
+
+    /**
+     * @param target the values of some of the distance columns
+     * @param candidates the workflows to choose from
+     * @return the (at most) k candidates nearest to the target, nearest first
+     */
+    int[] nearest(Map<String, Double> target, int k, int[] candidates) {
+        double[] point = new double[columns.length];
+        Arrays.fill(point, Double.NaN);
+        for (Map.Entry<String, Double> value : target.entrySet()) {
+            int c = column(value.getKey());
+            if (c >= numDistanceColumns) throw new IllegalArgumentException("Column " + value.getKey() + " is not a distance column.");
+            point[c] = scaled(c, value.getValue());
+        }
+        boolean[] accepted = new boolean[rows.size()];
+        for (int candidate : candidates) accepted[candidate] = true;
+        return index.nearest(point, k, i -> accepted[i]);
+    }
+
+    /**
+     * Selects k candidates that cover the candidates well (greedy k-center): the candidate nearest to the centroid of all
+     * candidates first, then repeatedly the candidate that is farthest from the ones selected so far.
+     * @return the selected workflows, in the order of selection
+     */
+    int[] diverse(int k, int[] candidates) {
+        int n = candidates.length;
+        if (k >= n) return candidates.clone();
+        double[] centroid = new double[columns.length];
+        for (int candidate : candidates) for (int c = 0; c < numDistanceColumns; c++) centroid[c] += points[candidate][c] / n;
+
+        double[] distance = new double[n];
+        for (int i = 0; i < n; i++) distance[i] = squaredDistance(points[candidates[i]], centroid);
+        int next = argmin(distance);
+        // from now on, the distance of each candidate to the nearest selected candidate
+        Arrays.fill(distance, Double.POSITIVE_INFINITY);
+        int[] selected = new int[k];
+        for (int s = 0; s < k; s++) {
+            selected[s] = candidates[next];
+            double[] point = points[candidates[next]];
+            for (int i = 0; i < n; i++) distance[i] = Math.min(distance[i], squaredDistance(points[candidates[i]], point));
+            next = argmax(distance);
+        }
+        return selected;
+    }
+
+    private double squaredDistance(double[] a, double[] b) {
+        double sum = 0;
+        for (int c = 0; c < numDistanceColumns; c++) sum += (a[c] - b[c]) * (a[c] - b[c]);
+        return sum;
+    }
+
+    private static int argmin(double[] values) {
+        int best = 0;
+        for (int i = 1; i < values.length; i++) if (values[i] < values[best]) best = i;
+        return best;
+    }
+
+    private static int argmax(double[] values) {
+        int best = 0;
+        for (int i = 1; i < values.length; i++) if (values[i] > values[best]) best = i;
+        return best;
+    }
+
+    int size() {
+        return rows.size();
+    }
+
+    String getHeader() {
+        return header;
+    }
+
+    String getRow(int workflow) {
+        return rows.get(workflow);
+    }
+
+    private static void usage(int exitCode) {
+        String msg = "CorpusSelector [-h] [options] <workflowStatistics.csv>" +
+                "\nPrints the rows of the selected workflows. Without queries, all workflows are selected." +
+                "\n--columns | -c Comma separated columns used for distances, each scaled to [0,1] over the corpus" +
+                "\n                  (default " + DEFAULT_COLUMNS + ")." +
+                "\n--range | -r column=min:max Only select workflows with values in [min,max] in the column, e.g., num_tasks=500:2000." +
+                "\n                  Can be given several times, min or max can be omitted." +
+                "\n--target | -t column=value The value of a distance column for nearest neighbor queries, can be given several times." +
+                "\n--nearest | -n k Select the k workflows nearest to the target values." +
+                "\n--diverse | -d k Select k workflows that cover the selection, chosen by farthest point sampling." +
+                "\n--help | -h Print help message.";
+
+        System.out.println(msg);
+        System.exit(exitCode);
+    }
+
+    public static void main(String[] args) throws IOException {
+        LongOpt[] longopts = new LongOpt[6];
+        longopts[0] = new LongOpt("columns", LongOpt.REQUIRED_ARGUMENT, null, 'c');
+        longopts[1] = new LongOpt("range", LongOpt.REQUIRED_ARGUMENT, null, 'r');
+        longopts[2] = new LongOpt("target", LongOpt.REQUIRED_ARGUMENT, null, 't');
+        longopts[3] = new LongOpt("nearest", LongOpt.REQUIRED_ARGUMENT, null, 'n');
+        longopts[4] = new LongOpt("diverse", LongOpt.REQUIRED_ARGUMENT, null, 'd');
+        longopts[5] = new LongOpt("help", LongOpt.NO_ARGUMENT, null, 'h');
+
+        Getopt g = new Getopt("CorpusSelector", args, "c:r:t:n:d:h", longopts);
+        g.setOpterr(false);
+
+        List<String> distanceColumns = Arrays.asList(DEFAULT_COLUMNS.split(","));
+        Map<String, double[]> bounds = new LinkedHashMap<>();
+        Map<String, Double> target = new LinkedHashMap<>();
+        int nearest = 0;
+        int diverse = 0;
+
+        int c;
+        while ((c = g.getopt()) != -1) {
+            switch (c) {
+                case 'c':
+                    distanceColumns = Arrays.asList(g.getOptarg().split(","));
+                    break;
+                case 'r':
+                    String[] range = g.getOptarg().split("=", 2);
+                    if (range.length != 2 || ! range[1].contains(":")) usage(1);
+                    String[] minMax = range[1].split(":", -1);
+                    bounds.put(range[0], new double[]{
+                            minMax[0].isEmpty() ? Double.NEGATIVE_INFINITY : Double.parseDouble(minMax[0]),
+                            minMax[1].isEmpty() ? Double.POSITIVE_INFINITY : Double.parseDouble(minMax[1])});
+                    break;
+                case 't':
+                    String[] value = g.getOptarg().split("=", 2);
+                    if (value.length != 2) usage(1);
+                    target.put(value[0], Double.parseDouble(value[1]));
+                    break;
+                case 'n':
+                    nearest = Integer.parseInt(g.getOptarg());
+                    break;
+                case 'd':
+                    diverse = Integer.parseInt(g.getOptarg());
+                    break;
+                case 'h':
+                    usage(0);
+                    break;
+                default:
+                    usage(1);
+            }
+        }
+        if (g.getOptind() != args.length - 1) usage(1);
+        if (nearest > 0 && target.isEmpty()) {
+            System.err.println("Nearest neighbor queries need at least one --target.");
+            usage(1);
+        }
+
+        Path statistics = Paths.get(args[g.getOptind()]);
+        CorpusSelector selector = new CorpusSelector(Files.readAllLines(statistics, StandardCharsets.UTF_8), distanceColumns, new ArrayList<>(bounds.keySet()));
+
+        int[] selected = selector.range(bounds);
+        if (nearest > 0) selected = selector.nearest(target, nearest, selected);
+        if (diverse > 0) selected = selector.diverse(diverse, selected);
+
+        System.out.println(selector.getHeader());
+        for (int workflow : selected) System.out.println(selector.getRow(workflow));
+        System.err.printf("Selected %d of %d workflows.%n", selected.length, selector.size());
+    }
+}
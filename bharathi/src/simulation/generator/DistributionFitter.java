@@ -0,0 +1,290 @@
+package simulation.generator;
+
+import gnu.getopt.Getopt;
+import gnu.getopt.LongOpt;
+import simulation.generator.app.AbstractApplication;
+import simulation.generator.app.AppFactory;
+import simulation.generator.util.Moments;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Fit runtime and file size distributions per task type from a directory of DAX files or trace csv files and
+ * write them as a distribution profile that applications can load instead of their hard-coded distributions
+ * (see {@link simulation.generator.app.AbstractApplication#setDistributionProfile(String)}).
+ *
+ * The files are read in parallel, each into its own set of {@link Moments}, which are merged afterwards.
+ * The names of the fitted distributions are
+ * <ul>
+ *     <li>the job name for runtimes, e.g., mDiffFit, which matches the runtime distributions of most applications,</li>
+ *     <li>the file type for file sizes (DAX files only), i.e., the name of the distribution the application draws the size
+ *     from, e.g., 2mass.fits for Montage's 2mass-atlas-ID00001s-jID00001.fits, see {@link AbstractApplication#getFileType(String)}.
+ *     The application is given or determined by the namespace of the jobs. Files whose type is unknown are skipped,
+ *     their sizes are derived from other values.</li>
+ *     <li>task type.column for other numeric columns in trace csv files, e.g., MaqMap.peak_mem_bytes.</li>
+ * </ul>
+ * A trace csv file needs a header line with a task_type (or name) column, other csv files are skipped; a runtime column is fitted under the task type's name.
+ * Runtimes are divided by the factor the application multiplies the drawn runtimes with (see
+ * {@link AbstractApplication#getDefaultRuntimeFactor(String)}), such that the application reproduces them from the profile.
+ * Values that are not numeric (e.g., null) are skipped.
+ */
+class DistributionFitter {
+
+    private static final XMLInputFactory XML_INPUT_FACTORY = XMLInputFactory.newInstance();
+
+    private static void usage(int exitCode) {
+        String msg = "DistributionFitter [-h] [options] <directory with .dax, .xml or .csv files>" +
+                "\n--output | -o Profile file to write (default: stdout)." +
+                "\n--parallelism | -p Number of files to read in parallel (default: number of cores)." +
+                "\n--application | -a The application that generated the DAX files, e.g., MONTAGE, to determine the types of the" +
+                "\n                   files (default: the namespace of the jobs)." +
+                "\n--help | -h Print help message.";
+
+        System.out.println(msg);
+        System.exit(exitCode);
+    }
+
+    public static void main(String[] args) throws Exception {
+        LongOpt[] longopts = new LongOpt[4];
+        longopts[0] = new LongOpt("output", LongOpt.REQUIRED_ARGUMENT, null, 'o');
+        longopts[1] = new LongOpt("parallelism", LongOpt.REQUIRED_ARGUMENT, null, 'p');
+        longopts[2] = new LongOpt("help", LongOpt.NO_ARGUMENT, null, 'h');
+        longopts[3] = new LongOpt("application", LongOpt.REQUIRED_ARGUMENT, null, 'a');
+
+        Getopt g = new Getopt("DistributionFitter", args, "o:p:a:h", longopts);
+        g.setOpterr(false);
+
+        String output = null;
+        int parallelism = Runtime.getRuntime().availableProcessors();
+        String application = null;
+
+        int c;
+        while ((c = g.getopt()) != -1) {
+            switch (c) {
+                case 'o':
+                    output = g.getOptarg();
+                    break;
+                case 'p':
+                    parallelism = Integer.parseInt(g.getOptarg());
+                    break;
+                case 'a':
+                    application = g.getOptarg();
+                    break;
+                case 'h':
+                    usage(0);
+                    break;
+                default:
+                    usage(1);
+            }
+        }
+        if (g.getOptind() != args.length - 1) usage(1);
+
+        Map<String, Moments> fitted = fit(Paths.get(args[g.getOptind()]), parallelism, application);
+
+        if (output == null) {
+            PrintWriter writer = new PrintWriter(System.out);
+            writeProfile(fitted, writer);
+            writer.flush();
+        } else {
+            try (PrintWriter writer = new PrintWriter(Files.newBufferedWriter(Paths.get(output)))) {
+                writeProfile(fitted, writer);
+            }
+        }
+    }
+
+    /**
+     * @param application the application that generated the DAX files, null to determine it from the namespace of the jobs
+     * @return summary statistics for each distribution name over all .dax, .xml and .csv files in the directory (recursively).
+     */
+    static Map<String, Moments> fit(Path directory, int parallelism, String application) throws Exception {
+        List<Path> files;
+        try (Stream<Path> walk = Files.walk(directory)) {
+            files = walk.filter(Files::isRegularFile)
+                    .filter(f -> f.toString().endsWith(".dax") || f.toString().endsWith(".xml") || f.toString().endsWith(".csv"))
+                    .collect(Collectors.toList());
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            return pool.submit(() -> files.parallelStream()
+                    .map(file -> fitFile(file, application))
+                    .reduce(new TreeMap<>(), DistributionFitter::merge, DistributionFitter::merge)).get();
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private static Map<String, Moments> fitFile(Path file, String application) {
+        try {
+            return file.toString().endsWith(".csv") ? fitTraces(file, application) : fitDax(file, application);
+        } catch (IOException | XMLStreamException e) {
+            throw new RuntimeException("Could not read " + file, e);
+        }
+    }
+
+    /** Merges the statistics in b into a fresh map (the maps passed to reduce must not be modified). */
+    private static Map<String, Moments> merge(Map<String, Moments> a, Map<String, Moments> b) {
+        Map<String, Moments> result = new TreeMap<>();
+        a.forEach((key, moments) -> result.computeIfAbsent(key, k -> new Moments()).merge(moments));
+        b.forEach((key, moments) -> result.computeIfAbsent(key, k -> new Moments()).merge(moments));
+        return result;
+    }
+
+    /**
+     * Streams the job and uses elements of a DAX file.
+     * @param application the application that generated the file, null to determine it from the namespace of the first job
+     */
+    static Map<String, Moments> fitDax(Path file, String application) throws IOException, XMLStreamException {
+        Map<String, Moments> result = new TreeMap<>();
+        AbstractApplication app = null;
+        boolean resolved = false;
+        // the type of each file (null if unknown), a file is often used by several jobs
+        Map<String, String> fileTypes = new HashMap<>();
+        try (InputStream in = Files.newInputStream(file)) {
+            XMLStreamReader reader = XML_INPUT_FACTORY.createXMLStreamReader(in);
+            String job = null;
+            while (reader.hasNext()) {
+                if (reader.next() != XMLStreamConstants.START_ELEMENT) continue;
+                String element = reader.getLocalName();
+                if (element.equals("job")) {
+                    job = reader.getAttributeValue(null, "name");
+                    if ( ! resolved) {
+                        app = application(file, application != null ? application : reader.getAttributeValue(null, "namespace"));
+                        resolved = true;
+                    }
+                    addValue(result, job, reader.getAttributeValue(null, "runtime"), runtimeFactor(app, job));
+                } else if (element.equals("uses") && app != null) {
+                    String name = reader.getAttributeValue(null, "file");
+                    if (name == null) continue;
+                    String type;
+                    if (fileTypes.containsKey(name)) {
+                        type = fileTypes.get(name);
+                    } else {
+                        type = app.getFileType(name);
+                        fileTypes.put(name, type);
+                    }
+                    addValue(result, type, reader.getAttributeValue(null, "size"), 1);
+                } else if (element.equals("child")) {
+                    // the dependency section follows the jobs
+                    break;
+                }
+            }
+            reader.close();
+        }
+        return result;
+    }
+
+    /** @return the application with the given name, null if there is none */
+    private static AbstractApplication application(Path file, String name) {
+        try {
+            return (AbstractApplication) AppFactory.createApp(name == null ? "" : name);
+        } catch (Exception e) {
+            System.err.println("Skipping the file sizes in " + file + ", the application " + name + " is unknown.");
+            return null;
+        }
+    }
+
+    /** @return the factor the application multiplies the runtimes of the job with, 1 if the application is unknown */
+    private static double runtimeFactor(AbstractApplication app, String job) {
+        return app == null || job == null ? 1 : app.getDefaultRuntimeFactor(job);
+    }
+
+    /**
+     * Reads a csv file with a header line and a task_type or name column.
+     * @param application the application that generated the traces to divide the runtimes by its runtime factor, null to fit them as written
+     */
+    static Map<String, Moments> fitTraces(Path file, String application) throws IOException {
+        AbstractApplication app = application == null ? null : application(file, application);
+        Map<String, Moments> result = new TreeMap<>();
+        try (BufferedReader reader = Files.newBufferedReader(file)) {
+            String headerLine = reader.readLine();
+            if (headerLine == null) return result;
+            String[] header = headerLine.split(",");
+            int typeColumn = -1;
+            for (int i = 0; i < header.length; i++) {
+                header[i] = header[i].trim();
+                if (header[i].equals("task_type") || (typeColumn < 0 && header[i].equals("name"))) typeColumn = i;
+            }
+            if (typeColumn < 0) {
+                // e.g., the workflowStatistics.csv of a corpus
+                System.err.println("Skipping " + file + ", it has no task_type or name column.");
+                return result;
+            }
+
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] fields = line.split(",");
+                if (fields.length <= typeColumn) continue;
+                String type = fields[typeColumn].trim();
+                for (int i = 0; i < fields.length && i < header.length; i++) {
+                    if (i == typeColumn) continue;
+                    if (header[i].equals("runtime")) addValue(result, type, fields[i], runtimeFactor(app, type));
+                    else addValue(result, type + "." + header[i], fields[i], 1);
+                }
+            }
+        }
+        return result;
+    }
+
+    /** Adds the value divided by the factor. */
+    private static void addValue(Map<String, Moments> result, String key, String value, double factor) {
+        if (key == null || value == null) return;
+        double parsed;
+        try {
+            parsed = Double.parseDouble(value.trim());
+        } catch (NumberFormatException e) {
+            return;
+        }
+        if (Double.isNaN(parsed)) return;
+        result.computeIfAbsent(key, k -> new Moments()).addValue(parsed / factor);
+    }
+
+    /**
+     * Writes the fitted distributions in the format read by {@link simulation.generator.util.ConfigParser}.
+     * Values without variation become constant distributions, all others truncated normal distributions.
+     * Names that are not valid XML element names (e.g., 2mass.fits) are written as distribution elements with a name attribute.
+     */
+    static void writeProfile(Map<String, Moments> fitted, PrintWriter writer) {
+        writer.println("<?xml version=\"1.0\" encoding=\"UTF-8\"?>");
+        writer.println("<distributions>");
+        for (Map.Entry<String, Moments> entry : fitted.entrySet()) {
+            Moments m = entry.getValue();
+            if (m.getVariance() == 0) {
+                writer.println(String.format(Locale.ROOT, "  <%s type=\"constant\" value=\"%s\" samples=\"%d\"/>", element(entry.getKey()), m.getMean(), m.getN()));
+            } else {
+                writer.println(String.format(Locale.ROOT, "  <%s type=\"truncatednormal\" mean=\"%s\" variance=\"%s\" samples=\"%d\" min=\"%s\" max=\"%s\"/>",
+                        element(entry.getKey()), m.getMean(), m.getVariance(), m.getN(), m.getMin(), m.getMax()));
+            }
+        }
+        writer.println("</distributions>");
+    }
+
+    /** @return the name of the element for the distribution, with its attributes if the name is not a valid element name */
+    private static String element(String name) {
+        boolean valid = ! name.isEmpty() && (Character.isLetter(name.charAt(0)) || name.charAt(0) == '_');
+        for (int i = 1; i < name.length() && valid; i++) {
+            char c = name.charAt(i);
+            valid = Character.isLetterOrDigit(c) || c == '.' || c == '-' || c == '_';
+        }
+        if (valid) return name;
+        return "distribution name=\"" + name.replace("&", "&amp;").replace("<", "&lt;").replace("\"", "&quot;") + "\"";
+    }
+}
@@ -0,0 +1,220 @@
+package simulation.generator;
+
+import gnu.getopt.Getopt;
+import gnu.getopt.LongOpt;
+import simulation.generator.app.AbstractApplication;
+import simulation.generator.app.AppFactory;
+import simulation.generator.app.Application;
+import simulation.generator.app.WorkflowStatistics;
+import simulation.generator.util.LinearModel;
+import simulation.generator.util.Misc;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Generates workflows on request, which avoids starting a JVM for each workflow.
+ *
+ * Each request is a line of the form
+ * <pre>application seed format [application args]</pre>
+ * e.g., "MONTAGE 42 dax -n 1000", where seed is a number or "-" for the default seed of {@link AppGenerator} and format
+ * is either "dax" (the workflow) or "stats" (a csv header and a row of {@link WorkflowStatistics}, with random memory
+ * models for the task types whose peak memory the application doesn't annotate, see {@link AppGenerator}).
+ * Each response is either "OK length" followed by a line break and length bytes, or "ERROR message" followed by a line break.
+ * Invalid requests, including invalid application arguments (see {@link simulation.generator.app.UsageException}), get an error response.
+ *
+ * Requests are generated concurrently by warm, reused application instances, the responses of a connection are sent in the order of its requests.
+ * The same request always gives the same workflow, regardless of the order or concurrency of requests.
+ */
+class GeneratorServer {
+
+    /** The maximum number of requests per connection that are generated or waiting to be sent. */
+    private static final int MAX_PENDING = 64;
+
+    private final ExecutorService generators;
+
+    GeneratorServer(int parallelism) {
+        this.generators = Executors.newFixedThreadPool(parallelism);
+    }
+
+    /** Stops the generators after the pending requests. */
+    void shutdown() {
+        generators.shutdown();
+    }
+
+    private static void usage(int exitCode) {
+        String msg = "GeneratorServer [-h] [-p <threads>] [-P <port>]" +
+                "\nReads requests from stdin and writes responses to stdout, unless a port is given." +
+                "\nRequest: <application> <seed or -> <dax|stats> [application args], e.g. MONTAGE 42 dax -n 1000" +
+                "\nResponse: OK <length>\\n<length bytes> or ERROR <message>\\n" +
+                "\n--parallelism | -p Number of workflows generated concurrently (default number of processors)." +
+                "\n--port | -P Accept connections on this port of the loopback interface instead of using stdin and stdout." +
+                "\n--help | -h Print help message.";
+
+        System.out.println(msg);
+        System.exit(exitCode);
+    }
+
+    public static void main(String[] args) throws Exception {
+        LongOpt[] longopts = new LongOpt[3];
+        longopts[0] = new LongOpt("parallelism", LongOpt.REQUIRED_ARGUMENT, null, 'p');
+        longopts[1] = new LongOpt("port", LongOpt.REQUIRED_ARGUMENT, null, 'P');
+        longopts[2] = new LongOpt("help", LongOpt.NO_ARGUMENT, null, 'h');
+
+        Getopt g = new Getopt("GeneratorServer", args, "p:P:h", longopts);
+        g.setOpterr(false);
+
+        int parallelism = Runtime.getRuntime().availableProcessors();
+        int port = -1;
+
+        int c;
+        while ((c = g.getopt()) != -1) {
+            switch (c) {
+                case 'p':
+                    parallelism = Integer.parseInt(g.getOptarg());
+                    break;
+                case 'P':
+                    port = Integer.parseInt(g.getOptarg());
+                    break;
+                case 'h':
+                    usage(0);
+                    break;
+                default:
+                    usage(1);
+            }
+        }
+
+        // avoid mixing up commas and dots when converting floating points to string (german vs. english locales)
+        Locale.setDefault(new Locale("EN_us"));
+
+        GeneratorServer server = new GeneratorServer(parallelism);
+        if (port < 0) {
+            server.serve(System.in, System.out);
+            server.shutdown();
+            return;
+        }
+
+        try (ServerSocket serverSocket = new ServerSocket(port, 50, InetAddress.getLoopbackAddress())) {
+            System.err.println("Listening on " + serverSocket.getLocalSocketAddress());
+            while (true) {
+                Socket socket = serverSocket.accept();
+                Thread connection = new Thread(() -> {
+                    try (Socket s = socket) {
+                        server.serve(s.getInputStream(), s.getOutputStream());
+                    } catch (IOException | InterruptedException e) {
+                        System.err.println("Connection failed: " + e);
+                    }
+                }, "connection " + socket.getRemoteSocketAddress());
+                connection.setDaemon(true);
+                connection.start();
+            }
+        }
+    }
+
+    /** Answers the requests read from the input until it ends. */
+    void serve(InputStream in, OutputStream out) throws IOException, InterruptedException {
+        BlockingQueue<Future<byte[]>> responses = new ArrayBlockingQueue<>(MAX_PENDING);
+        // the end of the requests
+        Future<byte[]> end = CompletableFuture.completedFuture(null);
+
+        OutputStream response = new BufferedOutputStream(out);
+        Thread sender = new Thread(() -> {
+            try {
+                for (Future<byte[]> next = responses.take(); next != end; next = responses.take()) {
+                    response.write(getResponse(next));
+                    // don't keep the client waiting for the next response to fill the buffer
+                    if (responses.isEmpty()) response.flush();
+                }
+                response.flush();
+            } catch (IOException | InterruptedException e) {
+                System.err.println("Could not send response: " + e);
+            }
+        }, "sender");
+        sender.start();
+
+        BufferedReader requests = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        String request;
+        while ((request = requests.readLine()) != null) {
+            if (request.trim().isEmpty()) continue;
+            String line = request;
+            // blocks if the client sends requests faster than it reads the responses
+            responses.put(generators.submit(() -> generate(line)));
+        }
+        responses.put(end);
+        sender.join();
+    }
+
+    /** @return the response to the request, including the status line */
+    private static byte[] generate(String request) throws Exception {
+        String[] fields = request.trim().split("\\s+");
+        if (fields.length < 3) {
+            throw new IllegalArgumentException("Expected <application> <seed> <format> [args], got " + request);
+        }
+        Application app = AppFactory.acquire(fields[0]);
+        ByteArrayOutputStream content = new ByteArrayOutputStream();
+        try {
+            long seed = fields[1].equals("-") ? Misc.DEFAULT_SEED : Long.parseLong(fields[1]);
+            String format = fields[2];
+            String[] args = Arrays.copyOfRange(fields, 3, fields.length);
+
+            Misc.setSeed(seed);
+            if (format.equals("stats")) {
+                // the statistics don't need the workflow itself
+                AbstractApplication application = (AbstractApplication) app;
+                application.setStatisticsOnly(true);
+                // task types whose peak memory the application doesn't annotate get a random memory model
+                application.generateWorkflow(LinearModel.randomMemoryModels(application.getTasktypes(), seed), args);
+            } else {
+                app.generateWorkflow(args);
+            }
+
+            switch (format) {
+                case "dax":
+                    app.printWorkflow(content);
+                    break;
+                case "stats":
+                    String statistics = ((AbstractApplication) app).getStatistics().toCsvRow(fields[0] + "." + seed);
+                    content.write((WorkflowStatistics.CSV_HEADER + "\n" + statistics + "\n").getBytes(StandardCharsets.UTF_8));
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown format " + format + ", expected dax or stats.");
+            }
+        } finally {
+            AppFactory.release(fields[0], app);
+        }
+
+        byte[] status = ("OK " + content.size() + "\n").getBytes(StandardCharsets.UTF_8);
+        byte[] response = Arrays.copyOf(status, status.length + content.size());
+        System.arraycopy(content.toByteArray(), 0, response, status.length, content.size());
+        return response;
+    }
+
+    /** @return the generated response or an error response */
+    private static byte[] getResponse(Future<byte[]> generated) throws InterruptedException {
+        try {
+            return generated.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            String message = cause.getMessage() == null ? cause.toString() : cause.getMessage();
+            return ("ERROR " + message.replace('\n', ' ') + "\n").getBytes(StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package simulation.generator;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.LongSupplier;
+
+/**
+ * Runs tasks on up to a fixed number of threads, but only starts a task if its estimated heap usage fits into the
+ * remaining heap. This allows running many small tasks at once, while large tasks run with less concurrency instead
+ * of running out of memory.
+ *
+ * A task is admitted if (1) the estimates of all running tasks plus its own estimate fit into the heap budget and
+ * (2) the heap in use after the last garbage collection plus its estimate does not exceed the budget, see {@link #heapInUseAfterCollection()}.
+ * The second condition accounts for memory held outside of tasks and for tasks that use more than estimated. Unlike the
+ * current heap usage, it does not count the garbage allocated since the last collection, which would otherwise block
+ * admission until the next collection.
+ * If no task is running, the next task is always admitted, so tasks larger than the budget run one at a time.
+ */
+public class MemoryAwareScheduler {
+
+    /** How often to check the heap usage while waiting for memory to become free, in milliseconds. */
+    private static final long POLL_INTERVAL = 100;
+
+    private final ExecutorService executor;
+    /** Reports the heap in use, in bytes, see {@link #heapInUseAfterCollection()}. */
+    private final LongSupplier heapInUse;
+    /** The part of the maximum heap size that tasks may use, in bytes. */
+    private final long budget;
+    /** The sum of the estimates of the admitted tasks that have not finished. */
+    private long reserved;
+    private int running;
+
+    /**
+     * @param maxParallelism the maximum number of tasks to run at once
+     * @param heapFraction the fraction of the maximum heap size that may be used, e.g., 0.8 to leave headroom for garbage collection.
+     */
+    public MemoryAwareScheduler(int maxParallelism, double heapFraction) {
+        this(maxParallelism, heapFraction, maxHeap(), MemoryAwareScheduler::heapInUseAfterCollection);
+    }
+
+    /**
+     * @param maxHeap the heap size the fraction refers to, in bytes
+     * @param heapInUse reports the heap in use, in bytes
+     */
+    MemoryAwareScheduler(int maxParallelism, double heapFraction, long maxHeap, LongSupplier heapInUse) {
+        this.executor = Executors.newFixedThreadPool(maxParallelism);
+        this.heapInUse = heapInUse;
+        this.budget = (long) (heapFraction * maxHeap);
+    }
+
+    private static long maxHeap() {
+        long maxHeap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getMax();
+        return maxHeap < 0 ? Runtime.getRuntime().maxMemory() : maxHeap;
+    }
+
+    /**
+     * Waits until the task can be admitted and submits it.
+     * @param estimatedBytes the heap the task needs while running
+     */
+    public <T> Future<T> submit(long estimatedBytes, Callable<T> task) throws InterruptedException {
+        admit(estimatedBytes);
+        try {
+            return executor.submit(() -> {
+                try {
+                    return task.call();
+                } finally {
+                    release(estimatedBytes);
+                }
+            });
+        } catch (RuntimeException e) {
+            release(estimatedBytes);
+            throw e;
+        }
+    }
+
+    private synchronized void admit(long estimatedBytes) throws InterruptedException {
+        while (running > 0 && (reserved + estimatedBytes > budget || heapInUse.getAsLong() + estimatedBytes > budget)) {
+            // released tasks notify, the heap in use also drops when the garbage collector runs
+            wait(POLL_INTERVAL);
+        }
+        reserved += estimatedBytes;
+        running++;
+    }
+
+    private synchronized void release(long estimatedBytes) {
+        reserved -= estimatedBytes;
+        running--;
+        notifyAll();
+    }
+
+    /**
+     * @return the sum over the heap memory pools of their usage after the last collection of the pool, see
+     * {@link MemoryPoolMXBean#getCollectionUsage()}. Pools that have not been collected yet, or don't report their
+     * usage after collections, count with their current usage.
+     */
+    static long heapInUseAfterCollection() {
+        Set<String> collected = new HashSet<>();
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            if (collector.getCollectionCount() > 0) collected.addAll(Arrays.asList(collector.getMemoryPoolNames()));
+        }
+        long used = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() != MemoryType.HEAP) continue;
+            MemoryUsage afterCollection = collected.contains(pool.getName()) ? pool.getCollectionUsage() : null;
+            used += (afterCollection != null ? afterCollection : pool.getUsage()).getUsed();
+        }
+        return used;
+    }
+
+    /** @return the number of bytes tasks may use in total */
+    public long getBudget() {
+        return budget;
+    }
+
+    /** See {@link ExecutorService#shutdown()} */
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    /** See {@link ExecutorService#shutdownNow()} */
+    public void shutdownNow() {
+        executor.shutdownNow();
+    }
+}
@@ -2,22 +2,39 @@ package simulation.generator;
 
 import java.io.File;
 import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.nio.file.Paths;
 
 import simulation.generator.app.*;
 import simulation.generator.app.Ligo;
+import simulation.generator.util.Misc;
 
 /**
  * Generate several workflows for each application.
+ * Optionally takes the directory of a {@link WorkflowCache} as argument, workflows found in the cache are copied instead of generated.
  * 
  * @author Gideon Juve <juve@usc.edu>
  */
 class RunAll {
+    private static WorkflowCache cache;
+
     private static void run(Application app, File outfile, String... args) throws Exception {
+        // each workflow is generated as if by a separate AppGenerator call, which makes them independent of each other and cacheable
+        String key = WorkflowCache.key(app.getClass().getName(), args, null, Misc.DEFAULT_SEED);
+        if (cache != null && cache.get(key, outfile.toPath())) return;
+        Misc.setSeed(Misc.DEFAULT_SEED);
         app.generateWorkflow(args);
-        app.printWorkflow(new FileOutputStream(outfile));
+        try (OutputStream out = new FileOutputStream(outfile)) {
+            app.printWorkflow(out);
+        }
+        if (cache != null) cache.put(key, outfile.toPath());
     }
     
     public static void main(String[] args) throws Exception {
+        if (args.length > 0) {
+            cache = new WorkflowCache(Paths.get(args[0]), 1024L * 1024 * 1024, false);
+        }
+
         run(new Cybershake(), new File("CyberShake_30.xml"), "-n", "30");
         run(new Cybershake(), new File("CyberShake_50.xml"), "-n", "50");
         run(new Cybershake(), new File("CyberShake_100.xml"), "-n", "100");
@@ -0,0 +1,180 @@
+package simulation.generator;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A directory of generated workflows, keyed by everything that determines a workflow: the application class, its
+ * arguments, the distribution profile, the seed and the {@link #GENERATOR_VERSION}.
+ * The cache is bounded in size, when it grows beyond the bound the least recently used workflows are deleted.
+ * Several processes can share a cache directory, entries are written to a temporary file and renamed.
+ */
+public class WorkflowCache {
+
+    /** Part of every key. Increment when a change to the generator changes the workflows generated from the same arguments and seed. */
+    public static final int GENERATOR_VERSION = 1;
+
+    private static final String SUFFIX = ".dax";
+
+    private final Path directory;
+    private final long maxBytes;
+    /** Whether to hard link cached workflows to their targets instead of copying them. Saves space and time, but modifying the target modifies the cache entry. */
+    private final boolean hardLinks;
+
+    /**
+     * @param maxBytes the cache directory is kept below this size
+     */
+    public WorkflowCache(Path directory, long maxBytes, boolean hardLinks) throws IOException {
+        this.directory = Files.createDirectories(directory);
+        this.maxBytes = maxBytes;
+        this.hardLinks = hardLinks;
+    }
+
+    /**
+     * @param applicationClass e.g., simulation.generator.app.Montage
+     * @param args the arguments passed to {@link simulation.generator.app.Application#generateWorkflow(String...)}
+     * @param profile the contents of the distribution profile, null if the application's distributions are used
+     * @param seed the seed of the generating thread, see {@link simulation.generator.util.Misc#setSeed(long)}
+     * @return the hex encoded SHA-256 hash of the parameters that determine a workflow
+     */
+    public static String key(String applicationClass, String[] args, byte[] profile, long seed) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException("SHA-256 is not supported by this JVM.", e);
+        }
+        // separate the fields, such that (a, bc) and (ab, c) give different keys
+        digest.update((GENERATOR_VERSION + "\0" + applicationClass + "\0" + seed + "\0").getBytes(StandardCharsets.UTF_8));
+        for (String arg : args) digest.update((arg + "\0").getBytes(StandardCharsets.UTF_8));
+        if (profile != null) {
+            digest.update("profile\0".getBytes(StandardCharsets.UTF_8));
+            digest.update(profile);
+        }
+        StringBuilder key = new StringBuilder();
+        for (byte b : digest.digest()) key.append(String.format("%02x", b));
+        return key.toString();
+    }
+
+    /**
+     * Copies (or links) the cached workflow to the target file.
+     * @return false if the workflow is not in the cache
+     */
+    public boolean get(String key, Path target) throws IOException {
+        Path entry = touch(key);
+        if (entry == null) return false;
+        if (hardLinks) {
+            try {
+                Files.deleteIfExists(target);
+                Files.createLink(target, entry);
+                return true;
+            } catch (UnsupportedOperationException | IOException e) {
+                // e.g., the cache is on a different file system or the entry has been evicted in the meantime, try copying
+            }
+        }
+        try {
+            Files.copy(entry, target, StandardCopyOption.REPLACE_EXISTING);
+            return true;
+        } catch (NoSuchFileException e) {
+            // evicted by another process
+            return false;
+        }
+    }
+
+    /**
+     * Writes the cached workflow to the given stream.
+     * @return false if the workflow is not in the cache
+     */
+    public boolean get(String key, OutputStream out) throws IOException {
+        Path entry = touch(key);
+        if (entry == null) return false;
+        try {
+            Files.copy(entry, out);
+            return true;
+        } catch (NoSuchFileException e) {
+            return false;
+        }
+    }
+
+    /** Adds a workflow to the cache and evicts the least recently used workflows if the cache has grown too large. */
+    public void put(String key, Path workflow) throws IOException {
+        Path temp = Files.createTempFile(directory, key, ".tmp");
+        Files.copy(workflow, temp, StandardCopyOption.REPLACE_EXISTING);
+        Files.move(temp, entry(key), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        evict();
+    }
+
+    /** Same as {@link #put(String, Path)} for a workflow that has been serialized to memory. */
+    public void put(String key, byte[] workflow) throws IOException {
+        Path temp = Files.createTempFile(directory, key, ".tmp");
+        Files.write(temp, workflow);
+        Files.move(temp, entry(key), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        evict();
+    }
+
+    /** @return the cache entry for the key, after marking it as recently used, or null if there is no such entry */
+    private Path touch(String key) throws IOException {
+        Path entry = entry(key);
+        try {
+            Files.setLastModifiedTime(entry, FileTime.fromMillis(System.currentTimeMillis()));
+            return entry;
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+    }
+
+    private Path entry(String key) {
+        return directory.resolve(key + SUFFIX);
+    }
+
+    /** Deletes the least recently used entries until the cache is below its maximum size. */
+    private void evict() throws IOException {
+        List<Path> entries = new ArrayList<>();
+        long size = 0;
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + SUFFIX)) {
+            for (Path entry : stream) {
+                try {
+                    size += Files.size(entry);
+                    entries.add(entry);
+                } catch (NoSuchFileException e) {
+                    // evicted by another process
+                }
+            }
+        }
+        if (size <= maxBytes) return;
+
+        FileTime[] lastUsed = new FileTime[entries.size()];
+        Integer[] byLastUse = new Integer[entries.size()];
+        for (int i = 0; i < lastUsed.length; i++) {
+            byLastUse[i] = i;
+            try {
+                lastUsed[i] = Files.getLastModifiedTime(entries.get(i));
+            } catch (NoSuchFileException e) {
+                lastUsed[i] = FileTime.fromMillis(0);
+            }
+        }
+        Arrays.sort(byLastUse, (a, b) -> lastUsed[a].compareTo(lastUsed[b]));
+        for (int i = 0; i < byLastUse.length && size > maxBytes; i++) {
+            Path entry = entries.get(byLastUse[i]);
+            try {
+                long entrySize = Files.size(entry);
+                Files.delete(entry);
+                size -= entrySize;
+            } catch (NoSuchFileException e) {
+                // evicted by another process
+            }
+        }
+    }
+}
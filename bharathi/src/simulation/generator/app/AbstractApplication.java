@@ -1,30 +1,55 @@
 package simulation.generator.app;
 
-import org.apache.commons.math.stat.descriptive.DescriptiveStatistics;
 import org.griphyn.vdl.dax.ADAG;
 
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
-import java.util.Iterator;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.Map;
+import java.util.Set;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.IntFunction;
-import java.util.stream.LongStream;
-import java.util.stream.Stream;
-import java.util.stream.StreamSupport;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
+import simulation.generator.util.ConfigParser;
 import simulation.generator.util.Distribution;
 import simulation.generator.util.LinearModel;
+import simulation.generator.util.MemoryModel;
+import simulation.generator.util.DistributionSketch;
+import simulation.generator.util.Misc;
 
 /**
  * @author Shishir Bharathi
  */
 public abstract class AbstractApplication implements Application {
 
-    private final ADAG dax;
+    private ADAG dax;
     private int id;
-    final Map<String, Distribution> distributions = new HashMap<>();
+    /** The distributions used to sample file sizes and runtimes. Filled by {@link #populateDistributions()} and immutable afterwards, see {@link #initDistributions()}. */
+    Map<String, Distribution> distributions = new HashMap<>();
+    /** The memory model of each task type, keyed by task type, see {@link #getTasktypes()}. */
     public Map<String, LinearModel> memoryModels = new HashMap<>();
+    /** The models of the task types whose peak memory the application doesn't annotate, see {@link #generateWorkflow(Map, String...)}. */
+    private Map<String, LinearModel> addedMemoryModels = new HashMap<>();
+    /** See {@link #setDistributionProfile(String)} */
+    private String distributionProfile;
+    /** See {@link #initDistributions()}, keyed by application class name and distribution profile. */
+    private static final Map<String, SharedDistributions> sharedDistributions = new ConcurrentHashMap<>();
+    /** The aggregates of each task type in the workflow, in the order the types first occur, see {@link #getStatistics()}. */
+    private Map<String, TaskTypeStatistics> taskTypeStatistics = new LinkedHashMap<>();
+    /** The dependencies and runtimes of the tasks, for the structural statistics. Empty in statistics only mode. */
+    private TaskGraph graph = new TaskGraph();
+    /** See {@link #setStatisticsOnly(boolean)} */
+    private boolean statisticsOnly;
+    /** In statistics only mode, the task added last, which the application may still annotate, see {@link #taskAdded(AppJob)}. */
+    private AppJob lastTask;
+    /** The compiled {@link #getFileTypeRules()}, on first use. */
+    private Pattern[] fileTypePatterns;
 
     AbstractApplication() {
         this.dax = new ADAG();
@@ -52,23 +77,196 @@ public abstract class AbstractApplication implements Application {
         return (int) generateDouble(key);
     }
 
+    /** Puts the application's hard-coded distributions into {@link #distributions}.
+     * This is called once per application class (and profile), later instances share the result, see {@link #initDistributions()}. */
     protected abstract void populateDistributions();
 
+    /** Puts the distributions into the given map that are drawn anew for every generated workflow, e.g., constants that
+     * are sampled from a distribution once per workflow. Entries of the distribution profile take precedence. */
+    protected void populateWorkflowDistributions(Map<String, Distribution> distributions) {
+    }
+
+    /** Puts the application's default memory models into {@link #memoryModels}. Unlike distributions, memory models are
+     * not shared between instances, so this is called for every generated workflow. */
+    protected void populateMemoryModels() {
+    }
+
+    /**
+     * @return the factor by which the application multiplies the runtimes it draws from the given distribution, unless
+     * the factor is set by an argument. {@link simulation.generator.DistributionFitter} divides the fitted runtimes of
+     * the job with that name by it, such that a profile reproduces the runtimes it was fitted to.
+     */
+    public double getDefaultRuntimeFactor(String distribution) {
+        return 1;
+    }
+
+    /**
+     * Use the distributions in the given profile instead of the hard-coded distributions with the same name.
+     * Profiles can be created with {@link simulation.generator.DistributionFitter}.
+     * @param filename the profile to read when generating the workflow, see {@link ConfigParser}; null to use the hard-coded distributions.
+     */
+    public void setDistributionProfile(String filename) {
+        this.distributionProfile = filename;
+    }
+
+    /**
+     * Initializes the {@link #distributions} from {@link #populateDistributions()} and the {@link #distributionProfile}, if any.
+     * The resulting map is built once per application class and profile and shared by all instances, read-only, unless
+     * the application adds {@link #populateWorkflowDistributions(Map) distributions of its own} for the workflow.
+     */
+    private void initDistributions() {
+        Map<String, Distribution> profile = null;
+        if (distributionProfile != null) {
+            try {
+                profile = ConfigParser.parse(distributionProfile);
+            } catch (Exception e) {
+                throw new RuntimeException("Could not read distribution profile " + distributionProfile, e);
+            }
+        }
+
+        String key = distributionProfile == null ? getClass().getName() : getClass().getName() + "|" + distributionProfile;
+        SharedDistributions shared = sharedDistributions.get(key);
+        // the profile map is replaced by the parser when the file changes
+        if (shared == null || shared.profile != profile) {
+            this.distributions = new HashMap<>();
+            // some applications draw constants while populating, which must not depend on the workflow that happens to do it first
+            Misc.withSeed(getClass().getName().hashCode(), this::populateDistributions);
+            if (profile != null) {
+                this.distributions.putAll(profile);
+            }
+            shared = new SharedDistributions(profile, Collections.unmodifiableMap(this.distributions));
+            sharedDistributions.put(key, shared);
+        }
+        this.distributions = shared.distributions;
+
+        Map<String, Distribution> workflowDistributions = new HashMap<>();
+        populateWorkflowDistributions(workflowDistributions);
+        if (!workflowDistributions.isEmpty()) {
+            this.distributions = new HashMap<>(shared.distributions);
+            workflowDistributions.forEach(this.distributions::putIfAbsent);
+        }
+
+        populateMemoryModels();
+    }
+
+    /**
+     * The rules that map file names to the distributions their sizes are drawn from, see {@link #getFileType(String)}.
+     * Each rule is a regular expression that must match the whole file name and a replacement that gives the name of
+     * the distribution, e.g., {"p\\d+mass-atlas-.*\\.fits", "p2mass.fits"}. Files whose sizes are derived from other
+     * values (e.g., the number of tasks) need no rule.
+     */
+    protected String[][] getFileTypeRules() {
+        return new String[0][];
+    }
+
+    /**
+     * @return the name of the distribution the application draws the size of the file from (the file type), by the first
+     * matching {@link #getFileTypeRules() rule} or the file name itself if it names a distribution. Null if there is none,
+     * e.g., because the size is derived from other values.
+     */
+    public String getFileType(String filename) {
+        if (distributions.isEmpty()) initDistributions();
+        String[][] rules = getFileTypeRules();
+        if (fileTypePatterns == null) {
+            fileTypePatterns = new Pattern[rules.length];
+            for (int i = 0; i < rules.length; i++) fileTypePatterns[i] = Pattern.compile(rules[i][0]);
+        }
+        for (int i = 0; i < rules.length; i++) {
+            Matcher matcher = fileTypePatterns[i].matcher(filename);
+            if ( ! matcher.matches()) continue;
+            String type = matcher.replaceFirst(rules[i][1]);
+            if (distributions.containsKey(type)) return type;
+        }
+        return distributions.containsKey(filename) ? filename : null;
+    }
+
+    /** The distributions of an application class, combined with a profile (or not). */
+    private static class SharedDistributions {
+        private final Map<String, Distribution> profile;
+        private final Map<String, Distribution> distributions;
+
+        private SharedDistributions(Map<String, Distribution> profile, Map<String, Distribution> distributions) {
+            this.profile = profile;
+            this.distributions = distributions;
+        }
+    }
+
+    /**
+     * Returns the application to the state of a new instance, discarding the generated workflow, such that the instance
+     * can generate another workflow, see {@link AppFactory#release(String, Application)}.
+     */
+    public void reset() {
+        this.dax = new ADAG();
+        this.id = 0;
+        this.distributions = new HashMap<>();
+        this.memoryModels = new HashMap<>();
+        this.addedMemoryModels = new HashMap<>();
+        this.taskTypeStatistics = new LinkedHashMap<>();
+        this.graph = new TaskGraph();
+        this.statisticsOnly = false;
+        this.lastTask = null;
+        this.distributionProfile = null;
+        resetParameters();
+    }
+
+    /** Restores the defaults of the parameters that {@link #processArgs(String[])} may change, see {@link #reset()}. */
+    protected void resetParameters() {
+    }
+
     String getNewJobID() {
         return String.format("ID%05d", this.id++);
     }
     
     @Override
     public void printWorkflow(OutputStream os) throws Exception {
+        if (statisticsOnly) throw new IllegalStateException("The workflow was generated in statistics only mode, see setStatisticsOnly.");
         this.dax.toXML(new OutputStreamWriter(os), "", null);
     }
+
+    /**
+     * In statistics only mode, the tasks feed their runtime, peak memory and input sizes into the {@link #getStatistics()}
+     * of their type, but the workflow does not keep them: tasks, files and dependencies are not added to the DAX or the
+     * graph of the workflow and can be garbage collected as soon as the application's construction code drops them.
+     * Until then, a task keeps only what the construction code reads, i.e., its input files but not its outputs or
+     * annotations, and its files are not resized.
+     * This allows computing the statistics of very large workflows, which can not be printed or returned by
+     * {@link #getTasks(String)}. The structural statistics (critical path, depth, etc.) are not computed.
+     *
+     * Applications that don't annotate the peak memory of their tasks need a model for each task type, see
+     * {@link #generateWorkflow(Map, String...)}. Tasks of these types are annotated when the next task is added, see
+     * {@link AppJob#annotatePeakMemBytes(LinearModel)}, such that the input size of a task is the sum of the input files
+     * added by then if the model doesn't draw input sizes itself.
+     * Must be set before generating the workflow.
+     */
+    public void setStatisticsOnly(boolean statisticsOnly) {
+        this.statisticsOnly = statisticsOnly;
+    }
+
+    public boolean isStatisticsOnly() {
+        return statisticsOnly;
+    }
+
+    /** Called by each new task. In statistics only mode, the application is done with the previous task. */
+    void taskAdded(AppJob task) {
+        if ( ! statisticsOnly) return;
+        completeLastTask();
+        lastTask = task;
+    }
+
+    /** Annotates the task added last with the memory model of its type, unless the application annotates the type itself. */
+    private void completeLastTask() {
+        if (lastTask == null) return;
+        LinearModel memoryModel = addedMemoryModels.get(lastTask.getClass().getSimpleName());
+        if (memoryModel != null && ! lastTask.hasPeakMemBytes()) lastTask.annotatePeakMemBytes(memoryModel);
+        lastTask = null;
+    }
     
     public ADAG getDAX() {
         return this.dax;
     }
     
     public void generateWorkflow(String... args) {
-        populateDistributions();
+        initDistributions();
         processArgs(args);
         constructWorkflow();
     }
@@ -79,135 +277,231 @@ public abstract class AbstractApplication implements Application {
      * This is used to create a map that relates task types names to {@link LinearModel}s, as passed to {@link #generateWorkflow(Map, String...)}. */
     public abstract String[] getTasktypes();
 
+    /** @return the number of tasks of the given type, also in {@link #setStatisticsOnly(boolean) statistics only} mode */
+    public int getNumTasks(String tasktype) {
+        TaskTypeStatistics type = taskTypeStatistics.get(tasktype);
+        return type == null ? 0 : type.numTasks;
+    }
+
     public AppJob[] getTasks(String tasktype){
-        Iterable iterable = getDAX()::iterateJob;
-        Stream<AppJob> targetStream = StreamSupport.stream(iterable.spliterator(), false);
-        return targetStream.filter( task -> task.getClass().getSimpleName().equals(tasktype)).toArray(AppJob[]::new); //j -> Long.parseLong(j.getAnnotation("peak_mem_bytes")));
-        // write out memory distributions
-        // if(numTasks==2000){
-        //     FileWriter fileWriter = new FileWriter("evaluation/sampled-peak-mem-"+app.getClass().getSimpleName()+".csv");
-        //     Iterable iterable = app.getDAX()::iterateJob;
-        //     Stream<AppJob> targetStream = StreamSupport.stream(iterable.spliterator(), false);
-        //     fileWriter.write(String.format("task_type,input_size_total_bytes,peak_mem_bytes\n"));
-        //     targetStream.forEach(j -> {
-        //         try {
-        //             fileWriter.write(String.format("%s,%s,%s%n",j.getName(),j.getAnnotation("input_total_bytes"),j.getAnnotation("peak_mem_bytes")));
-        //         } catch (IOException e) {
-        //             e.printStackTrace();
-        //         }
-        //     });
-        //     fileWriter.close();
-        // }
-        // }
+        TaskTypeStatistics type = taskTypeStatistics.get(tasktype);
+        return type == null ? new AppJob[0] : type.tasks.toArray(new AppJob[0]);
     }
 
     /** Generate a synthetic workflow with the same topology as the {@link AbstractApplication} but different resource usage characteristics.
-     * This was used to generate the workflow suite used in Witt et al. 2018 */
+     * This was used to generate the workflow suite used in Witt et al. 2018
+     * @param memoryModels the memory models of the task types the application has no default model for, see {@link #populateMemoryModels()} */
     public void generateWorkflow(Map<String, LinearModel> memoryModels, String... args) {
-        populateDistributions();
-        // replace the default memory models initialized in populateDistributions()
-        this.memoryModels = memoryModels;
+        initDistributions();
+        // add to the default memory models initialized in populateMemoryModels()
+        memoryModels.forEach((tasktype, model) -> {
+            if (this.memoryModels.putIfAbsent(tasktype, model) == null) addedMemoryModels.put(tasktype, model);
+        });
         processArgs(args);
         constructWorkflow();
     }
 
-    private LongStream getPeakMems(ADAG dax){
-        Iterable iterable = dax::iterateJob;
-        Stream<AppJob> targetStream = StreamSupport.stream(iterable.spliterator(), false);
-        return targetStream.mapToLong(j -> Long.parseLong(j.getAnnotation("peak_mem_bytes")));
-        // write out memory distributions
-        // if(numTasks==2000){
-        //     FileWriter fileWriter = new FileWriter("evaluation/sampled-peak-mem-"+app.getClass().getSimpleName()+".csv");
-        //     Iterable iterable = app.getDAX()::iterateJob;
-        //     Stream<AppJob> targetStream = StreamSupport.stream(iterable.spliterator(), false);
-        //     fileWriter.write(String.format("task_type,input_size_total_bytes,peak_mem_bytes\n"));
-        //     targetStream.forEach(j -> {
-        //         try {
-        //             fileWriter.write(String.format("%s,%s,%s%n",j.getName(),j.getAnnotation("input_total_bytes"),j.getAnnotation("peak_mem_bytes")));
-        //         } catch (IOException e) {
-        //             e.printStackTrace();
-        //         }
-        //     });
-        //     fileWriter.close();
-        // }
-        // }
-    }
-
-    /** @return information about the topology and resource consumption of the workflow. */
-    public WorkflowStatistics getStatistics(){
+    /** @return the aggregates of each task type, in the order in which the first task of each type was added */
+    Map<String, TaskTypeStatistics> getTaskTypeStatistics() {
+        return Collections.unmodifiableMap(taskTypeStatistics);
+    }
 
-        WorkflowStatistics statistics = new WorkflowStatistics();
+    /** @return the aggregates of the given task type, created when the first task of the type is added */
+    TaskTypeStatistics getTaskTypeStatistics(String tasktype) {
+        return taskTypeStatistics.computeIfAbsent(tasktype, type -> new TaskTypeStatistics( ! statisticsOnly));
+    }
 
-        Iterator<AppJob> iterable = getDAX().iterateJob();
+    TaskGraph getGraph() {
+        return graph;
+    }
 
-        while (iterable.hasNext()) {
+    /*
+     * Bulk transforms of the annotations, e.g., to normalize the resource usage of a workflow or for what-if analyses.
+     * Each transforms the values of the selected tasks in one pass and updates the statistics of their types along the way.
+     */
+
+    /**
+     * Multiplies the runtimes of the tasks by factor.
+     * Runtimes are written with two decimals, like the applications do, and are at least {@link AppJob#MIN_RUNTIME} seconds.
+     * In {@link #setStatisticsOnly(boolean) statistics only} mode, the statistics of the task types keep the runtimes to round them the same way.
+     * @param tasktype the type of the tasks to transform, null for all tasks
+     */
+    public void scaleRuntimes(String tasktype, double factor) {
+        if ( ! (factor > 0)) throw new IllegalArgumentException("Runtime scale factor must be positive, is " + factor);
+        for (TaskTypeStatistics type : selectTaskTypes(tasktype)) type.transformRuntimes(runtime -> runtime * factor);
+    }
 
-            AppJob next =  iterable.next();
-            String tasktype = next.getClass().getSimpleName();
+    /**
+     * Limits the runtimes of the tasks to [min, max] seconds, see {@link #scaleRuntimes(String, double)} for the format.
+     * @param tasktype the type of the tasks to transform, null for all tasks
+     */
+    public void clipRuntimes(String tasktype, double min, double max) {
+        if (min > max) throw new IllegalArgumentException(String.format("Minimum runtime %s exceeds maximum runtime %s.", min, max));
+        for (TaskTypeStatistics type : selectTaskTypes(tasktype)) type.transformRuntimes(runtime -> Math.max(min, Math.min(max, runtime)));
+    }
 
-            // count number of tasks
-            statistics.numberOfTasks++;
-            statistics.numberOfTasksPerTaskType.merge(tasktype, 1, (old,diff)->old+1);
+    /**
+     * Multiplies the peak memory of the tasks by factor, rounded to bytes.
+     * @param tasktype the type of the tasks to transform, null for all tasks
+     * @throws IllegalStateException in statistics only mode
+     */
+    public void scalePeakMemory(String tasktype, double factor) {
+        if ( ! (factor >= 0)) throw new IllegalArgumentException("Peak memory scale factor must not be negative, is " + factor);
+        for (TaskTypeStatistics type : selectTaskTypes(tasktype)) type.transformPeakMems(bytes -> Math.round(bytes * factor));
+    }
+
+    /**
+     * Limits the peak memory of the tasks to at most maxBytes.
+     * @param tasktype the type of the tasks to transform, null for all tasks
+     * @throws IllegalStateException in statistics only mode
+     */
+    public void capPeakMemory(String tasktype, long maxBytes) {
+        for (TaskTypeStatistics type : selectTaskTypes(tasktype)) type.transformPeakMems(bytes -> Math.min(maxBytes, bytes));
+    }
+
+    /**
+     * Annotates the tasks of the type with the given peak memory, in the order of {@link #getTasks(String)}, and rebuilds
+     * the statistics of the type once instead of updating them for each task.
+     * In {@link #setStatisticsOnly(boolean) statistics only} mode, the tasks are in the order they were added.
+     */
+    public void annotatePeakMemory(String tasktype, long[] bytes) {
+        TaskTypeStatistics type = taskTypeStatistics.get(tasktype);
+        if (type != null) type.setPeakMems(bytes);
+        else if (bytes.length > 0) throw new IllegalArgumentException("There are no tasks of type " + tasktype);
+    }
 
-            // accumulate total task runtime
-            double taskRuntimeSeconds = Double.parseDouble(next.getAnnotation("runtime"));
-            assert taskRuntimeSeconds > 0 : String.format("Task runtime must be > 0, is %s for task %s", taskRuntimeSeconds, next.getClass().getSimpleName());
+    /**
+     * Annotates the tasks of the type with the peak memory that the model generates for their total input sizes, in one
+     * batch, see {@link MemoryModel#generate(long[], long[])}.
+     * @throws IllegalStateException in statistics only mode
+     */
+    public void annotatePeakMemory(String tasktype, MemoryModel model) {
+        if (statisticsOnly && getNumTasks(tasktype) > 0) throw new IllegalStateException("Can not annotate peak memory from input sizes in statistics only mode, the tasks are not retained.");
+        AppJob[] tasks = getTasks(tasktype);
+        long[] inputSizes = new long[tasks.length];
+        for (int i = 0; i < tasks.length; i++) inputSizes[i] = tasks[i].getInputBytes();
+        long[] bytes = new long[tasks.length];
+        model.generate(inputSizes, bytes);
+        annotatePeakMemory(tasktype, bytes);
+    }
 
-            statistics.totalRuntimeSeconds += taskRuntimeSeconds;
+    /**
+     * Draws the runtime of each task again, from the distributions of the application and in the way it was drawn when
+     * the workflow was generated, e.g., to reuse the topology of a workflow with new runtimes. The tasks are visited in
+     * the order of {@link #getTaskTypeStatistics()} and {@link #getTasks(String)}, so the runtimes only depend on the random numbers.
+     * @throws IllegalStateException in statistics only mode
+     */
+    public void redrawRuntimes() {
+        for (TaskTypeStatistics type : taskTypeStatistics.values()) type.redrawRuntimes();
+    }
 
-            // accumulate total task spacetime usage
-            long taskMemoryBytes = Long.parseLong(next.getAnnotation("peak_mem_bytes"));
-            assert taskMemoryBytes > 0 : String.format("Task peak memory consumption must be > 0, is %d for task %s", taskMemoryBytes, next.getClass().getSimpleName());
-            double taskMemoryMB = 1e-6 * taskMemoryBytes;
-            statistics.totalSpacetimeMegabyteSeconds += taskRuntimeSeconds * taskMemoryMB;
+    /**
+     * Recomputes the statistics of each task type from the current annotations and input sizes of its tasks, such that
+     * they don't depend on the values that were replaced before, e.g., when the topology of a workflow is reused.
+     * @throws IllegalStateException in statistics only mode
+     */
+    public void rebuildStatistics() {
+        for (TaskTypeStatistics type : taskTypeStatistics.values()) type.rebuild();
+    }
 
-            // per task type statistics
-            statistics.memoryUsagesPerTaskType.putIfAbsent(tasktype, new DescriptiveStatistics());
-            statistics.memoryUsagesPerTaskType.get(tasktype).addValue(taskMemoryBytes);
-            // accumulate total input file sizes (byte) per task type
-            double sumOfInputs = next.getInputs().stream().mapToLong(AppFilename::getSize).sum();
-            statistics.inputSizesPerTaskType.putIfAbsent(tasktype, new DescriptiveStatistics());
-            statistics.inputSizesPerTaskType.get(tasktype).addValue(sumOfInputs);
+    /**
+     * Multiplies the sizes of the input files of the tasks by factor, rounded to bytes.
+     * Files shared by several of the tasks are scaled once. A file passed from a parent task is also resized in the uses of the parent.
+     * @param tasktype the type of the tasks to transform, null for all tasks
+     * @throws IllegalStateException in statistics only mode
+     */
+    public void scaleInputSizes(String tasktype, double factor) {
+        if ( ! (factor >= 0)) throw new IllegalArgumentException("File size scale factor must not be negative, is " + factor);
+        Set<AppFilename> files = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (TaskTypeStatistics type : selectTaskTypes(tasktype)) type.collectInputs(files);
+        for (AppFilename file : files) file.setSize(Math.round(file.getSize() * factor));
+    }
 
+    /**
+     * Annotates each task with the priorities that list scheduling heuristics compute from the workflow, such that
+     * simulators can read them instead of recomputing them: its upward rank as in HEFT (Topcuoglu et al. 2002, the
+     * bottom level including the transfer times to its children), top level and slack, see {@link TaskGraph#ranks(double)}.
+     * The priorities are written to the upward_rank, top_level and slack annotations with two decimals.
+     * Call again after transforming runtimes or file sizes.
+     * @param bytesPerSecond the bandwidth that converts the size of the files passed between tasks to transfer times,
+     *                       Double.POSITIVE_INFINITY to ignore transfers
+     * @throws IllegalStateException in statistics only mode or if a task has no runtime annotation
+     */
+    public void annotateRanks(double bytesPerSecond) {
+        if ( ! (bytesPerSecond > 0)) throw new IllegalArgumentException("Bandwidth must be positive, is " + bytesPerSecond);
+        if (statisticsOnly) throw new IllegalStateException("Can not annotate ranks in statistics only mode, the tasks are not retained.");
+        for (Map.Entry<String, TaskTypeStatistics> type : taskTypeStatistics.entrySet()) {
+            if (type.getValue().tasksWithRuntime < type.getValue().numTasks) {
+                throw new IllegalStateException(String.format("Not all %s tasks have runtime annotations.", type.getKey()));
+            }
+        }
+        double[][] ranks = graph.ranks(bytesPerSecond);
+        for (TaskTypeStatistics type : taskTypeStatistics.values()) {
+            for (AppJob task : type.tasks) {
+                int i = task.getIndex();
+                task.setRanks(ranks[0][i], ranks[1][i], ranks[2][i]);
+            }
         }
+    }
 
-        long minAverage = Long.MAX_VALUE;
-        long maxAverage = 0;
+    /** @return the aggregates of the given task type (none if there are no tasks of that type) or of all task types if tasktype is null */
+    private Collection<TaskTypeStatistics> selectTaskTypes(String tasktype) {
+        if (tasktype == null) return taskTypeStatistics.values();
+        TaskTypeStatistics type = taskTypeStatistics.get(tasktype);
+        return type == null ? Collections.emptyList() : Collections.singletonList(type);
+    }
 
-        // TODO this should be placed in the WorkflowStatistics class
-        // aggregate per task type statistics (min, max) into per workflow statistics
-        for(String tasktype : getTasktypes()){
+    /**
+     * @return information about the topology and resource consumption of the workflow.
+     * The resource statistics are maintained while the workflow is constructed and annotated, so they take time proportional to the number of task types.
+     * The structural statistics (critical path, parallelism, etc.) take one pass over the tasks and their dependencies, see {@link TaskGraph}.
+     * @throws IllegalStateException if a task has no runtime or peak_mem_bytes annotation
+     */
+    public WorkflowStatistics getStatistics(){
 
-            // find minimum and maximum peak memory usage across task types
-            statistics.maximumPeakMemoryBytes = (long) Math.max(statistics.maximumPeakMemoryBytes, statistics.memoryUsagesPerTaskType.get(tasktype).getMax());
-            statistics.minimumPeakMemory= (long) Math.min(statistics.minimumPeakMemory, statistics.memoryUsagesPerTaskType.get(tasktype).getMin());
+        if (statisticsOnly) completeLastTask();
+        WorkflowStatistics statistics = new WorkflowStatistics();
 
-            minAverage = (long) Math.min(minAverage, statistics.memoryUsagesPerTaskType.get(tasktype).getMean());
-            maxAverage = (long) Math.max(maxAverage, statistics.memoryUsagesPerTaskType.get(tasktype).getMean());
+        long minAverage = Long.MAX_VALUE;
+        long maxAverage = 0;
 
-        }
+        for (Map.Entry<String, TaskTypeStatistics> entry : taskTypeStatistics.entrySet()) {
+            String tasktype = entry.getKey();
+            TaskTypeStatistics type = entry.getValue();
+            if (type.numTasks == 0) continue;
+            if (type.tasksWithRuntime < type.numTasks || type.getTasksWithPeakMem() < type.numTasks) {
+                throw new IllegalStateException(String.format("Not all %s tasks have runtime and peak_mem_bytes annotations.", tasktype));
+            }
+
+            statistics.numberOfTasks += type.numTasks;
+            statistics.numberOfTasksPerTaskType.put(tasktype, type.numTasks);
+            statistics.totalRuntimeSeconds += type.runtimeSum;
+            statistics.totalSpacetimeMegabyteSeconds += type.spacetimeSum;
 
-        // compute memory heterogeneity in a second pass
-        double oversizingWastageMBs = 0;
-        iterable = getDAX().iterateJob();
-        while (iterable.hasNext()) {
+            DistributionSketch memory = type.getMemory();
+            statistics.memoryUsagesPerTaskType.put(tasktype, memory);
+            statistics.inputSizesPerTaskType.put(tasktype, type.getInputs());
+            statistics.memoryUsages.merge(memory);
 
-            AppJob next = iterable.next();
-            double taskRuntimeSeconds = Double.parseDouble(next.getAnnotation("runtime"));
-            double taskMemoryWastageMB = 1e-6 * (statistics.maximumPeakMemoryBytes - Long.parseLong(next.getAnnotation("peak_mem_bytes")));
-            assert taskMemoryWastageMB >= 0 : "Negative Wastage";
-            oversizingWastageMBs += taskRuntimeSeconds * taskMemoryWastageMB;
+            // find minimum and maximum peak memory usage across task types
+            statistics.maximumPeakMemoryBytes = (long) Math.max(statistics.maximumPeakMemoryBytes, memory.getMax());
+            statistics.minimumPeakMemory = (long) Math.min(statistics.minimumPeakMemory, memory.getMin());
 
+            minAverage = (long) Math.min(minAverage, memory.getMean());
+            maxAverage = (long) Math.max(maxAverage, memory.getMean());
         }
 
-        statistics.memoryHeterogeneity = statistics.totalSpacetimeMegabyteSeconds / (statistics.totalSpacetimeMegabyteSeconds+oversizingWastageMBs);
+        // the wastage of giving each task the maximum peak memory is sum(runtime * (max - peak)) = max * total runtime - total spacetime
+        double maximumSpacetimeMegabyteSeconds = 1e-6 * statistics.maximumPeakMemoryBytes * statistics.totalRuntimeSeconds;
+        statistics.memoryHeterogeneity = statistics.totalSpacetimeMegabyteSeconds / maximumSpacetimeMegabyteSeconds;
         statistics.cpuToMemRatio = statistics.totalRuntimeSeconds / statistics.totalSpacetimeMegabyteSeconds;
 
         // TODO double check these statistics
         statistics.smallestAveragePeakMemoryBytes = minAverage;
         statistics.largestAveragePeakMemoryBytes = maxAverage;
 
-
+        // the graph is not recorded in statistics only mode
+        if ( ! statisticsOnly) graph.analyze(statistics);
 
         return statistics;
     }
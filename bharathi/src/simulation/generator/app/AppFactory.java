@@ -1,29 +1,119 @@
 package simulation.generator.app;
 
+import java.lang.reflect.Constructor;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
 
 /**
+ * Creates applications by name. Application names are case insensitive.
+ * All methods can be called from several threads at once.
+ *
  * @author Shishir Bharathi
  */
 public class AppFactory {
-    private static final Map<String, Application> appMap;
-    
+
+    /** The maximum number of idle instances kept per application, see {@link #release(String, Application)}. */
+    private static final int MAX_POOLED = Runtime.getRuntime().availableProcessors();
+
+    /** The built-in applications by name. Their classes are loaded when they are first requested, which keeps startup fast. */
+    private static final Map<String, String> builtIn = new HashMap<>();
+    private static final Map<String, Supplier<? extends AbstractApplication>> registry = new ConcurrentHashMap<>();
+    /** Instances that have been released and reset, by application name. */
+    private static final Map<String, Pool> pools = new ConcurrentHashMap<>();
+
     static {
-        appMap = new HashMap<String, Application>();
-        appMap.put("Ligo", new Ligo());
-        appMap.put("GENOME", new Genome());
-        appMap.put("MONTAGE", new Montage());
-        appMap.put("Sipht", new Sipht());
-        appMap.put("CYBERSHAKE", new Cybershake());
-        appMap.put("VC", new VariantCalling());
-    }
-    
+        builtIn.put("LIGO", "simulation.generator.app.Ligo");
+        builtIn.put("GENOME", "simulation.generator.app.Genome");
+        builtIn.put("MONTAGE", "simulation.generator.app.Montage");
+        builtIn.put("SIPHT", "simulation.generator.app.Sipht");
+        builtIn.put("CYBERSHAKE", "simulation.generator.app.Cybershake");
+        builtIn.put("VC", "simulation.generator.app.VariantCalling");
+        // the namespace of its jobs, see DistributionFitter
+        builtIn.put("VARIANTCALLING", "simulation.generator.app.VariantCalling");
+    }
+
+    /** Makes an application available under the given name, replacing any application registered under that name. */
+    public static void register(String appName, Supplier<? extends AbstractApplication> supplier) {
+        registry.put(appName.toUpperCase(), supplier);
+        pools.remove(appName.toUpperCase());
+    }
+
+    /** @return a new instance of the application */
     public static Application getApp(String appName) throws Exception {
-        Application app = appMap.get(appName.toUpperCase());
-        if (app == null) {
+        return createApp(appName);
+    }
+
+    /** Returns a new instance on each call, such that several workflows can be generated concurrently. */
+    public static Application createApp(String appName) throws Exception {
+        Supplier<? extends AbstractApplication> supplier = registry.computeIfAbsent(appName.toUpperCase(), AppFactory::loadBuiltIn);
+        if (supplier == null) {
             throw new Exception("Unknown application: " + appName);
         }
-        return app;
+        return supplier.get();
+    }
+
+    /** @return a supplier of instances of the built-in application, null if there is no such application */
+    private static Supplier<? extends AbstractApplication> loadBuiltIn(String appName) {
+        String className = builtIn.get(appName);
+        if (className == null) return null;
+        Constructor<? extends AbstractApplication> constructor;
+        try {
+            constructor = Class.forName(className).asSubclass(AbstractApplication.class).getDeclaredConstructor();
+        } catch (ReflectiveOperationException e) {
+            throw new RuntimeException("Could not load application " + className, e);
+        }
+        return () -> {
+            try {
+                return constructor.newInstance();
+            } catch (ReflectiveOperationException e) {
+                throw new RuntimeException("Could not create application " + className, e);
+            }
+        };
+    }
+
+    /**
+     * Like {@link #createApp(String)}, but reuses an instance passed to {@link #release(String, Application)} if there is one.
+     * The instance is used by the caller only, until it is released.
+     */
+    public static Application acquire(String appName) throws Exception {
+        Pool pool = pools.get(appName.toUpperCase());
+        Application app = pool == null ? null : pool.poll();
+        return app != null ? app : createApp(appName);
+    }
+
+    /**
+     * Resets the application and keeps it for reuse by {@link #acquire(String)}. The caller must not use the application afterwards.
+     * @param appName the name the application was acquired with
+     */
+    public static void release(String appName, Application app) {
+        if ( ! (app instanceof AbstractApplication)) return;
+        ((AbstractApplication) app).reset();
+        pools.computeIfAbsent(appName.toUpperCase(), name -> new Pool()).offer((AbstractApplication) app);
+    }
+
+    /** Idle instances of an application, at most {@link #MAX_POOLED}. */
+    private static class Pool {
+        private final Queue<AbstractApplication> idle = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger size = new AtomicInteger();
+
+        private AbstractApplication poll() {
+            AbstractApplication app = idle.poll();
+            if (app != null) size.decrementAndGet();
+            return app;
+        }
+
+        private void offer(AbstractApplication app) {
+            if (size.incrementAndGet() > MAX_POOLED) {
+                // enough idle instances, leave this one to the garbage collector
+                size.decrementAndGet();
+                return;
+            }
+            idle.offer(app);
+        }
     }
 }
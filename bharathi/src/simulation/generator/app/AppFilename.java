@@ -6,7 +6,9 @@ import java.io.Writer;
 import com.sun.istack.internal.NotNull;
 import org.griphyn.vdl.dax.Filename;
 import org.griphyn.vdl.classes.LFN;
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -14,7 +16,18 @@ import java.util.Map;
  */
 public class AppFilename extends Filename {
 
-    private final Map<String, String> annotations;
+    /** The only annotation of a file. */
+    private static final String SIZE = "size";
+    /** The size annotation in bytes. A field instead of a map of annotations, which takes several times the memory of the rest of the file. */
+    private long size;
+    /** The hash code of the size annotation, as that of a map with the size as its only entry, such that sets of files keep their iteration order. */
+    private int hash;
+    /** The tasks that read this file, notified when its size changes. Null if there are none. */
+    private List<AppJob> consumers;
+    /** The dependency in the {@link TaskGraph} whose data this file is, -1 if the file does not link two tasks. */
+    int linkEdge = -1;
+    /** The same file in the outputs of the parent task if this file links two tasks, resized along with this file. Null otherwise. */
+    AppFilename linkedOutput;
 
     public AppFilename(String filename, int type, long size) {
         this(filename, type, size, LFN.XFER_MANDATORY, true);
@@ -23,24 +36,22 @@ public class AppFilename extends Filename {
 
     public AppFilename(String filename, int type, long size, int transfer, boolean register) {
         super(filename, type);
-        this.annotations = new HashMap<String, String>();
-        this.annotations.put("size", String.valueOf(size));
+        sizeChanged(size);
         super.setTransfer(transfer);
         super.setRegister(register);
         assert filename != null : "passed null as filename to AppFilename constructor, type = [" + type + "], size = [" + size + "], transfer = [" + transfer + "], register = [" + register + "]";
     }
 
+    /** @return the annotations of the file, which can not be modified, see {@link #setSize(long)} */
     public Map<String, String> getAnnotations() {
-        return this.annotations;
+        return Collections.singletonMap(SIZE, Long.toString(size));
     }
 
     private String annotatedXML(String temp) {
         int idx = temp.indexOf("/>");
         StringBuilder result = new StringBuilder(temp.length() + 32);
         result.append(temp.substring(0, idx));
-        for (Map.Entry<String, String> entry : this.annotations.entrySet()) {
-            result.append(" " + entry.getKey() + "=\"" + entry.getValue() + "\"");
-        }
+        result.append(' ').append(SIZE).append("=\"").append(size).append('"');
         result.append("/>\n");
 
         return result.toString();
@@ -48,12 +59,27 @@ public class AppFilename extends Filename {
 
     /** This is used to override file sizes to conform to a random memory model {@link simulation.generator.util.LinearModel} that has a dependency on file size. */
     public void setSize(long filesize) {
-        this.annotations.put("size", Long.toString(filesize));
+        long oldSize = getSize();
+        sizeChanged(filesize);
+        if (linkedOutput != null) linkedOutput.sizeChanged(filesize);
+        if (consumers != null) {
+            for (AppJob consumer : consumers) consumer.inputSizeChanged(oldSize, filesize);
+            if (linkEdge >= 0) consumers.get(0).linkSizeChanged(linkEdge, filesize);
+        }
+    }
+
+    void addConsumer(AppJob task) {
+        if (consumers == null) consumers = new ArrayList<>(1);
+        consumers.add(task);
+    }
+
+    private void sizeChanged(long size) {
+        this.size = size;
+        this.hash = SIZE.hashCode() ^ Long.toString(size).hashCode();
     }
 
     public long getSize() {
-        String sizeStr = this.annotations.get("size");
-        return Long.parseLong(sizeStr);
+        return size;
     }
 
     @Override
@@ -85,7 +111,9 @@ public class AppFilename extends Filename {
     @Override
     public Object clone() {
         AppFilename f = (AppFilename) super.clone();
-        f.annotations.putAll(this.annotations);
+        f.consumers = null;
+        f.linkEdge = -1;
+        f.linkedOutput = null;
 
         return f;
     }
@@ -98,11 +126,11 @@ public class AppFilename extends Filename {
 
         AppFilename that = (AppFilename) o;
 
-        return annotations != null ? annotations.equals(that.annotations) : that.annotations == null;
+        return size == that.size;
     }
 
     @Override
     public int hashCode() {
-        return annotations != null ? annotations.hashCode() : 0;
+        return hash;
     }
 }
\ No newline at end of file
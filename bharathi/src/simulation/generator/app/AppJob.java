@@ -3,60 +3,344 @@ package simulation.generator.app;
 import java.io.IOException;
 import java.io.Writer;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.function.DoubleUnaryOperator;
 
 import org.griphyn.vdl.classes.LFN;
 import org.griphyn.vdl.dax.Job;
 import org.griphyn.vdl.dax.Leaf;
 import org.griphyn.vdl.dax.Profile;
+import org.griphyn.vdl.dax.PseudoText;
+import simulation.generator.util.LinearModel;
 
 /**
  * @author Shishir Bharathi
  */
 public class AppJob extends Job {
 
-    private final Application app;
+    /** The smallest runtime written by {@link #setRuntime(double)}, the smallest positive value with two decimals. */
+    static final double MIN_RUNTIME = 0.01;
+    /** The annotations that are kept in fields and only formatted when written. */
+    private static final String RUNTIME = "runtime", PEAK_MEM_BYTES = "peak_mem_bytes", UPWARD_RANK = "upward_rank", TOP_LEVEL = "top_level", SLACK = "slack";
+
+    private final AbstractApplication app;
     private final Set<AppFilename> inputs;
+    /** The output files, null in statistics only mode, where the outputs are neither written nor resized. */
     private final Set<AppFilename> outputs;
+    /**
+     * The annotations in the order they are written. The values of the annotations that are formatted from fields when written (e.g., the runtime) are null.
+     * Null in statistics only mode, where the task is not written and only the fields feed the statistics of the task type.
+     */
     private final Map<String, String> annotations;
-
-    AppJob(Application app, String namespace, String name, String version, String jobID) {
+    /** The runtime annotation in seconds, NaN if there is none. */
+    private double runtime = Double.NaN;
+    /** The runtime is written with as many decimals as the scale has zeros, see {@link #annotateRuntime(double, int)}. */
+    private long runtimeScale = 100;
+    /** The distribution the runtime was drawn from and the runtime as a function of the draw, see {@link #annotateRuntime(String, DoubleUnaryOperator, int)}, null if it was set directly. */
+    private String runtimeDistribution;
+    private DoubleUnaryOperator runtimeOfDraw;
+    private int runtimeDecimals;
+    /** The peak_mem_bytes annotation, -1 if there is none. */
+    private long peakMemBytes = -1;
+    /** The argument that repeats the peak memory, see {@link #addPeakMemoryArgument(double)}, null if there is none. */
+    private PseudoText peakMemoryArgument;
+    private double peakMemoryRelativeTime;
+    /** The sum of the sizes of the input files. */
+    private long inputBytes;
+    /** Whether the input size was drawn from a memory model instead, see {@link #annotatePeakMemBytes(LinearModel)}. */
+    private boolean inputBytesSampled;
+    /** The aggregates of this task's type, kept up to date by this task. */
+    private final TaskTypeStatistics typeStatistics;
+    /** The position of this task in the {@link TaskGraph} of the application, -1 in statistics only mode. */
+    private final int index;
+    /** The position of this task among the tasks of its type. */
+    private final int typeIndex;
+    /** The priorities set by {@link AbstractApplication#annotateRanks(double)}, NaN if they have not been computed. */
+    private double upwardRank = Double.NaN;
+    private double topLevel = Double.NaN;
+    private double slack = Double.NaN;
+
+    AppJob(AbstractApplication app, String namespace, String name, String version, String jobID) {
         super(namespace, name, version, jobID);
         this.app = app;
-        this.app.getDAX().addJob(this);
+        if ( ! app.isStatisticsOnly()) this.app.getDAX().addJob(this);
         this.inputs = new HashSet<>();
-        this.outputs = new HashSet<>();
-        this.annotations = new HashMap<>();
+        this.outputs = app.isStatisticsOnly() ? null : new HashSet<>();
+        this.annotations = app.isStatisticsOnly() ? null : new HashMap<>();
+        this.typeStatistics = app.getTaskTypeStatistics(getClass().getSimpleName());
+        this.typeIndex = this.typeStatistics.taskAdded(this);
+        this.index = app.isStatisticsOnly() ? -1 : app.getGraph().addTask();
+        app.taskAdded(this);
     }
 
+    /** Sets the annotation to the given value, which is written as is. */
     public void addAnnotation(String key, String value) {
-        this.annotations.put(key, value);
+        putAnnotation(key, value);
+        switch (key) {
+            case RUNTIME:
+                runtimeChanged(Double.parseDouble(value));
+                break;
+            case PEAK_MEM_BYTES:
+                peakMemChanged(Long.parseLong(value));
+                break;
+        }
+    }
+
+    private void putAnnotation(String key, String value) {
+        if (annotations != null) annotations.put(key, value);
+    }
+
+    /** Sets the runtime annotation, rounded to two decimals like most applications write it, see {@link #annotateRuntime(double, int)}. */
+    public void annotateRuntime(double seconds) {
+        annotateRuntime(seconds, 2);
+    }
+
+    /** Sets the runtime annotation, rounded to the given number of decimals, and updates the statistics of the task type. */
+    public void annotateRuntime(double seconds, int decimals) {
+        putAnnotation(RUNTIME, null);
+        runtimeScale = (long) Math.pow(10, decimals);
+        runtimeChanged(round(seconds, runtimeScale));
+    }
+
+    /** Draws the runtime from the distribution of the application, with two decimals, see {@link #annotateRuntime(String, DoubleUnaryOperator, int)}. */
+    void annotateRuntime(String distribution, DoubleUnaryOperator runtimeOfDraw) {
+        annotateRuntime(distribution, runtimeOfDraw, 2);
+    }
+
+    /**
+     * Sets the runtime annotation to the function of a value drawn from the distribution of the application, e.g., a base runtime
+     * times the runtime factor or a size divided by a rate. The task remembers how its runtime was drawn, see {@link #redrawRuntime()}.
+     * @param runtimeOfDraw must only depend on the draw and on values that do not change after the task has been constructed
+     */
+    void annotateRuntime(String distribution, DoubleUnaryOperator runtimeOfDraw, int decimals) {
+        // the runtimes can not be drawn again in statistics only mode, see TaskTypeStatistics#redrawRuntimes()
+        if ( ! app.isStatisticsOnly()) {
+            this.runtimeDistribution = distribution;
+            this.runtimeOfDraw = runtimeOfDraw;
+            this.runtimeDecimals = decimals;
+        }
+        annotateRuntime(runtimeOfDraw.applyAsDouble(app.generateDouble(distribution)), decimals);
+    }
+
+    /** Draws the runtime again in the way it was drawn when the workflow was generated, does nothing if the runtime was not drawn from a distribution. */
+    void redrawRuntime() {
+        if (runtimeDistribution != null) annotateRuntime(runtimeDistribution, runtimeOfDraw, runtimeDecimals);
+    }
+
+    private void runtimeChanged(double newRuntime) {
+        typeStatistics.runtimeChanged(this, runtime, newRuntime);
+        runtime = newRuntime;
+        if (index >= 0) app.getGraph().setRuntime(index, runtime);
+    }
+
+    /** Sets the peak_mem_bytes annotation and updates the statistics of the task type. */
+    public void annotatePeakMemBytes(long bytes) {
+        putAnnotation(PEAK_MEM_BYTES, null);
+        peakMemChanged(bytes);
+    }
+
+    /**
+     * Sets the peak_mem_bytes annotation from the memory model: a model that draws input sizes (see {@link LinearModel#nextSample()})
+     * also replaces the total input size of the task in the statistics, otherwise the model is applied to the total input size.
+     */
+    void annotatePeakMemBytes(LinearModel memoryModel) {
+        if (memoryModel.samplesInputSizes()) {
+            double[] sample = memoryModel.nextSample();
+            inputSizeChanged(inputBytes, (long) sample[0]);
+            inputBytesSampled = true;
+            annotatePeakMemBytes((long) sample[1]);
+        } else {
+            annotatePeakMemBytes(memoryModel.generate(inputBytes));
+        }
+    }
+
+    private void peakMemChanged(long newPeakMemBytes) {
+        typeStatistics.peakMemChanged(this, peakMemBytes, newPeakMemBytes);
+        peakMemBytes = newPeakMemBytes;
+    }
+
+    /**
+     * Repeats the peak memory as an argument, as a compatibility hack for DAX consumers that only read the arguments:
+     * peak_mem_bytes=...,peak_memory_relative_time=... The argument follows later changes of the peak memory.
+     * Calling this again only replaces the relative time.
+     * @param relativeTime the point in the task's runtime at which the peak memory is reached, between 0 and 1
+     */
+    public void addPeakMemoryArgument(double relativeTime) {
+        peakMemoryRelativeTime = relativeTime;
+        if (peakMemoryArgument == null) {
+            peakMemoryArgument = new PseudoText();
+            addArgument(peakMemoryArgument);
+        }
     }
 
     public String getAnnotation(String key) {
-        return annotations.get(key);
+        String value = annotations == null ? null : annotations.get(key);
+        if (value != null) return value;
+        switch (key) {
+            case RUNTIME: return hasRuntime() ? format(runtime, runtimeScale) : null;
+            case PEAK_MEM_BYTES: return hasPeakMemBytes() ? Long.toString(peakMemBytes) : null;
+            case UPWARD_RANK: return hasRanks() ? format(upwardRank, 100) : null;
+            case TOP_LEVEL: return hasRanks() ? format(topLevel, 100) : null;
+            case SLACK: return hasRanks() ? format(slack, 100) : null;
+            default: return null;
+        }
+    }
+
+    /** @return the value rounded to a multiple of 1/scale, half up, e.g., to two decimals for scale 100 */
+    private static double round(double value, long scale) {
+        return Math.round(value * scale) / (double) scale;
+    }
+
+    /** @return the value with as many decimals as scale has zeros, like String.format("%.2f", value) for scale 100 but independent of the locale */
+    static String format(double value, long scale) {
+        long scaled = Math.round(value * scale);
+        StringBuilder result = new StringBuilder(24);
+        if (scaled < 0) {
+            result.append('-');
+            scaled = -scaled;
+        }
+        result.append(scaled / scale);
+        if (scale == 1) return result.toString();
+        result.append('.');
+        String fraction = Long.toString(scaled % scale);
+        for (long digits = scale / 10; digits > 1 && scaled % scale < digits; digits /= 10) result.append('0');
+        return result.append(fraction).toString();
     }
 
     Application getApp() {
         return this.app;
     }
 
+    boolean hasRuntime() {
+        return ! Double.isNaN(runtime);
+    }
+
+    /** @return the runtime annotation in seconds */
+    public double getRuntime() {
+        return runtime;
+    }
+
+    int getTypeIndex() {
+        return typeIndex;
+    }
+
+    /** @return the scale of the runtime annotation, it is written with as many decimals as the scale has zeros */
+    long getRuntimeScale() {
+        return runtimeScale;
+    }
+
+    boolean hasPeakMemBytes() {
+        return peakMemBytes >= 0;
+    }
+
+    long getPeakMemBytes() {
+        return peakMemBytes;
+    }
+
+    /**
+     * Sets the runtime annotation without notifying the statistics of the task type, see {@link TaskTypeStatistics#transformRuntimes(java.util.function.DoubleUnaryOperator)}.
+     * The runtime is written with two decimals, like the applications do, and is at least {@link #MIN_RUNTIME} seconds.
+     * @return the runtime as written to the annotation
+     */
+    double setRuntime(double seconds) {
+        putAnnotation(RUNTIME, null);
+        runtimeScale = 100;
+        runtime = roundRuntime(seconds);
+        app.getGraph().setRuntime(index, runtime);
+        return runtime;
+    }
+
+    /** @return the runtime as written by {@link #setRuntime(double)}: with two decimals and at least {@link #MIN_RUNTIME} seconds */
+    static double roundRuntime(double seconds) {
+        return round(Math.max(MIN_RUNTIME, seconds), 100);
+    }
+
+    /**
+     * Sets the peak memory annotation without notifying the statistics of the task type, see {@link TaskTypeStatistics#transformPeakMems(java.util.function.LongUnaryOperator)}.
+     * The {@link #addPeakMemoryArgument(double) argument} that repeats the peak memory follows.
+     * @return the peak memory as written to the annotation, at least zero
+     */
+    long setPeakMemBytes(long bytes) {
+        putAnnotation(PEAK_MEM_BYTES, null);
+        peakMemBytes = Math.max(0, bytes);
+        return peakMemBytes;
+    }
+
+    /**
+     * Sets the upward_rank, top_level and slack annotations, written with two decimals like the runtime.
+     * See {@link AbstractApplication#annotateRanks(double)}.
+     */
+    void setRanks(double upwardRank, double topLevel, double slack) {
+        putAnnotation(UPWARD_RANK, null);
+        putAnnotation(TOP_LEVEL, null);
+        putAnnotation(SLACK, null);
+        this.upwardRank = round(upwardRank, 100);
+        this.topLevel = round(topLevel, 100);
+        this.slack = round(slack, 100);
+    }
+
+    boolean hasRanks() {
+        return ! Double.isNaN(upwardRank);
+    }
+
+    /** @return the length of the longest path from the start of this task to the end of the workflow, in seconds (bottom level) */
+    double getUpwardRank() {
+        return upwardRank;
+    }
+
+    /** @return the length of the longest path from the start of the workflow to the start of this task, in seconds */
+    double getTopLevel() {
+        return topLevel;
+    }
+
+    /** @return by how much this task can be delayed without delaying the workflow, in seconds */
+    double getSlack() {
+        return slack;
+    }
+
+    int getIndex() {
+        return index;
+    }
+
+    /** @return the sum of the sizes of the input files */
+    long getInputBytes() {
+        return inputBytes;
+    }
+
+    /** Called by an input file of this task when its size changes. */
+    void inputSizeChanged(long oldSize, long newSize) {
+        if (inputBytesSampled) return;
+        long newInputBytes = inputBytes - oldSize + newSize;
+        typeStatistics.inputBytesChanged(inputBytes, newInputBytes);
+        inputBytes = newInputBytes;
+    }
+
+    /** Called by an input file of this task that links it to its parent when the file's size changes. */
+    void linkSizeChanged(int edge, long size) {
+        app.getGraph().setEdgeBytes(edge, size);
+    }
+
     public Set<AppFilename> getInputs() {
         return this.inputs;
     }
 
+    /** @return the output files, empty in statistics only mode */
     protected Set<AppFilename> getOutputs() {
-        return this.outputs;
+        return this.outputs == null ? Collections.<AppFilename>emptySet() : this.outputs;
     }
 
     void input(AppFilename f) {
         if (!this.inputs.contains(f)) {
-            this.addUses(f);
+            if ( ! app.isStatisticsOnly()) this.addUses(f);
             this.inputs.add(f);
+            // files are not resized in statistics only mode
+            if ( ! app.isStatisticsOnly()) f.addConsumer(this);
+            inputSizeChanged(0, f.getSize());
         }
     }
 
@@ -70,11 +354,18 @@ public class AppJob extends Job {
         }
     }
 
-    private void output(AppFilename f) {
+    /** @return the file as it appears in the uses of this task, which is an equal file with the same name if one was added before, null if there is none */
+    private AppFilename output(AppFilename f) {
+        if (this.outputs == null) return null;
         if (!this.outputs.contains(f)) {
             this.addUses(f);
             this.outputs.add(f);
+            return f;
+        }
+        for (AppFilename output : outputs) {
+            if (output.equals(f) && output.getFilename().equals(f.getFilename())) return output;
         }
+        return null;
     }
 
     protected void output(String filename) {
@@ -82,7 +373,7 @@ public class AppJob extends Job {
     }
 
     void output(String filename, long size) {
-        output(new AppFilename(filename, LFN.OUTPUT, size));
+        if (outputs != null) output(new AppFilename(filename, LFN.OUTPUT, size));
     }
 
     protected void output(Collection<AppFilename> filenames) {
@@ -96,13 +387,13 @@ public class AppJob extends Job {
     }
 
     void addLink(AppJob child, String filename, long size) {
-        addLink(child, new AppFilename(filename, LFN.OUTPUT, size, LFN.XFER_NOT, false),
-                new AppFilename(filename, LFN.INPUT, size, LFN.XFER_NOT, false));
-    }
-
-    private void addLink(AppJob child, AppFilename out, AppFilename in) {
-        this.app.getDAX().addChild(child.getID(), this.getID());
-        this.output(out);
+        AppFilename in = new AppFilename(filename, LFN.INPUT, size, LFN.XFER_NOT, false);
+        // in statistics only mode, only the child's input is kept
+        if ( ! app.isStatisticsOnly()) {
+            this.app.getDAX().addChild(child.getID(), this.getID());
+            in.linkEdge = app.getGraph().addEdge(index, child.index, in.getSize());
+            in.linkedOutput = this.output(new AppFilename(filename, LFN.OUTPUT, size, LFN.XFER_NOT, false));
+        }
         child.input(in);
     }
 
@@ -154,7 +445,15 @@ public class AppJob extends Job {
          * Annotations.
          */
         for (Map.Entry<String, String> entry : this.annotations.entrySet()) {
-            stream.write(" " + entry.getKey() + "=\"" + entry.getValue() + "\"");
+            String value = getAnnotation(entry.getKey());
+            stream.write(' ');
+            stream.write(entry.getKey());
+            stream.write("=\"");
+            stream.write(value);
+            stream.write('"');
+        }
+        if (peakMemoryArgument != null) {
+            peakMemoryArgument.setContent("peak_mem_bytes=" + peakMemBytes + ",peak_memory_relative_time=" + format(peakMemoryRelativeTime, 1000));
         }
 
         // open tag: finish opening tag
@@ -22,7 +22,8 @@ public class Cybershake extends AbstractApplication {
     private static final int MIN_INPUTS = 1;
     private static final double EXTRACT_SGT_FACTOR = 0.0081;
 //    public static final double DEFAULT_FACTOR = SeismogramSynthesis.MEAN_RUNTIME;
-    private double runtimeFactor = 10;
+    private static final double DEFAULT_RUNTIME_FACTOR = 10;
+    private double runtimeFactor = DEFAULT_RUNTIME_FACTOR;
 
     public enum SITE {
         CCP, DLA, FFI, LADT, LBP, PAS, SABD, SBSM, SMCA, USC, WNGC
@@ -47,14 +48,27 @@ public class Cybershake extends AbstractApplication {
                 "\n-r,-v or" +
                 "\n-n.";
 
-        System.out.println(msg);
-        System.exit(exitCode);
+        throw new UsageException(msg, exitCode);
     }
 
     public double getRuntimeFactor() {
         return this.runtimeFactor;
     }
 
+    @Override
+    public double getDefaultRuntimeFactor(String distribution) {
+        // PeakValCalcOkaya is multiplied by the factor twice
+        return distribution.equals("PeakValCalcOkaya") ? DEFAULT_RUNTIME_FACTOR * DEFAULT_RUNTIME_FACTOR : DEFAULT_RUNTIME_FACTOR;
+    }
+
+    @Override
+    protected void resetParameters() {
+        this.runtimeFactor = DEFAULT_RUNTIME_FACTOR;
+        this.site = null;
+        this.counts = null;
+        this.numExtractSGT = 0;
+    }
+
     @Override
     protected void processArgs(String[] args) {
         int c;
@@ -233,6 +247,17 @@ public class Cybershake extends AbstractApplication {
 
     }
 
+    @Override
+    protected String[][] getFileTypeRules() {
+        return new String[][]{
+                {".*_f[xy]\\.sgt", "SGT"},
+                {".*_subf[xy]\\.sgt", "SUB_SGT"},
+                {".*_txt\\.variation-.*", "VARIATION"},
+                {"Seismogram_.*\\.grm", "GRM"},
+                {"PeakVals_.*\\.bsa", "BSA"}
+        };
+    }
+
     @Override
     public String[] getTasktypes() {
         return new String[]{"ExtractSGT", "SeismogramSynthesis", "PeakValCalcOkaya", "ZipSeis", "ZipPSA"};
@@ -252,8 +277,7 @@ class ExtractSGT extends AppJob {
         input(prefix + "_fx.sgt", size);
         input(prefix + "_fy.sgt", size);
 
-        double runtime = cybershake.generateDouble("ExtractSGT") * cybershake.getRuntimeFactor();
-        addAnnotation("runtime", String.format("%.2f", runtime));
+        annotateRuntime("ExtractSGT", runtime -> runtime * cybershake.getRuntimeFactor());
 
     }
 
@@ -294,8 +318,7 @@ class SeismogramSynthesis extends AppJob {
         long size = cybershake.generateLong("VARIATION");
         input(inputVariation, size);
 
-        double runtime = cybershake.generateDouble("SeismogramSynthesis") * cybershake.getRuntimeFactor();
-        addAnnotation("runtime", String.format("%.2f", runtime));
+        annotateRuntime("SeismogramSynthesis", runtime -> runtime * cybershake.getRuntimeFactor());
 
     }
 
@@ -309,8 +332,7 @@ class PeakValCalcOkaya extends AppJob {
     public PeakValCalcOkaya(Cybershake cybershake, String name, String version, String jobID) {
         super(cybershake, Cybershake.NAMESPACE, name, version, jobID);
 
-        double runtime = cybershake.generateDouble("PeakValCalcOkaya") * cybershake.getRuntimeFactor();
-        addAnnotation("runtime", String.format("%.2f", runtime * cybershake.getRuntimeFactor()));
+        annotateRuntime("PeakValCalcOkaya", runtime -> runtime * cybershake.getRuntimeFactor() * cybershake.getRuntimeFactor());
     }
 
     @Override
@@ -348,8 +370,7 @@ class ZipSeis extends AppJob {
         long zipSize = Misc.randomLong((long) (inputs.size() * app.generateLong("GRM") / app.generateDouble("ZipSeis_factor")), 0.25);
 
         output("Cybershake_Seismograms.zip", zipSize);
-        double runtime = Math.max(1, zipSize * app.getRuntimeFactor() / app.generateDouble("ZipSeis_rate"));
-        addAnnotation("runtime", String.format("%.2f", runtime));
+        annotateRuntime("ZipSeis_rate", rate -> Math.max(1, zipSize * app.getRuntimeFactor() / rate));
     }
 }
 
@@ -371,7 +392,6 @@ class ZipPSA extends AppJob {
 
         output("Cybershake_PSA.zip", zipSize);
 
-        double runtime = Math.max(1, zipSize * ((Cybershake) getApp()).getRuntimeFactor() / ((Cybershake) getApp()).generateDouble("ZipPSA_rate"));
-        addAnnotation("runtime", String.format("%.2f", runtime));
+        annotateRuntime("ZipPSA_rate", rate -> Math.max(1, zipSize * ((Cybershake) getApp()).getRuntimeFactor() / rate));
     }
 }
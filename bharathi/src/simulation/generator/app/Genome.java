@@ -18,7 +18,8 @@ public class Genome extends AbstractApplication {
     public static final String namespace = "Genome";
     private static final int MAX_SEQUENCES = 160;
     private static final int laneFactor = 4;
-    private double runtimeFactor = 10;
+    private static final double DEFAULT_RUNTIME_FACTOR = 10;
+    private double runtimeFactor = DEFAULT_RUNTIME_FACTOR;
     private String expt;
     private long referenceSize;
     private int[] counts;
@@ -49,14 +50,26 @@ public class Genome extends AbstractApplication {
                 "\n-l,-s or" +
                 "\n-n.";
 
-        System.out.println(msg);
-        System.exit(exitCode);
+        throw new UsageException(msg, exitCode);
     }
 
     public double getRuntimeFactor() {
         return this.runtimeFactor;
     }
 
+    @Override
+    public double getDefaultRuntimeFactor(String distribution) {
+        return DEFAULT_RUNTIME_FACTOR;
+    }
+
+    @Override
+    protected void resetParameters() {
+        this.runtimeFactor = DEFAULT_RUNTIME_FACTOR;
+        this.expt = null;
+        this.referenceSize = 0;
+        this.counts = null;
+    }
+
     @Override
     protected void processArgs(String[] args) {
         int c;
@@ -336,6 +349,13 @@ public class Genome extends AbstractApplication {
         this.distributions.put("pileup_rate", Distribution.getTruncatedNormalDistribution(881356.45, 8956444331.45));
     }
 
+    @Override
+    protected String[][] getFileTypeRules() {
+        return new String[][]{
+                {"[^.]+\\d\\.sfq", "sfq"}
+        };
+    }
+
     @Override
     public String[] getTasktypes() {
         return new String[]{
@@ -367,10 +387,8 @@ class FastQSplit extends AppJob {
          * case. However, the scaling factor for a given w/f is reasonably
          * constant.
          */
-        double rate = genome.generateLong("fastQSplit_rate");
-        double runtime = size / rate;
-        addAnnotation("runtime", String.format("%.2f",
-                runtime * genome.getRuntimeFactor()));
+        // the rate is drawn as a whole number, like generateLong does
+        annotateRuntime("fastQSplit_rate", rate -> size / Math.floor(rate) * genome.getRuntimeFactor());
     }
 
     @Override
@@ -407,8 +425,8 @@ class FilterContams extends AppJob {
         addLink(child, in.getFilename().replace(".sfq", ".nocontam.sfq"), sizes[0]);
         output(in.getFilename().replace(".sfq", ".contam.sfq"), sizes[1]);
 
-        double runtime = in.getSize() / ((Genome) getApp()).generateDouble("filterContams_rate");
-        addAnnotation("runtime", String.format("%.2f", runtime * ((Genome) getApp()).getRuntimeFactor()));
+        long inputSize = in.getSize();
+        annotateRuntime("filterContams_rate", rate -> inputSize / rate * ((Genome) getApp()).getRuntimeFactor());
     }
 }
 
@@ -431,8 +449,8 @@ class Sol2Sanger extends AppJob {
         long size = (long) (in.getSize() / ((Genome) getApp()).generateDouble("sol2sanger_factor"));
         addLink(child, in.getFilename().replace(".sfq", ".fq"), size);
 
-        double runtime = in.getSize() / ((Genome) getApp()).generateDouble("sol2sanger_rate");
-        addAnnotation("runtime", String.format("%.2f", runtime * ((Genome) getApp()).getRuntimeFactor()));
+        long inputSize = in.getSize();
+        annotateRuntime("sol2sanger_rate", rate -> inputSize / rate * ((Genome) getApp()).getRuntimeFactor());
     }
 }
 
@@ -456,8 +474,8 @@ class Fast2Bfq extends AppJob {
         long size = (long) (in.getSize() / factor);
         addLink(child, in.getFilename().replace(".fq", ".bfq"), size);
 
-        double runtime = in.getSize() / ((Genome) getApp()).generateDouble("fast2bfq_rate");
-        addAnnotation("runtime", String.format("%.2f", runtime * ((Genome) getApp()).getRuntimeFactor()));
+        long inputSize = in.getSize();
+        annotateRuntime("fast2bfq_rate", rate -> inputSize / rate * ((Genome) getApp()).getRuntimeFactor());
     }
 }
 
@@ -487,9 +505,7 @@ class MaqMap extends AppJob {
          * However, runtime does depend on the size of the reference genome.
          * Use a simple model here.
          */
-        double runtime = ((Genome) getApp()).getReferenceSize() / ((Genome) getApp()).generateDouble("maqmap_rate");
-
-        addAnnotation("runtime", String.format("%.2f", runtime * ((Genome) getApp()).getRuntimeFactor()));
+        annotateRuntime("maqmap_rate", rate -> ((Genome) getApp()).getReferenceSize() / rate * ((Genome) getApp()).getRuntimeFactor());
     }
 }
 
@@ -520,8 +536,8 @@ class MapMerge extends AppJob {
             output(prefix + ".nocontam.map.vm", Misc.randomLong((long) (size * 0.005), 0.25));
         }
 
-        double runtime = totalSize / ((Genome) getApp()).generateDouble("mapMerge_rate");
-        addAnnotation("runtime", String.format("%.2f", runtime * ((Genome) getApp()).getRuntimeFactor()));
+        long inputSize = totalSize;
+        annotateRuntime("mapMerge_rate", rate -> inputSize / rate * ((Genome) getApp()).getRuntimeFactor());
     }
 }
 
@@ -545,8 +561,7 @@ class MaqIndex extends AppJob {
         long size = (long) (in.getSize() / factor);
         addLink(child, ((Genome) getApp()).getExpt() + ".nocontam.chr.map", size);
 
-        double runtime = size / ((Genome) getApp()).generateDouble("maqIndex_rate");
-        addAnnotation("runtime", String.format("%.2f", runtime * ((Genome) getApp()).getRuntimeFactor()));
+        annotateRuntime("maqIndex_rate", rate -> size / rate * ((Genome) getApp()).getRuntimeFactor());
     }
 }
 
@@ -575,7 +590,6 @@ class PileUp extends AppJob {
          * reference genome.
          */
 
-        double runtime = ((Genome) getApp()).getReferenceSize() / ((Genome) getApp()).generateDouble("pileup_rate");
-        addAnnotation("runtime", String.format("%.2f", runtime * ((Genome) getApp()).getRuntimeFactor()));
+        annotateRuntime("pileup_rate", rate -> ((Genome) getApp()).getReferenceSize() / rate * ((Genome) getApp()).getRuntimeFactor());
     }
 }
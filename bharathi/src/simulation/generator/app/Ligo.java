@@ -12,6 +12,7 @@ import java.util.Arrays;
 import java.util.List;
 import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.Random;
 import org.griphyn.vdl.classes.LFN;
 import simulation.generator.util.Distribution;
 
@@ -23,7 +24,8 @@ public class Ligo extends AbstractApplication {
     public static final String namespace = "Ligo";
     private static final double OVERLAP_FACTOR = 1.05;
     private static final int MAX_TRIES = 100;
-    private double runtimeFactor = 10;
+    private static final double DEFAULT_RUNTIME_FACTOR = 10;
+    private double runtimeFactor = DEFAULT_RUNTIME_FACTOR;
     private int[] topDown;
     private int bnCount;
     private int totalEdges;
@@ -39,14 +41,27 @@ public class Ligo extends AbstractApplication {
                 "\n--help | -h Print help message." +
                 "\n--numjobs | -n Number of jobs.";
 
-        System.out.println(msg);
-        System.exit(exitCode);
+        throw new UsageException(msg, exitCode);
     }
 
     public double getRuntimeFactor() {
         return this.runtimeFactor;
     }
 
+    @Override
+    public double getDefaultRuntimeFactor(String distribution) {
+        // TrigBank is multiplied by the factor twice
+        return distribution.equals("TrigBank") ? DEFAULT_RUNTIME_FACTOR * DEFAULT_RUNTIME_FACTOR : DEFAULT_RUNTIME_FACTOR;
+    }
+
+    @Override
+    protected void resetParameters() {
+        this.runtimeFactor = DEFAULT_RUNTIME_FACTOR;
+        this.topDown = null;
+        this.bnCount = 0;
+        this.totalEdges = 0;
+    }
+
     @Override
     protected void processArgs(String[] args) {
         int c;
@@ -333,6 +348,20 @@ public class Ligo extends AbstractApplication {
 
     }
 
+    @Override
+    protected String[][] getFileTypeRules() {
+        return new String[][]{
+                {"H-H\\d_RDS_.*\\.gwf", "GWF"},
+                {"H-CAL_FAC_DARM_.*\\.gwf", "FAC_DARM"},
+                {"H-CAL_REF_DARM_.*\\.gwf", "REF_DARM"},
+                {"H\\d-TMPLTBANK-.*\\.xml", "TMPLTBANK.xml"},
+                {"HL-INJECTIONS_.*\\.xml", "INJECTION.xml"},
+                {"H\\d-INSPIRAL.*\\.xml", "INSPIRAL.xml"},
+                {"H\\d-THINCA-.*\\.xml", "THINCA.xml"},
+                {"H\\d-TRIGBANK_.*\\.xml", "TRIGBANK.xml"}
+        };
+    }
+
     @Override
     public String[] getTasktypes() {
         return new String[]{
@@ -346,32 +375,34 @@ public class Ligo extends AbstractApplication {
 
 class TmpltBank extends AppJob {
     
-    public static final int KEY1 = Misc.randomInt(800000000, 0.1);
+    /** The keys are shared by all instances, so they are drawn independently of the generator of the thread that happens to load this class. */
+    private static final Random KEYS = new Random(129039123023L);
+
+    public static final int KEY1 = Misc.randomInt(KEYS, 800000000, 0.1);
     public static final int KEY2;
     private static final int KEY3;
     
     static {
         int key;
         do {
-            key = Misc.randomInt(800000000, 0.1);
+            key = Misc.randomInt(KEYS, 800000000, 0.1);
         } while (KEY1 == key);
         KEY2 = key;
 
         do {
-            key = Misc.randomInt(800000000, 0.1);
+            key = Misc.randomInt(KEYS, 800000000, 0.1);
         } while (KEY1 == key || KEY2 == key);
         KEY3 = key;
     }
     public static final String FAC_DARM = String.format("H-CAL_FAC_DARM_ERR_H1_S5_U_060-%d-%d.gwf",
-            Misc.randomInt(800000000, 0.1), Misc.randomInt(300000000, 0.1));
+            Misc.randomInt(KEYS, 800000000, 0.1), Misc.randomInt(KEYS, 300000000, 0.1));
     public static final String REF_DARM = String.format("H-CAL_REF_DARM_ERR_H1_S5_V1-%d-8.gwf",
-            Misc.randomInt(800000000, 0.1));
+            Misc.randomInt(KEYS, 800000000, 0.1));
 
     public TmpltBank(Ligo ligo, String name, String version, String jobID) {
         super(ligo, Ligo.namespace, name, version, jobID);
         this.setLevel(0);
-        double runtime = ligo.generateDouble("TmpltBank") * ligo.getRuntimeFactor();
-        addAnnotation("runtime", String.format("%.2f", runtime));
+        annotateRuntime("TmpltBank", runtime -> runtime * ligo.getRuntimeFactor());
     }
 
     public void addInputs(Set<AppFilename> inputs) {
@@ -388,8 +419,10 @@ class TmpltBank extends AppJob {
 
 class Inspiral extends AppJob {
     
-    private static final int INJECTION_KEY1 = Misc.randomInt(800000000, 0.1);
-    private static final int INJECTION_KEY2 = Misc.randomInt(8000000, 0.1);
+    /** See {@link TmpltBank#KEYS} */
+    private static final Random KEYS = new Random(129039123024L);
+    private static final int INJECTION_KEY1 = Misc.randomInt(KEYS, 800000000, 0.1);
+    private static final int INJECTION_KEY2 = Misc.randomInt(KEYS, 8000000, 0.1);
 
     public Inspiral(Ligo ligo, String name, String version, String jobID, int level,
                     int id) {
@@ -400,8 +433,7 @@ class Inspiral extends AppJob {
          */
         int inputSize = ligo.generateInt("INJECTION.xml");
         input(String.format("HL-INJECTIONS_100-%d-%d.xml", INJECTION_KEY1, INJECTION_KEY2), inputSize);
-        double runtime = ligo.generateDouble("Inspiral") * ligo.getRuntimeFactor();
-        addAnnotation("runtime", String.format("%.2f", runtime));
+        annotateRuntime("Inspiral", runtime -> runtime * ligo.getRuntimeFactor());
     }
 
     public void addInputs(Set<AppFilename> inputs) {
@@ -426,17 +458,33 @@ class Inspiral extends AppJob {
 }
 
 class Thinca extends AppJob {
-    
+
+    /** The name of the output file and the number of inputs it was derived from, a bottleneck job has many children and inputs. */
+    private String outputName;
+    private int outputNameInputs = -1;
+
     public Thinca(Ligo ligo, String name, String version, String jobID, int level) {
         super(ligo, Ligo.namespace, name, version, jobID);
         this.setLevel(level);
-        double runtime = ligo.generateDouble("Thinca") * ligo.getRuntimeFactor();
-        addAnnotation("runtime", String.format("%.2f", runtime));
+        annotateRuntime("Thinca", runtime -> runtime * ligo.getRuntimeFactor());
     }
 
     private void generateOutput(AppJob child) {
-        String filename = null;
+        String filename = outputName();
+        long size = ((Ligo) getApp()).generateInt("THINCA.xml");
+        if (child != null) {
+            addLink(child, filename, size);
+        } else {
+            // @carlwitt changed this to THINCA.xml instead of filename, because for large numbers of tasks, filename was null sometimes, leading to NPEs later on
+            output("THINCA.xml", size);
+        }
+    }
+
+    /** @return the name of the output file, derived from the names of the inputs, which only change until the first child is added */
+    private String outputName() {
         Set<AppFilename> inputs = getInputs();
+        if (outputNameInputs == inputs.size()) return outputName;
+        String filename = null;
         for (AppFilename input : inputs) {
             String name = input.getFilename();
             if (name.contains("INSPIRAL")) {
@@ -450,13 +498,9 @@ class Thinca extends AppJob {
                 }
             }
         }
-        long size = ((Ligo) getApp()).generateInt("THINCA.xml");
-        if (child != null) {
-            addLink(child, filename, size);
-        } else {
-            // @carlwitt changed this to THINCA.xml instead of filename, because for large numbers of tasks, filename was null sometimes, leading to NPEs later on
-            output("THINCA.xml", size);
-        }
+        outputName = filename;
+        outputNameInputs = inputs.size();
+        return filename;
     }
 
     @Override
@@ -474,8 +518,7 @@ class TrigBank extends AppJob {
     public TrigBank(Ligo ligo, String name, String version, String jobID) {
         super(ligo, Ligo.namespace, name, version, jobID);
         this.setLevel(3);
-        double runtime = ligo.generateDouble("TrigBank") * ligo.getRuntimeFactor();
-        addAnnotation("runtime", String.format("%.2f", runtime * ligo.getRuntimeFactor()));
+        annotateRuntime("TrigBank", runtime -> runtime * ligo.getRuntimeFactor() * ligo.getRuntimeFactor());
     }
 
     @Override
@@ -10,6 +10,8 @@ import simulation.generator.util.Misc;
 import java.util.List;
 import java.util.ArrayList;
 import java.util.Set;
+import java.util.Arrays;
+import java.util.HashSet;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.commons.math.util.MathUtils;
@@ -25,7 +27,8 @@ public class Montage extends AbstractApplication {
     public static Log logger = LogFactory.getLog(Montage.class);
     private final double factor = 4.0;
     private double degree;
-    private double runtimeFactor = 10;
+    private static final double DEFAULT_RUNTIME_FACTOR = 10;
+    private double runtimeFactor = DEFAULT_RUNTIME_FACTOR;
     private int numProj;
     private int numDiff;
     private static final double DEFAULT_PROBABILITY = 0.05;
@@ -51,6 +54,19 @@ public class Montage extends AbstractApplication {
         return this.runtimeFactor;
     }
 
+    @Override
+    public double getDefaultRuntimeFactor(String distribution) {
+        return DEFAULT_RUNTIME_FACTOR;
+    }
+
+    @Override
+    protected void resetParameters() {
+        this.runtimeFactor = DEFAULT_RUNTIME_FACTOR;
+        this.degree = 0;
+        this.numProj = 0;
+        this.numDiff = 0;
+    }
+
     private void usage(int exitCode) {
         String msg = "Montage [-h] [options]" +
                 "\n--data | -d Approximate size of input data." +
@@ -65,8 +81,7 @@ public class Montage extends AbstractApplication {
                 "\n-s, -p -i or" +
                 "\n-n";
 
-        System.out.println(msg);
-        System.exit(exitCode);
+        throw new UsageException(msg, exitCode);
     }
 
     @Override
@@ -210,25 +225,26 @@ public class Montage extends AbstractApplication {
          * However, the scalability of the generator at that level has not
          * been tested yet.
          */
-        int[][] connectivity = new int[numProj][numProj];
+        // the pairs of parents (i, j) as i * numProj + j, a numProj x numProj matrix does not fit in memory for large workflows
+        Set<Long> pairs = new HashSet<>();
         for (int count = numDiff; count > 0;) {
             int i = Misc.randomInt(0, numProj);
             int j = Misc.randomInt(0, numProj);
-            if (connectivity[i][j] == 0) {
-                connectivity[i][j] = 1;
+            if (pairs.add((long) i * numProj + j)) {
                 count--;
             }
         }
-
-        for (int i = 0,  idx = 0; i < numProj; i++) {
-            for (int j = 0; j < numProj; j++) {
-                if (connectivity[i][j] != 0) {
-                    mProject.get(i).addChild(mDiffFit.get(idx));
-                    mProject.get(j).addChild(mDiffFit.get(idx));
-
-                    idx++;
-                }
-            }
+        long[] connectivity = new long[pairs.size()];
+        int next = 0;
+        for (long pair : pairs) connectivity[next++] = pair;
+        // the mDiffFit jobs are assigned to the pairs in the order of the rows and columns of the matrix
+        Arrays.sort(connectivity);
+
+        for (int idx = 0; idx < connectivity.length; idx++) {
+            int i = (int) (connectivity[idx] / numProj);
+            int j = (int) (connectivity[idx] % numProj);
+            mProject.get(i).addChild(mDiffFit.get(idx));
+            mProject.get(j).addChild(mDiffFit.get(idx));
         }
 
         MConcatFit mConcatFit = new MConcatFit(this, "mConcatFit", "1.0", getNewJobID());
@@ -304,6 +320,16 @@ public class Montage extends AbstractApplication {
         this.distributions.put("mJPEG_rate", Distribution.getTruncatedNormalDistribution(549291.00, 3933630100.67));
     }
 
+    @Override
+    protected String[][] getFileTypeRules() {
+        return new String[][]{
+                {"\\d+mass-atlas-.*\\.fits", "2mass.fits"},
+                {"p\\d+mass-atlas-.*\\.fits", "p2mass.fits"},
+                {"fitID\\d+\\.txt", "fit.txt"},
+                {"diffID\\d+\\.txt", "diff.fits"}
+        };
+    }
+
     @Override
     public String[] getTasktypes() {
         return new String[]{
@@ -331,9 +357,7 @@ class MProjectPP extends AppJob {
         // TODO: input filesize may vary with degree in some workflows.
         input(this.filename + ".fits", montage.generateLong("2mass.fits"));
 
-        double runtime = montage.generateDouble("mProjectPP");
-        addAnnotation("runtime",
-                String.format("%.2f", runtime * montage.getRuntimeFactor()));
+        annotateRuntime("mProjectPP", runtime -> runtime * montage.getRuntimeFactor());
     }
 
     @Override
@@ -350,9 +374,7 @@ class MDiffFit extends AppJob {
         super(montage, Montage.namespace, name, version, jobID);
         
         input("region.hdr", montage.generateLong("region.hdr"));
-        double runtime = montage.generateDouble("mDiffFit");
-        addAnnotation("runtime",
-                String.format("%.2f", runtime * montage.getRuntimeFactor()));
+        annotateRuntime("mDiffFit", runtime -> runtime * montage.getRuntimeFactor());
     }
 
     @Override
@@ -371,8 +393,7 @@ class MConcatFit extends AppJob {
 
         long fitsListSize = (long) (montage.generateDouble("fits_list.tbl_base") * montage.getNumDiff());
         input("fits_list.tbl", fitsListSize);
-        double runtime = montage.generateDouble("mConcatFit_base") * montage.getNumDiff() * montage.getRuntimeFactor();
-        addAnnotation("runtime", String.format("%.2f", runtime));
+        annotateRuntime("mConcatFit_base", base -> base * montage.getNumDiff() * montage.getRuntimeFactor());
     }
 
     @Override
@@ -390,8 +411,7 @@ class MBgModel extends AppJob {
         long pimagesTblSize = (long) (montage.generateDouble("pimages.tbl_base") * montage.getNumProj());
         input("pimages.tbl", pimagesTblSize);
 
-        double runtime = montage.generateDouble("mBgModel_base") * montage.getNumDiff() * montage.getRuntimeFactor();
-        addAnnotation("runtime", String.format("%.2f", runtime));
+        annotateRuntime("mBgModel_base", base -> base * montage.getNumDiff() * montage.getRuntimeFactor());
     }
 
     @Override
@@ -407,9 +427,7 @@ class MBackground extends AppJob {
 
     public MBackground(Montage montage, String name, String version, String jobID) {
         super(montage, Montage.namespace, name, version, jobID);
-        double runtime = montage.generateDouble("mBackground");
-        addAnnotation("runtime",
-                String.format("%.2f", runtime * montage.getRuntimeFactor()));
+        annotateRuntime("mBackground", runtime -> runtime * montage.getRuntimeFactor());
     }
 
     @Override
@@ -434,8 +452,7 @@ class MImgTbl extends AppJob {
         long cimagesTblSize = (long) (montage.generateDouble("cimages.tbl_base") * montage.getNumProj());
         input("cimages.tbl", cimagesTblSize);
 
-        double runtime = montage.generateDouble("mImgTbl_base") * montage.getNumProj() * montage.getRuntimeFactor();
-        addAnnotation("runtime", String.format("%.2f", runtime));
+        annotateRuntime("mImgTbl_base", base -> base * montage.getNumProj() * montage.getRuntimeFactor());
     }
 
     @Override
@@ -454,8 +471,7 @@ class MAdd extends AppJob {
         super(montage, Montage.namespace, name, version, jobID);
 
         // runtime
-        double runtime = montage.generateDouble("mAdd") * montage.getDegree() * montage.getDegree();
-        addAnnotation("runtime", String.format("%.2f", runtime * montage.getRuntimeFactor()));
+        annotateRuntime("mAdd", runtime -> runtime * montage.getDegree() * montage.getDegree() * montage.getRuntimeFactor());
 
         // input files
         long filesize = montage.generateLong("region.hdr");
@@ -482,8 +498,7 @@ class MShrink extends AppJob {
     public MShrink(Montage montage, String name, String version, String jobID) {
         super(montage, Montage.namespace, name, version, jobID);
 
-        double runtime = montage.generateDouble("mShrink") * montage.getDegree();
-        addAnnotation("runtime", String.format("%.2f", runtime * montage.getRuntimeFactor()));
+        annotateRuntime("mShrink", runtime -> runtime * montage.getDegree() * montage.getRuntimeFactor());
         this.jobID = jobID;
     }
 
@@ -521,8 +536,7 @@ class MJPEG extends AppJob {
                 long jpgSize = Misc.randomLong(size / 4, .25);
                 output(temp, jpgSize);
 
-                double runtime = jpgSize / ((Montage) getApp()).generateDouble("mJPEG_rate");
-                addAnnotation("runtime", String.format("%.2f", runtime * ((Montage) getApp()).getRuntimeFactor()));
+                annotateRuntime("mJPEG_rate", rate -> jpgSize / rate * ((Montage) getApp()).getRuntimeFactor());
                 break;
             }
         }
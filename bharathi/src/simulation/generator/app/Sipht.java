@@ -3,6 +3,7 @@ package simulation.generator.app;
 import gnu.getopt.Getopt;
 import gnu.getopt.LongOpt;
 
+import java.util.Map;
 import java.util.Set;
 
 import simulation.generator.util.Distribution;
@@ -17,7 +18,8 @@ public class Sipht extends AbstractApplication {
     public static final String CODE = "NC_0025AG05";
     private static final int MEAN_PATSERS = 18;
     private final int PARTNER_FACTOR = 936;
-    private double runtimeFactor = 10.0;
+    private static final double DEFAULT_RUNTIME_FACTOR = 10;
+    private double runtimeFactor = DEFAULT_RUNTIME_FACTOR;
     private int numJobs;
 
     protected void populateDistributions() {
@@ -32,8 +34,6 @@ public class Sipht extends AbstractApplication {
          * File size distributions.
          */
         this.distributions.put("IGR_partners", Distribution.getUniformDistribution(0.9 * PARTNER_FACTOR, PARTNER_FACTOR));
-        double FNA_SIZE = Misc.truncatedNormal(5248967.25, 2301068882937.69);
-        this.distributions.put("CODE.fna", Distribution.getConstantDistribution(FNA_SIZE));
 
         this.distributions.put("RNAfold",
                 Distribution.getConstantDistribution(591942));
@@ -52,8 +52,6 @@ public class Sipht extends AbstractApplication {
         this.distributions.put("rnamotif.err", Distribution.getConstantDistribution(310.0));
 
         this.distributions.put("expterm.dat", Distribution.getConstantDistribution(45788));
-        double CODE_PTT = Misc.truncatedNormal(328510.50, 76625546.75);
-        this.distributions.put("CODE.ptt", Distribution.getConstantDistribution(CODE_PTT));
         this.distributions.put("transterm.out", Distribution.getTruncatedNormalDistribution(440409.25, 211951229.69));
         this.distributions.put("transterm.err", Distribution.getTruncatedNormalDistribution(96.25, 0.19));
 
@@ -90,8 +88,6 @@ public class Sipht extends AbstractApplication {
         this.distributions.put("Seq_CODE", Distribution.getTruncatedNormalDistribution(84073, 12298824));
         this.distributions.put("CODE_parsed.ffn", Distribution.getTruncatedNormalDistribution(802506.75, 18062265579.69));
         this.distributions.put("Seq_known_sRNAs_IGRs.txt", Distribution.getConstantDistribution(172432));
-        double BLAST_CODE = Misc.truncatedNormal(11427.25, 21904571.69);
-        this.distributions.put("BLAST_CODE", Distribution.getConstantDistribution(BLAST_CODE));
         this.distributions.put("blast_candidate.out", Distribution.getTruncatedNormalDistribution(2965.5, 24644.25));
         this.distributions.put("blast_candidate.err", Distribution.getTruncatedNormalDistribution(544.75, 0.19));
 
@@ -119,9 +115,6 @@ public class Sipht extends AbstractApplication {
         this.distributions.put("srna_annotate.err", Distribution.getTruncatedNormalDistribution(1070.5, .75));
         this.distributions.put("srna_annotate.out", Distribution.getTruncatedNormalDistribution(565462, 98726501739.5));
 
-        double CODE_SRNA_OUT_ANNOTATED = Misc.truncatedNormal(307952.25, 3812001448.19);
-        this.distributions.put("CODE_sRNA.out_annotated", Distribution.getConstantDistribution(CODE_SRNA_OUT_ANNOTATED));
-
         this.distributions.put("CODE_paralogues.txt", Distribution.getTruncatedNormalDistribution(690731.5, 362706549090.75));
 
         /*
@@ -143,6 +136,25 @@ public class Sipht extends AbstractApplication {
         this.distributions.put("Blast_synteny", Distribution.getConstantDistribution(33.0));
     }
 
+    /**
+     * The sizes of the files that describe the genome are drawn once per workflow, since all its tasks process the same genome.
+     */
+    @Override
+    protected void populateWorkflowDistributions(Map<String, Distribution> distributions) {
+        distributions.put("CODE.fna", Distribution.getConstantDistribution(Misc.truncatedNormal(5248967.25, 2301068882937.69)));
+        distributions.put("CODE.ptt", Distribution.getConstantDistribution(Misc.truncatedNormal(328510.50, 76625546.75)));
+        distributions.put("BLAST_CODE", Distribution.getConstantDistribution(Misc.truncatedNormal(11427.25, 21904571.69)));
+        distributions.put("CODE_sRNA.out_annotated", Distribution.getConstantDistribution(Misc.truncatedNormal(307952.25, 3812001448.19)));
+    }
+
+    @Override
+    protected String[][] getFileTypeRules() {
+        return new String[][]{
+                // most distributions are named like the files, with the genome code replaced by CODE
+                {"(.*)" + CODE + "(.*)", "$1CODE$2"}
+        };
+    }
+
     @Override
     public String[] getTasktypes() {
         return new String[]{
@@ -167,14 +179,24 @@ public class Sipht extends AbstractApplication {
                 "\n--help | -h Print help message." +
                 "\n--numjobs | -n Number of jobs.";
 
-        System.out.println(msg);
-        System.exit(exitCode);
+        throw new UsageException(msg, exitCode);
     }
 
     public double getRuntimeFactor() {
         return this.runtimeFactor;
     }
 
+    @Override
+    public double getDefaultRuntimeFactor(String distribution) {
+        return DEFAULT_RUNTIME_FACTOR;
+    }
+
+    @Override
+    protected void resetParameters() {
+        this.runtimeFactor = DEFAULT_RUNTIME_FACTOR;
+        this.numJobs = 0;
+    }
+
     @Override
     protected void processArgs(String[] args) {
         int c;
@@ -282,7 +304,7 @@ class Findterm extends AppJob {
         super(sipht, Sipht.NAMESPACE, name, version, jobID);
         input(Sipht.CODE + ".fna", sipht.generateLong("CODE.fna"));
         input("RNAfold", sipht.generateLong("RNAfold"));
-        addAnnotation("runtime", String.format("%.4f", sipht.generateDouble("Findterm") * sipht.getRuntimeFactor()));
+        annotateRuntime("Findterm", runtime -> runtime * sipht.getRuntimeFactor(), 4);
     }
 
     public void addChild(AppJob child) {
@@ -305,7 +327,7 @@ class RNAMotif extends AppJob {
         super(sipht, Sipht.NAMESPACE, name, version, jobID);
         input(Sipht.CODE + ".fna", sipht.generateLong("CODE.fna"));
         input("RNAMofficial_descriptor.txt", sipht.generateLong("RNAMofficial_descriptor.txt"));
-        addAnnotation("runtime", String.format("%.4f", sipht.generateDouble("RNAMotif") * sipht.getRuntimeFactor()));
+        annotateRuntime("RNAMotif", runtime -> runtime * sipht.getRuntimeFactor(), 4);
     }
 
     public void addChild(AppJob child) {
@@ -323,7 +345,7 @@ class Transterm extends AppJob {
         input(Sipht.CODE + ".fna", sipht.generateLong("CODE.fna"));
         input("expterm.dat", sipht.generateLong("expterm.dat"));
         input(Sipht.CODE + ".ptt", sipht.generateLong("CODE.ptt"));
-        addAnnotation("runtime", String.format("%.4f", sipht.generateDouble("Transterm") * sipht.getRuntimeFactor()));
+        annotateRuntime("Transterm", runtime -> runtime * sipht.getRuntimeFactor(), 4);
     }
 
     public void addChild(AppJob child) {
@@ -352,7 +374,7 @@ class Blast extends AppJob {
         }
         output("blast.err", sipht.generateLong("blast.err"));
 
-        addAnnotation("runtime", String.format("%.4f", sipht.generateDouble("Blast") * sipht.getRuntimeFactor()));
+        annotateRuntime("Blast", runtime -> runtime * sipht.getRuntimeFactor(), 4);
     }
 
     public void addChild(AppJob child) {
@@ -374,7 +396,7 @@ class Patser extends AppJob {
         input(Sipht.CODE + ".fna", sipht.generateLong("CODE.fna"));
         input("alphabet", sipht.generateLong("alphabet"));
         input(jobID + "_matrix.txt", sipht.generateLong("matrix"));
-        addAnnotation("runtime", String.format("%.4f", sipht.generateDouble("Patser") * sipht.getRuntimeFactor()));
+        annotateRuntime("Patser", runtime -> runtime * sipht.getRuntimeFactor(), 4);
     }
 
     public void addChild(AppJob child) {
@@ -388,7 +410,7 @@ class PatserConcate extends AppJob {
 
     public PatserConcate(Sipht sipht, String name, String version, String jobID) {
         super(sipht, Sipht.NAMESPACE, name, version, jobID);
-        addAnnotation("runtime", String.format("%.4f", sipht.generateDouble("Patser_concate") * sipht.getRuntimeFactor()));
+        annotateRuntime("Patser_concate", runtime -> runtime * sipht.getRuntimeFactor(), 4);
     }
 
     public void addChild(AppJob child) {
@@ -424,7 +446,7 @@ class SRNA extends AppJob {
         output("OutTerm_temp", sipht.generateLong("OutTerm_temp"));
         output("OutTerms", sipht.generateLong("OutTerms"));
         output("OutTermsIG", sipht.generateLong("OutTermsIG"));
-        addAnnotation("runtime", String.format("%.4f", sipht.generateDouble("SRNA") * sipht.getRuntimeFactor()));
+        annotateRuntime("SRNA", runtime -> runtime * sipht.getRuntimeFactor(), 4);
     }
 
     public void addChild(AppJob child) {
@@ -442,7 +464,7 @@ class FFNParse extends AppJob {
         input(Sipht.CODE + ".ffn", sipht.generateLong("CODE.ffn"));
         input(Sipht.CODE + ".ptt", sipht.generateLong("CODE.ptt"));
         input("Seq_" + Sipht.CODE, sipht.generateLong("Seq_CODE"));
-        addAnnotation("runtime", String.format("%.4f", sipht.generateDouble("FFN_parse") * sipht.getRuntimeFactor()));
+        annotateRuntime("FFN_parse", runtime -> runtime * sipht.getRuntimeFactor(), 4);
     }
 
     public void addChild(AppJob child) {
@@ -459,7 +481,7 @@ class BlastCandidate extends AppJob {
         input("blasta", sipht.generateLong("blasta"));
         input("xdformat", sipht.generateLong("xdformat"));
         input("time", sipht.generateLong("time"));
-        addAnnotation("runtime", String.format("%.4f", sipht.generateDouble("Blast_candidate") * sipht.getRuntimeFactor()));
+        annotateRuntime("Blast_candidate", runtime -> runtime * sipht.getRuntimeFactor(), 4);
     }
 
     public void addChild(AppJob child) {
@@ -499,7 +521,7 @@ class BlastQRNA extends AppJob {
         output(Sipht.CODE + "_QRNAblast.txt.E0.01.D1.q.gff", sipht.generateLong("CODE_QRNAblast.txt.E0.01.D1.q.gff"));
         output(Sipht.CODE + "_QRNAblast.txt.E0.01.D1.q.rep", sipht.generateLong("CODE_QRNAblast.txt.E0.01.D1.q.rep"));
 
-        addAnnotation("runtime", String.format("%.4f", sipht.generateDouble("Blast_QRNA") * sipht.getRuntimeFactor()));
+        annotateRuntime("Blast_QRNA", runtime -> runtime * sipht.getRuntimeFactor(), 4);
     }
 
     public void addChild(AppJob child) {
@@ -517,7 +539,7 @@ class BlastSynteny extends AppJob {
         input("blasta", sipht.generateLong("blasta"));
         input("time", sipht.generateLong("time"));
 
-        addAnnotation("runtime", String.format("%.4f", sipht.generateDouble("Blast_synteny") * sipht.getRuntimeFactor()));
+        annotateRuntime("Blast_synteny", runtime -> runtime * sipht.getRuntimeFactor(), 4);
     }
 
     public void addChild(AppJob child) {
@@ -539,7 +561,7 @@ class SRNAAnnotate extends AppJob {
         output("QRNA_out", sipht.generateLong("QRNA_out"));
         output("srna_annotate.err", sipht.generateLong("srna_annotate.err"));
         output("srna_annotate.out", sipht.generateLong("srna_annotate.out"));
-        addAnnotation("runtime", String.format("%.4f", sipht.generateDouble("SRNA_annotate") * sipht.getRuntimeFactor()));
+        annotateRuntime("SRNA_annotate", runtime -> runtime * sipht.getRuntimeFactor(), 4);
     }
 
     public void addChild(AppJob child) {
@@ -555,7 +577,7 @@ class BlastParalogues extends AppJob {
         input("xdformat", sipht.generateLong("xdformat"));
         input("blasta", sipht.generateLong("blasta"));
         input("time", sipht.generateLong("time"));
-        addAnnotation("runtime", String.format("%.4f", sipht.generateDouble("Blast_paralogues") * sipht.getRuntimeFactor()));
+        annotateRuntime("Blast_paralogues", runtime -> runtime * sipht.getRuntimeFactor(), 4);
     }
 
     public void addChild(AppJob child) {
@@ -0,0 +1,44 @@
+package simulation.generator.app;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Writes the {@link WorkflowStatistics} of a collection of workflows to a csv file, one row per workflow.
+ * Rows are appended as they are added, so the statistics of a workflow can be discarded afterwards.
+ * Can be used concurrently, rows appear in the order in which {@link #add(String, WorkflowStatistics)} was called.
+ */
+public class StatisticsWriter implements Closeable {
+
+    private final BufferedWriter writer;
+
+    /** Creates (or overwrites) the given file and writes the csv header. */
+    public StatisticsWriter(Path file) throws IOException {
+        this.writer = Files.newBufferedWriter(file);
+        writer.write(WorkflowStatistics.CSV_HEADER);
+        writer.write('\n');
+    }
+
+    /**
+     * @param filename name of the file containing the workflow (task resource usage and dependencies in DAX format)
+     * @param statistics the descriptive statistics of the workflow in that file
+     */
+    public synchronized void add(String filename, WorkflowStatistics statistics) throws IOException {
+        writer.write(statistics.toCsvRow(filename));
+        writer.write('\n');
+    }
+
+    /** Appends a row that has been formatted by {@link WorkflowStatistics#toCsvRow(String)} before, e.g., when merging statistics files. */
+    public synchronized void addRow(String row) throws IOException {
+        writer.write(row);
+        writer.write('\n');
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        writer.close();
+    }
+}
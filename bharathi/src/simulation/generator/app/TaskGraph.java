@@ -0,0 +1,283 @@
+package simulation.generator.app;
+
+import java.util.Arrays;
+
+/**
+ * The dependencies and runtimes of the tasks of a workflow in primitive arrays, indexed by the order in which tasks are added.
+ * The graph is not recorded in {@link AbstractApplication#setStatisticsOnly(boolean) statistics only} mode.
+ * {@link #analyze(WorkflowStatistics)} computes the structural statistics and {@link #ranks(double)} the priorities of
+ * list schedulers, both in time linear in the number of tasks and dependencies.
+ */
+class TaskGraph {
+
+    private int numTasks;
+    /** The runtime of each task in seconds, NaN if it has none. */
+    private double[] runtimes = new double[64];
+
+    private int numEdges;
+    /** The parent and child of each dependency, duplicates are removed by {@link #getTopology()}. */
+    private int[] edgeParents = new int[64];
+    private int[] edgeChildren = new int[64];
+    /** The size of the file passed along each dependency, in bytes. */
+    private long[] edgeBytes = new long[64];
+
+    /** Built on demand and discarded when a task or dependency is added. */
+    private Topology topology;
+
+    /** @return the index of the new task */
+    int addTask() {
+        if (numTasks == runtimes.length) {
+            runtimes = Arrays.copyOf(runtimes, 2 * numTasks);
+        }
+        runtimes[numTasks] = Double.NaN;
+        topology = null;
+        return numTasks++;
+    }
+
+    void setRuntime(int task, double runtime) {
+        runtimes[task] = runtime;
+    }
+
+    /**
+     * @param bytes the size of the file the parent passes to the child
+     * @return the index of the dependency, see {@link #setEdgeBytes(int, long)}
+     */
+    int addEdge(int parent, int child, long bytes) {
+        if (numEdges == edgeParents.length) {
+            edgeParents = Arrays.copyOf(edgeParents, 2 * numEdges);
+            edgeChildren = Arrays.copyOf(edgeChildren, 2 * numEdges);
+            edgeBytes = Arrays.copyOf(edgeBytes, 2 * numEdges);
+        }
+        edgeParents[numEdges] = parent;
+        edgeChildren[numEdges] = child;
+        edgeBytes[numEdges] = bytes;
+        topology = null;
+        return numEdges++;
+    }
+
+    void setEdgeBytes(int edge, long bytes) {
+        edgeBytes[edge] = bytes;
+    }
+
+    int getNumTasks() {
+        return numTasks;
+    }
+
+    /**
+     * Sets the critical path, depth, level widths, parallelism and fan-in/fan-out of the statistics.
+     * @throws IllegalStateException if the dependencies contain a cycle
+     */
+    void analyze(WorkflowStatistics statistics) {
+        Topology topology = getTopology();
+        statistics.depth = topology.levelWidths.length;
+        statistics.levelWidths = topology.levelWidths.clone();
+        statistics.maximumLevelWidth = 0;
+        for (int width : topology.levelWidths) statistics.maximumLevelWidth = Math.max(statistics.maximumLevelWidth, width);
+        statistics.maximumFanIn = topology.maximumFanIn;
+        statistics.maximumFanOut = topology.maximumFanOut;
+
+        // earliest start and finish times if every task starts as soon as its parents have finished, in topological order
+        double[] start = new double[numTasks];
+        double[] finish = new double[numTasks];
+        double criticalPath = 0, totalRuntime = 0;
+        for (int i = 0; i < numTasks; i++) {
+            int task = topology.order[i];
+            double runtime = runtime(task);
+            finish[task] = start[task] + runtime;
+            criticalPath = Math.max(criticalPath, finish[task]);
+            totalRuntime += runtime;
+            for (int e = topology.childOffsets[task]; e < topology.childOffsets[task + 1]; e++) {
+                int child = topology.children[e];
+                start[child] = Math.max(start[child], finish[task]);
+            }
+        }
+        statistics.criticalPathSeconds = criticalPath;
+        statistics.averageParallelism = criticalPath > 0 ? totalRuntime / criticalPath : 0;
+        statistics.maximumParallelism = maximumOverlap(start, finish);
+    }
+
+    /**
+     * Computes the priorities of list scheduling heuristics such as HEFT (Topcuoglu et al. 2002), including the time to
+     * transfer the files between dependent tasks. Files that a task passes to the same child are transferred one after another.
+     * <ul>
+     * <li>The upward rank (bottom level) of a task is its runtime plus the longest transfer time and upward rank among its children.</li>
+     * <li>The top level of a task is the longest path from an entry task to its start, i.e., its earliest start time.</li>
+     * <li>The slack of a task is the critical path (the largest top level plus upward rank) minus its top level and upward rank.</li>
+     * </ul>
+     * @param bytesPerSecond the bandwidth that converts file sizes to transfer times, infinite to ignore transfers
+     * @return the upward ranks, top levels and slacks of the tasks in seconds, each indexed like the tasks
+     * @throws IllegalStateException if the dependencies contain a cycle
+     */
+    double[][] ranks(double bytesPerSecond) {
+        Topology topology = getTopology();
+        // the transfer time of each distinct dependency
+        double[] transfer = new double[topology.children.length];
+        if (bytesPerSecond < Double.POSITIVE_INFINITY) {
+            for (int e = 0; e < numEdges; e++) transfer[topology.edgeSlot[e]] += edgeBytes[e] / bytesPerSecond;
+        }
+
+        double[] topLevel = new double[numTasks];
+        for (int i = 0; i < numTasks; i++) {
+            int task = topology.order[i];
+            double finish = topLevel[task] + runtime(task);
+            for (int e = topology.childOffsets[task]; e < topology.childOffsets[task + 1]; e++) {
+                int child = topology.children[e];
+                topLevel[child] = Math.max(topLevel[child], finish + transfer[e]);
+            }
+        }
+
+        // reverse topological order: the ranks of the children are known
+        double[] upwardRank = new double[numTasks];
+        double criticalPath = 0;
+        for (int i = numTasks - 1; i >= 0; i--) {
+            int task = topology.order[i];
+            double successors = 0;
+            for (int e = topology.childOffsets[task]; e < topology.childOffsets[task + 1]; e++) {
+                successors = Math.max(successors, transfer[e] + upwardRank[topology.children[e]]);
+            }
+            upwardRank[task] = runtime(task) + successors;
+            criticalPath = Math.max(criticalPath, topLevel[task] + upwardRank[task]);
+        }
+
+        double[] slack = new double[numTasks];
+        for (int task = 0; task < numTasks; task++) slack[task] = Math.max(0, criticalPath - topLevel[task] - upwardRank[task]);
+        return new double[][]{upwardRank, topLevel, slack};
+    }
+
+    /** @return the runtime of the task, zero if it has none */
+    private double runtime(int task) {
+        return Double.isNaN(runtimes[task]) ? 0 : runtimes[task];
+    }
+
+    /**
+     * @param start the non-negative start time of each interval
+     * @return the largest number of intervals [start, finish) that contain the same point in time, ignoring empty intervals
+     */
+    private static int maximumOverlap(double[] start, double[] finish) {
+        // the bits of non-negative doubles are ordered like their values, which allows sorting them in linear time
+        long[] starts = new long[start.length];
+        long[] finishes = new long[start.length];
+        int n = 0;
+        for (int i = 0; i < start.length; i++) {
+            if ( ! (finish[i] > start[i])) continue;
+            starts[n] = Double.doubleToLongBits(start[i]);
+            finishes[n] = Double.doubleToLongBits(finish[i]);
+            n++;
+        }
+        long[] buffer = new long[n];
+        radixSort(starts, n, buffer);
+        radixSort(finishes, n, buffer);
+        int running = 0, maximum = 0;
+        for (int s = 0, f = 0; s < n; ) {
+            // tasks finishing at the time another starts don't overlap with it
+            if (finishes[f] <= starts[s]) {
+                running--;
+                f++;
+            } else {
+                running++;
+                s++;
+                maximum = Math.max(maximum, running);
+            }
+        }
+        return maximum;
+    }
+
+    private static final int RADIX_BITS = 11;
+
+    /** Sorts the first n non-negative values by their bits, least significant digit first, skipping digits in which all values agree. */
+    private static void radixSort(long[] values, int n, long[] buffer) {
+        int[] counts = new int[1 << RADIX_BITS];
+        long[] from = values, to = buffer;
+        for (int shift = 0; shift < 64; shift += RADIX_BITS) {
+            Arrays.fill(counts, 0);
+            for (int i = 0; i < n; i++) counts[(int) (from[i] >>> shift) & (counts.length - 1)]++;
+            if (n == 0 || counts[(int) (from[0] >>> shift) & (counts.length - 1)] == n) continue;
+            for (int digit = 0, sum = 0; digit < counts.length; digit++) {
+                int count = counts[digit];
+                counts[digit] = sum;
+                sum += count;
+            }
+            for (int i = 0; i < n; i++) to[counts[(int) (from[i] >>> shift) & (counts.length - 1)]++] = from[i];
+            long[] swap = from;
+            from = to;
+            to = swap;
+        }
+        if (from != values) System.arraycopy(from, 0, values, 0, n);
+    }
+
+    private Topology getTopology() {
+        if (topology == null) topology = new Topology();
+        return topology;
+    }
+
+    /** The structure of the graph, which does not depend on the runtimes. */
+    private class Topology {
+        /** The children of task i are children[childOffsets[i]] to children[childOffsets[i+1]-1], without duplicates. */
+        final int[] childOffsets = new int[numTasks + 1];
+        final int[] children;
+        /** The position in {@link #children} of each dependency, duplicates share the position of the first. */
+        final int[] edgeSlot = new int[numEdges];
+        /** The tasks in topological order (Kahn's algorithm), tasks without parents first. */
+        final int[] order = new int[numTasks];
+        /** The number of tasks in each level, where the level of a task is the number of tasks on the longest path from a task without parents to it (excluding itself). */
+        final int[] levelWidths;
+        int maximumFanIn;
+        int maximumFanOut;
+
+        Topology() {
+            // compressed sparse rows of the dependencies, grouped by parent
+            for (int e = 0; e < numEdges; e++) childOffsets[edgeParents[e] + 1]++;
+            for (int i = 0; i < numTasks; i++) childOffsets[i + 1] += childOffsets[i];
+            int[] next = Arrays.copyOf(childOffsets, numTasks);
+            // the dependencies grouped by parent, then the children without duplicates
+            int[] edges = new int[numEdges];
+            for (int e = 0; e < numEdges; e++) edges[next[edgeParents[e]]++] = e;
+
+            // remove duplicates (a task can pass several files to the same child) in place
+            int[] lastParent = new int[numTasks];
+            Arrays.fill(lastParent, -1);
+            int[] slotOfChild = new int[numTasks];
+            int[] parents = new int[numTasks];
+            int distinct = 0;
+            for (int task = 0; task < numTasks; task++) {
+                int from = childOffsets[task], to = childOffsets[task + 1];
+                childOffsets[task] = distinct;
+                for (int position = from; position < to; position++) {
+                    int edge = edges[position];
+                    int child = edgeChildren[edge];
+                    if (lastParent[child] == task) {
+                        edgeSlot[edge] = slotOfChild[child];
+                        continue;
+                    }
+                    lastParent[child] = task;
+                    slotOfChild[child] = distinct;
+                    edgeSlot[edge] = distinct;
+                    edges[distinct++] = child;
+                    parents[child]++;
+                }
+                maximumFanOut = Math.max(maximumFanOut, distinct - childOffsets[task]);
+            }
+            childOffsets[numTasks] = distinct;
+            children = Arrays.copyOf(edges, distinct);
+            for (int count : parents) maximumFanIn = Math.max(maximumFanIn, count);
+
+            // Kahn's algorithm, order doubles as the queue
+            int[] level = new int[numTasks];
+            int tail = 0, depth = 0;
+            for (int task = 0; task < numTasks; task++) if (parents[task] == 0) order[tail++] = task;
+            for (int head = 0; head < tail; head++) {
+                int task = order[head];
+                depth = Math.max(depth, level[task] + 1);
+                for (int e = childOffsets[task]; e < childOffsets[task + 1]; e++) {
+                    int child = children[e];
+                    level[child] = Math.max(level[child], level[task] + 1);
+                    if (--parents[child] == 0) order[tail++] = child;
+                }
+            }
+            if (tail < numTasks) throw new IllegalStateException(String.format("The dependencies of %d tasks contain a cycle.", numTasks - tail));
+
+            levelWidths = new int[depth];
+            for (int task = 0; task < numTasks; task++) levelWidths[level[task]]++;
+        }
+    }
+}
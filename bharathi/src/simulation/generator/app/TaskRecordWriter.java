@@ -0,0 +1,259 @@
+package simulation.generator.app;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes one record per task (task id and type, total input size, peak memory and runtime), e.g., to train memory predictors on a corpus.
+ * Several workflows can be written to the same stream. Records are written to a buffer without formatting each row.
+ * <ul>
+ * <li>{@link Format#CSV} writes the columns {@link #CSV_HEADER}, with the runtime as in the DAX (empty if a task has none).</li>
+ * <li>{@link Format#BINARY} writes one block per workflow, see {@link Columns#read(InputStream)}.</li>
+ * </ul>
+ * Optionally, the records include the priorities set by {@link AbstractApplication#annotateRanks(double)} in the
+ * columns {@link #RANKS_CSV_COLUMNS}.
+ * Tasks are grouped by type, in the order in which the first task of each type was added to the workflow.
+ */
+public class TaskRecordWriter implements Closeable {
+
+    public enum Format {CSV, BINARY}
+
+    public static final String CSV_HEADER = "task_id,task_type,input_size_total_bytes,peak_mem_bytes,runtime";
+    public static final String RANKS_CSV_COLUMNS = ",upward_rank,top_level,slack";
+    /** The first bytes of each binary block, "TREC" in ASCII. */
+    static final int MAGIC = 0x54524543;
+    static final int VERSION = 1;
+    /** Set if the block contains the upward rank, top level and slack columns. */
+    static final int FLAG_RANKS = 1;
+
+    private final Format format;
+    private final boolean ranks;
+    private final OutputStream out;
+    private final DataOutputStream data;
+    /** Digits of a number, written backwards from the end. */
+    private final byte[] digits = new byte[20];
+    private boolean headerWritten;
+
+    public TaskRecordWriter(OutputStream out, Format format) {
+        this(out, format, false);
+    }
+
+    /** @param ranks whether to write the upward rank, top level and slack of each task */
+    public TaskRecordWriter(OutputStream out, Format format, boolean ranks) {
+        this.format = format;
+        this.ranks = ranks;
+        this.out = new BufferedOutputStream(out, 1 << 16);
+        this.data = new DataOutputStream(this.out);
+    }
+
+    /**
+     * Writes the records of the tasks of the workflow.
+     * @throws IllegalStateException if the application does not retain its tasks, see {@link AbstractApplication#setStatisticsOnly(boolean)}
+     */
+    public void writeWorkflow(AbstractApplication app) throws IOException {
+        if (app.isStatisticsOnly()) throw new IllegalStateException("Can not write task records in statistics only mode, the tasks are not retained.");
+        Map<String, TaskTypeStatistics> types = app.getTaskTypeStatistics();
+        if (format == Format.CSV) writeCsv(types);
+        else writeBinary(types);
+    }
+
+    private void writeCsv(Map<String, TaskTypeStatistics> types) throws IOException {
+        if ( ! headerWritten) {
+            writeAscii(CSV_HEADER);
+            if (ranks) writeAscii(RANKS_CSV_COLUMNS);
+            out.write('\n');
+            headerWritten = true;
+        }
+        for (Map.Entry<String, TaskTypeStatistics> type : types.entrySet()) {
+            for (AppJob task : type.getValue().tasks) {
+                writeAscii(task.getID());
+                out.write(',');
+                writeAscii(type.getKey());
+                out.write(',');
+                writeLong(task.getInputBytes());
+                out.write(',');
+                if (task.hasPeakMemBytes()) writeLong(task.getPeakMemBytes());
+                out.write(',');
+                if (task.hasRuntime()) writeDecimal(task.getRuntime(), task.getRuntimeScale());
+                if (ranks) {
+                    boolean hasRanks = task.hasRanks();
+                    out.write(',');
+                    if (hasRanks) writeDecimal(task.getUpwardRank(), 100);
+                    out.write(',');
+                    if (hasRanks) writeDecimal(task.getTopLevel(), 100);
+                    out.write(',');
+                    if (hasRanks) writeDecimal(task.getSlack(), 100);
+                }
+                out.write('\n');
+            }
+        }
+    }
+
+    /**
+     * Writes the header (magic, version, flags, task types and their number of tasks) followed by the task id, input size,
+     * peak memory and runtime columns and, if {@link #FLAG_RANKS} is set, the upward rank, top level and slack columns.
+     */
+    private void writeBinary(Map<String, TaskTypeStatistics> types) throws IOException {
+        data.writeInt(MAGIC);
+        data.writeInt(VERSION);
+        data.writeInt(ranks ? FLAG_RANKS : 0);
+        data.writeInt(types.size());
+        for (Map.Entry<String, TaskTypeStatistics> type : types.entrySet()) {
+            data.writeUTF(type.getKey());
+            data.writeInt(type.getValue().tasks.size());
+        }
+        for (TaskTypeStatistics type : types.values()) for (AppJob task : type.tasks) data.writeUTF(task.getID());
+        for (TaskTypeStatistics type : types.values()) for (AppJob task : type.tasks) data.writeLong(task.getInputBytes());
+        for (TaskTypeStatistics type : types.values()) for (AppJob task : type.tasks) data.writeLong(task.getPeakMemBytes());
+        for (TaskTypeStatistics type : types.values()) for (AppJob task : type.tasks) data.writeDouble(task.getRuntime());
+        if (ranks) {
+            for (TaskTypeStatistics type : types.values()) for (AppJob task : type.tasks) data.writeDouble(task.getUpwardRank());
+            for (TaskTypeStatistics type : types.values()) for (AppJob task : type.tasks) data.writeDouble(task.getTopLevel());
+            for (TaskTypeStatistics type : types.values()) for (AppJob task : type.tasks) data.writeDouble(task.getSlack());
+        }
+    }
+
+    /** Writes the characters of an ASCII string (e.g., a task id or type) as bytes. */
+    private void writeAscii(String s) throws IOException {
+        for (int i = 0; i < s.length(); i++) out.write(s.charAt(i));
+    }
+
+    private void writeLong(long value) throws IOException {
+        if (value == Long.MIN_VALUE) {
+            writeAscii(Long.toString(value));
+            return;
+        }
+        if (value < 0) {
+            out.write('-');
+            value = -value;
+        }
+        int pos = digits.length;
+        do {
+            digits[--pos] = (byte) ('0' + value % 10);
+            value /= 10;
+        } while (value != 0);
+        out.write(digits, pos, digits.length - pos);
+    }
+
+    /** Writes the value with as many decimals as scale has zeros, as in the DAX, see {@link AppJob#format(double, long)}. */
+    private void writeDecimal(double value, long scale) throws IOException {
+        long scaled = Math.round(value * scale);
+        if (scaled < 0) {
+            out.write('-');
+            scaled = -scaled;
+        }
+        writeLong(scaled / scale);
+        if (scale == 1) return;
+        out.write('.');
+        long fraction = scaled % scale;
+        int pos = digits.length;
+        for (long s = scale; s > 1; s /= 10) {
+            digits[--pos] = (byte) ('0' + fraction % 10);
+            fraction /= 10;
+        }
+        out.write(digits, pos, digits.length - pos);
+    }
+
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+
+    /** The records of one workflow in binary format. Peak memory is -1 and runtime and ranks NaN for tasks without the annotation. */
+    public static class Columns {
+        public final String[] tasktypes;
+        /** The number of tasks of each type, the tasks of the first type come first, etc. */
+        public final int[] tasksPerType;
+        /** The ids of the tasks as in the DAX. */
+        public final String[] taskIds;
+        public final long[] inputBytes;
+        public final long[] peakMemBytes;
+        public final double[] runtimes;
+        /** Null if the ranks were not written. */
+        public final double[] upwardRanks;
+        public final double[] topLevels;
+        public final double[] slacks;
+
+        private Columns(String[] tasktypes, int[] tasksPerType, String[] taskIds, long[] inputBytes, long[] peakMemBytes, double[] runtimes, double[] upwardRanks, double[] topLevels, double[] slacks) {
+            this.tasktypes = tasktypes;
+            this.tasksPerType = tasksPerType;
+            this.taskIds = taskIds;
+            this.inputBytes = inputBytes;
+            this.peakMemBytes = peakMemBytes;
+            this.runtimes = runtimes;
+            this.upwardRanks = upwardRanks;
+            this.topLevels = topLevels;
+            this.slacks = slacks;
+        }
+
+        /**
+         * Reads the next workflow from a stream written in {@link Format#BINARY}.
+         * @return the records of the next workflow or null at the end of the stream
+         */
+        public static Columns read(InputStream in) throws IOException {
+            DataInputStream data = in instanceof DataInputStream ? (DataInputStream) in : new DataInputStream(in);
+            int magic;
+            try {
+                magic = data.readInt();
+            } catch (EOFException e) {
+                return null;
+            }
+            if (magic != MAGIC) throw new IOException(String.format("Not a task record block (magic number %x).", magic));
+            int version = data.readInt();
+            if (version != VERSION) throw new IOException("Unsupported task record version " + version);
+            int flags = data.readInt();
+
+            int numTypes = data.readInt();
+            String[] tasktypes = new String[numTypes];
+            int[] tasksPerType = new int[numTypes];
+            int numTasks = 0;
+            for (int t = 0; t < numTypes; t++) {
+                tasktypes[t] = data.readUTF();
+                tasksPerType[t] = data.readInt();
+                numTasks += tasksPerType[t];
+            }
+            String[] taskIds = new String[numTasks];
+            for (int i = 0; i < numTasks; i++) taskIds[i] = data.readUTF();
+            long[] inputBytes = new long[numTasks];
+            long[] peakMemBytes = new long[numTasks];
+            double[] runtimes = new double[numTasks];
+            for (int i = 0; i < numTasks; i++) inputBytes[i] = data.readLong();
+            for (int i = 0; i < numTasks; i++) peakMemBytes[i] = data.readLong();
+            for (int i = 0; i < numTasks; i++) runtimes[i] = data.readDouble();
+            double[] upwardRanks = null, topLevels = null, slacks = null;
+            if ((flags & FLAG_RANKS) != 0) {
+                upwardRanks = readDoubles(data, numTasks);
+                topLevels = readDoubles(data, numTasks);
+                slacks = readDoubles(data, numTasks);
+            }
+            return new Columns(tasktypes, tasksPerType, taskIds, inputBytes, peakMemBytes, runtimes, upwardRanks, topLevels, slacks);
+        }
+
+        private static double[] readDoubles(DataInputStream data, int length) throws IOException {
+            double[] values = new double[length];
+            for (int i = 0; i < length; i++) values[i] = data.readDouble();
+            return values;
+        }
+
+        /** Reads all workflows from a stream written in {@link Format#BINARY}. */
+        public static List<Columns> readAll(InputStream in) throws IOException {
+            DataInputStream data = new DataInputStream(in);
+            List<Columns> workflows = new ArrayList<>();
+            for (Columns columns = read(data); columns != null; columns = read(data)) workflows.add(columns);
+            return workflows;
+        }
+    }
+}
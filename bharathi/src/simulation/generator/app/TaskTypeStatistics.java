@@ -0,0 +1,289 @@
+package simulation.generator.app;
+
+import simulation.generator.util.DistributionSketch;
+import simulation.generator.util.LogHistogram;
+import simulation.generator.util.Moments;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.function.DoubleUnaryOperator;
+import java.util.function.LongUnaryOperator;
+
+/**
+ * Aggregates over the tasks of one type, updated whenever a task is added, annotated or one of its input files is resized.
+ * This makes {@link AbstractApplication#getStatistics()} independent of the number of tasks.
+ */
+class TaskTypeStatistics {
+
+    /** The tasks of this type, in the order they were added to the workflow. Empty if the tasks are not retained. */
+    final List<AppJob> tasks = new ArrayList<>();
+    private final boolean retainTasks;
+    /** The number of tasks of this type. */
+    int numTasks;
+
+    /** The number of tasks that have a runtime annotation. */
+    int tasksWithRuntime;
+    /** The sum of the runtimes of the tasks that have a runtime annotation, in seconds. */
+    double runtimeSum;
+    /** The sum of runtime times peak memory of the tasks that have both annotations, in megabyte seconds. */
+    double spacetimeSum;
+
+    /** Over the tasks that have a peak memory annotation, in bytes. */
+    private Accumulator memory = new Accumulator();
+    /** Over the total input size of each task, in bytes. */
+    private Accumulator inputs = new Accumulator();
+    /**
+     * The runtime (NaN if there is none) and the peak memory (-1 if there is none) of each task, in the order the tasks
+     * were added, if the tasks are not retained. This allows transforming the runtimes like the tasks do, see {@link #transformRuntimes(DoubleUnaryOperator)}.
+     */
+    private double[] runtimes;
+    private long[] peakMems;
+
+    /** @param retainTasks whether to keep the tasks, which allows exact extrema after values have been replaced and is required for {@link AbstractApplication#getTasks(String)} */
+    TaskTypeStatistics(boolean retainTasks) {
+        this.retainTasks = retainTasks;
+    }
+
+    /** @return the position of the task among the tasks of this type */
+    int taskAdded(AppJob task) {
+        int position = numTasks++;
+        if (retainTasks) {
+            tasks.add(task);
+        } else {
+            if (runtimes == null) {
+                runtimes = new double[16];
+                peakMems = new long[16];
+            } else if (position == runtimes.length) {
+                runtimes = Arrays.copyOf(runtimes, 2 * position);
+                peakMems = Arrays.copyOf(peakMems, 2 * position);
+            }
+            runtimes[position] = Double.NaN;
+            peakMems[position] = -1;
+        }
+        inputs.add(task.getInputBytes());
+        return position;
+    }
+
+    void runtimeChanged(AppJob task, double oldRuntime, double newRuntime) {
+        if (Double.isNaN(oldRuntime)) {
+            tasksWithRuntime++;
+        } else {
+            runtimeSum -= oldRuntime;
+            if (task.hasPeakMemBytes()) spacetimeSum -= oldRuntime * 1e-6 * task.getPeakMemBytes();
+        }
+        runtimeSum += newRuntime;
+        if (task.hasPeakMemBytes()) spacetimeSum += newRuntime * 1e-6 * task.getPeakMemBytes();
+        if ( ! retainTasks) runtimes[task.getTypeIndex()] = newRuntime;
+    }
+
+    void peakMemChanged(AppJob task, long oldBytes, long newBytes) {
+        if (oldBytes >= 0) {
+            memory.remove(oldBytes);
+            if (task.hasRuntime()) spacetimeSum -= task.getRuntime() * 1e-6 * oldBytes;
+        }
+        memory.add(newBytes);
+        if (task.hasRuntime()) spacetimeSum += task.getRuntime() * 1e-6 * newBytes;
+        if ( ! retainTasks) peakMems[task.getTypeIndex()] = newBytes;
+    }
+
+    void inputBytesChanged(long oldBytes, long newBytes) {
+        inputs.remove(oldBytes);
+        inputs.add(newBytes);
+    }
+
+    /**
+     * Replaces the runtime of each task that has one by the result of the function and recomputes the runtime and spacetime sums in the same pass.
+     * If the tasks are not retained, the runtimes of the tasks are replaced in the same way, see {@link AppJob#setRuntime(double)}.
+     */
+    void transformRuntimes(DoubleUnaryOperator function) {
+        double sum = 0, spacetime = 0;
+        if (retainTasks) {
+            for (AppJob task : tasks) {
+                if ( ! task.hasRuntime()) continue;
+                double runtime = task.setRuntime(function.applyAsDouble(task.getRuntime()));
+                sum += runtime;
+                if (task.hasPeakMemBytes()) spacetime += runtime * 1e-6 * task.getPeakMemBytes();
+            }
+        } else {
+            for (int i = 0; i < numTasks; i++) {
+                if (Double.isNaN(runtimes[i])) continue;
+                double runtime = runtimes[i] = AppJob.roundRuntime(function.applyAsDouble(runtimes[i]));
+                sum += runtime;
+                if (peakMems[i] >= 0) spacetime += runtime * 1e-6 * peakMems[i];
+            }
+        }
+        runtimeSum = sum;
+        spacetimeSum = spacetime;
+    }
+
+    /**
+     * Replaces the peak memory of each task that has one by the result of the function and rebuilds the memory summary and the spacetime sum in the same pass.
+     * @throws IllegalStateException if the tasks are not retained
+     */
+    void transformPeakMems(LongUnaryOperator function) {
+        requireTasks("transform peak memory");
+        Accumulator transformed = new Accumulator();
+        double spacetime = 0;
+        for (AppJob task : tasks) {
+            if ( ! task.hasPeakMemBytes()) continue;
+            long bytes = task.setPeakMemBytes(function.applyAsLong(task.getPeakMemBytes()));
+            transformed.add(bytes);
+            if (task.hasRuntime()) spacetime += task.getRuntime() * 1e-6 * bytes;
+        }
+        memory = transformed;
+        spacetimeSum = spacetime;
+    }
+
+    /**
+     * Sets the peak memory of the i-th task to bytes[i] and rebuilds the memory summary and the spacetime sum in the same pass.
+     * If the tasks are not retained, the peak memory of the tasks is replaced in the same way, see {@link AppJob#setPeakMemBytes(long)}.
+     */
+    void setPeakMems(long[] bytes) {
+        if (bytes.length != numTasks) throw new IllegalArgumentException(String.format("Got %d peak memory values for %d tasks.", bytes.length, numTasks));
+        Accumulator annotated = new Accumulator();
+        double spacetime = 0;
+        for (int i = 0; i < bytes.length; i++) {
+            long peakMem;
+            double runtime;
+            if (retainTasks) {
+                AppJob task = tasks.get(i);
+                peakMem = task.setPeakMemBytes(bytes[i]);
+                runtime = task.getRuntime();
+            } else {
+                peakMem = peakMems[i] = Math.max(0, bytes[i]);
+                runtime = runtimes[i];
+            }
+            annotated.add(peakMem);
+            if ( ! Double.isNaN(runtime)) spacetime += runtime * 1e-6 * peakMem;
+        }
+        memory = annotated;
+        spacetimeSum = spacetime;
+    }
+
+    /**
+     * Draws the runtime of each task again, in the order the tasks were added, see {@link AppJob#redrawRuntime()}.
+     * @throws IllegalStateException if the tasks are not retained
+     */
+    void redrawRuntimes() {
+        requireTasks("redraw runtimes");
+        for (AppJob task : tasks) task.redrawRuntime();
+    }
+
+    /**
+     * Recomputes all aggregates from the tasks. Unlike the updates, which remove the replaced values, the result only
+     * depends on the current annotations of the tasks and not on the values they replaced.
+     * @throws IllegalStateException if the tasks are not retained
+     */
+    void rebuild() {
+        requireTasks("rebuild the statistics");
+        tasksWithRuntime = 0;
+        double sum = 0, spacetime = 0;
+        Accumulator annotated = new Accumulator(), inputSizes = new Accumulator();
+        for (AppJob task : tasks) {
+            inputSizes.add(task.getInputBytes());
+            if (task.hasPeakMemBytes()) annotated.add(task.getPeakMemBytes());
+            if ( ! task.hasRuntime()) continue;
+            tasksWithRuntime++;
+            sum += task.getRuntime();
+            if (task.hasPeakMemBytes()) spacetime += task.getRuntime() * 1e-6 * task.getPeakMemBytes();
+        }
+        runtimeSum = sum;
+        spacetimeSum = spacetime;
+        memory = annotated;
+        inputs = inputSizes;
+    }
+
+    /**
+     * Adds the input files of the tasks to the set.
+     * @throws IllegalStateException if the tasks are not retained
+     */
+    void collectInputs(Set<AppFilename> files) {
+        requireTasks("collect input files");
+        for (AppJob task : tasks) files.addAll(task.getInputs());
+    }
+
+    private void requireTasks(String operation) {
+        if ( ! retainTasks && numTasks > 0) throw new IllegalStateException("Can not " + operation + " in statistics only mode, the tasks are not retained.");
+    }
+
+    /** @return the number of tasks with a peak memory annotation */
+    long getTasksWithPeakMem() {
+        return memory.n;
+    }
+
+    /** @return summary statistics of the peak memory annotations of the tasks of this type */
+    DistributionSketch getMemory() {
+        if ( ! memory.extremaValid && retainTasks) {
+            memory.resetExtrema();
+            for (AppJob task : tasks) if (task.hasPeakMemBytes()) memory.updateExtrema(task.getPeakMemBytes());
+        }
+        return memory.toSketch();
+    }
+
+    /** @return summary statistics of the total input size of the tasks of this type */
+    DistributionSketch getInputs() {
+        if ( ! inputs.extremaValid && retainTasks) {
+            inputs.resetExtrema();
+            for (AppJob task : tasks) inputs.updateExtrema(task.getInputBytes());
+        }
+        return inputs.toSketch();
+    }
+
+    /**
+     * Mean and variance of values that are added and removed, using Welford's update and its inverse, and a histogram for quantiles.
+     * Removing the minimum or maximum invalidates the extrema, which are then recomputed from the tasks on demand or,
+     * if the tasks are not retained, estimated from the histogram.
+     */
+    private static class Accumulator {
+        private long n;
+        private double mean;
+        private double m2;
+        private double min = Double.POSITIVE_INFINITY;
+        private double max = Double.NEGATIVE_INFINITY;
+        private boolean extremaValid = true;
+        private final LogHistogram histogram = new LogHistogram();
+
+        private void add(double value) {
+            n++;
+            double delta = value - mean;
+            mean += delta / n;
+            m2 += delta * (value - mean);
+            updateExtrema(value);
+            histogram.addValue(value);
+        }
+
+        private void remove(double value) {
+            if (value <= min || value >= max) extremaValid = false;
+            histogram.removeValue(value);
+            if (--n == 0) {
+                mean = 0;
+                m2 = 0;
+                return;
+            }
+            double delta = value - mean;
+            mean -= delta / n;
+            m2 = Math.max(0, m2 - delta * (value - mean));
+        }
+
+        private void resetExtrema() {
+            min = Double.POSITIVE_INFINITY;
+            max = Double.NEGATIVE_INFINITY;
+            extremaValid = true;
+        }
+
+        private void updateExtrema(double value) {
+            min = Math.min(min, value);
+            max = Math.max(max, value);
+        }
+
+        private DistributionSketch toSketch() {
+            if ( ! extremaValid) {
+                min = histogram.getQuantile(0);
+                max = histogram.getQuantile(1);
+            }
+            return new DistributionSketch(new Moments(n, mean, m2, min, max), histogram.copy());
+        }
+    }
+}
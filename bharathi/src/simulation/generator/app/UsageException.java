@@ -0,0 +1,18 @@
+package simulation.generator.app;
+
+/**
+ * Thrown for invalid command line arguments or a request for help, with the usage of the program as message.
+ * Command line tools print the message and exit with {@link #exitCode}, the GeneratorServer answers with an error.
+ */
+public class UsageException extends IllegalArgumentException {
+
+    private static final long serialVersionUID = 1L;
+
+    /** 0 if help was requested, 1 for invalid arguments */
+    public final int exitCode;
+
+    public UsageException(String usage, int exitCode) {
+        super(usage);
+        this.exitCode = exitCode;
+    }
+}
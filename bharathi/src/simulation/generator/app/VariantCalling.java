@@ -1,6 +1,5 @@
 package simulation.generator.app;
 
-import org.griphyn.vdl.dax.PseudoText;
 import simulation.generator.util.Distribution;
 import simulation.generator.util.LinearModel;
 
@@ -21,8 +20,7 @@ public class VariantCalling extends AbstractApplication {
                 "\n--help | -h Print help message." +
                 "\n--numpaths | -n Number of paths.";
 
-        System.out.println(msg);
-        System.exit(exitCode);
+        throw new UsageException(msg, exitCode);
     }
 
     double getRuntimeFactor() {
@@ -133,20 +131,6 @@ public class VariantCalling extends AbstractApplication {
         distributions.put("VARSCAN_TIME", Distribution.getTruncatedNormalDistribution(18.2, 184.72));
         distributions.put("ANNOVAR_TIME", Distribution.getConstantDistribution(13));
 
-        /*
-         * Memory models.
-         */
-        memoryModels.put("UNTAR_MEM", LinearModel.constant(6294.405120e6, 0.64e6, 10e6));
-        memoryModels.put("GUNZIP_MEM", LinearModel.constant(225751040, 0.64e6, 10e6));
-        memoryModels.put("FASTQC_MEM", LinearModel.constant(172609536, 0.64e6, 10e6));
-        memoryModels.put("FAIDX_MEM", LinearModel.constant(1138688, 0.64e6, 10e6));
-        memoryModels.put("BUILD_MEM", new LinearModel(7.06621219e+00, -2.50037354e+07, 75168825.46073712, 10e6));
-        memoryModels.put("ALIGN_MEM", new LinearModel(-0.00313234721648, 8219825.53808, 1839863.20373326, 10e6));
-        memoryModels.put("SORT_MEM", new LinearModel(5.98052744905, -25085974.9131, 10229878.82462673, 10e6));
-        memoryModels.put("PILEUP_MEM", new LinearModel(0.98062275764, -16982382.2809, 25700732.44343742, 10e6));
-        memoryModels.put("VARSCAN_MEM", new LinearModel(1.2142658008, 2376073937.43, 1.18779457e+08, 10e6));
-        memoryModels.put("ANNOVAR_MEM", LinearModel.constant(470867968, 0.16e6, 10e6));
-
         /*
          * Peak memory relative time distributions.
          */
@@ -164,6 +148,40 @@ public class VariantCalling extends AbstractApplication {
 
     }
 
+    @Override
+    protected void populateMemoryModels() {
+
+        memoryModels.put("VC_Untar", LinearModel.constant(6294.405120e6, 0.64e6, 10e6));
+        memoryModels.put("VC_Gunzip", LinearModel.constant(225751040, 0.64e6, 10e6));
+        memoryModels.put("VC_Fastqc", LinearModel.constant(172609536, 0.64e6, 10e6));
+        memoryModels.put("VC_Faidx", LinearModel.constant(1138688, 0.64e6, 10e6));
+        memoryModels.put("VC_Build", new LinearModel(7.06621219e+00, -2.50037354e+07, 75168825.46073712, 10e6));
+        memoryModels.put("VC_Align", new LinearModel(-0.00313234721648, 8219825.53808, 1839863.20373326, 10e6));
+        memoryModels.put("VC_Sort", new LinearModel(5.98052744905, -25085974.9131, 10229878.82462673, 10e6));
+        memoryModels.put("VC_Pileup", new LinearModel(0.98062275764, -16982382.2809, 25700732.44343742, 10e6));
+        memoryModels.put("VC_Varscan", new LinearModel(1.2142658008, 2376073937.43, 1.18779457e+08, 10e6));
+        memoryModels.put("VC_Annovar", LinearModel.constant(470867968, 0.16e6, 10e6));
+
+    }
+
+    @Override
+    protected String[][] getFileTypeRules() {
+        return new String[][]{
+                {"hg\\d+\\.tar", "UNTAR_INPUT"},
+                {"chr[^.]+\\.fa", "UNTAR_OUTPUT"},
+                {"SRR\\d+_ID\\d+\\.filt\\.fastq\\.gz", "GUNZIP_INPUT"},
+                {"unzipped_SRR.*", "GUNZIP_OUTPUT"},
+                {".*_fastqc\\.zip", "FASTQC_OUTPUT"},
+                {".*\\.fa\\.fai", "FAIDX_OUTPUT"},
+                {".*_idx\\.tar", "BUILD_OUTPUT"},
+                {".*_alignment\\.bam", "ALIGN_OUTPUT"},
+                {".*_sorted\\.bam", "SORT_OUTPUT"},
+                {".*_mpileup\\.csv", "PILEUP_OUTPUT"},
+                {".*_variants\\.vcf", "VARSCAN_OUTPUT"},
+                {"table\\.variant_function", "ANNOVAR_OUTPUT"}
+        };
+    }
+
     @Override
     public String[] getTasktypes() {
         return new String[]{"VC_Untar", "VC_Gunzip", "VC_Fastqc", "VC_Build", "VC_Faidx", "VC_Align", "VC_Sort", "VC_Pileup", "VC_Varscan", "VC_Annovar"};
@@ -184,15 +202,14 @@ class VC_Untar extends AppJob {
         long size = vc.generateLong("UNTAR_INPUT");
         input("hg38.tar", size);
 
-        double runtime                = vc.generateDouble("UNTAR_TIME") * vc.getRuntimeFactor();
-        long   peakMemory             = vc.memoryModels.get("UNTAR_MEM").generate(2*size);
+        annotateRuntime("UNTAR_TIME", runtime -> runtime * vc.getRuntimeFactor());
+        long   peakMemory             = vc.memoryModels.get("VC_Untar").generate(2*size);
         double peakMemoryTimeRelative = vc.generateDouble("UNTAR_peak_mem_relative_time");
 
-        addAnnotation("runtime", String.format("%.2f", runtime));
         addAnnotation("input_total_bytes", ""+2*size);
-        addAnnotation("peak_mem_bytes", ""+peakMemory);
+        annotatePeakMemBytes(peakMemory);
 
-        addArgument(new PseudoText(String.format("peak_mem_bytes=%d,peak_memory_relative_time=%.3f", peakMemory, peakMemoryTimeRelative)));
+        addPeakMemoryArgument(peakMemoryTimeRelative);
 
     }
 
@@ -230,15 +247,14 @@ class VC_Gunzip extends AppJob {
         long size = vc.generateLong("GUNZIP_INPUT");
         input("SRR359188_" + jobID + ".filt.fastq.gz", size);  // 223618467  225289381
 
-        double runtime                = vc.generateDouble("GUNZIP_TIME") * vc.getRuntimeFactor();
-        long   peakMemory             = vc.memoryModels.get("GUNZIP_MEM").generate(2*size);
+        annotateRuntime("GUNZIP_TIME", runtime -> runtime * vc.getRuntimeFactor());
+        long   peakMemory             = vc.memoryModels.get("VC_Gunzip").generate(2*size);
         double peakMemoryTimeRelative = vc.generateDouble("GUNZIP_peak_mem_relative_time");
 
-        addAnnotation("runtime", String.format("%.2f", runtime));
         addAnnotation("input_total_bytes", ""+2*size);
-        addAnnotation("peak_mem_bytes", ""+peakMemory);
+        annotatePeakMemBytes(peakMemory);
 
-        addArgument(new PseudoText(String.format("peak_mem_bytes=%d,peak_memory_relative_time=%.3f", peakMemory, peakMemoryTimeRelative)));
+        addPeakMemoryArgument(peakMemoryTimeRelative);
 
         // Prdoduces only one file, that is used by all its children
         outFileName = "unzipped_SRR359188_" + jobID + ".filt.fastq.gz";
@@ -276,15 +292,14 @@ class VC_Fastqc extends AppJob {
         for (AppFilename input : inputs)
             inputSize += input.getSize();
 
-        double runtime                = vc.generateDouble("FASTQC_TIME") * vc.getRuntimeFactor();
-        long   peakMemory             = vc.memoryModels.get("FASTQC_MEM").generate(inputSize);
+        annotateRuntime("FASTQC_TIME", runtime -> runtime * vc.getRuntimeFactor());
+        long   peakMemory             = vc.memoryModels.get("VC_Fastqc").generate(inputSize);
         double peakMemoryTimeRelative = vc.generateDouble("FASTQC_peak_mem_relative_time");
 
-        addAnnotation("runtime", String.format("%.2f", runtime));
         addAnnotation("input_total_bytes", ""+inputSize);
-        addAnnotation("peak_mem_bytes", ""+peakMemory);
+        annotatePeakMemBytes(peakMemory);
 
-        addArgument(new PseudoText(String.format("peak_mem_bytes=%d,peak_memory_relative_time=%.3f", peakMemory, peakMemoryTimeRelative)));
+        addPeakMemoryArgument(peakMemoryTimeRelative);
 
     }
 
@@ -317,15 +332,14 @@ class VC_Faidx extends AppJob {
         for (AppFilename input : inputs)
             inputSize += input.getSize();
 
-        double runtime                = vc.generateDouble("FAIDX_TIME") * vc.getRuntimeFactor();
-        long   peakMemory             = vc.memoryModels.get("FAIDX_MEM").generate(inputSize);
+        annotateRuntime("FAIDX_TIME", runtime -> runtime * vc.getRuntimeFactor());
+        long   peakMemory             = vc.memoryModels.get("VC_Faidx").generate(inputSize);
         double peakMemoryTimeRelative = vc.generateDouble("FAIDX_peak_mem_relative_time");
 
-        addAnnotation("runtime", String.format("%.2f", runtime));
         addAnnotation("input_total_bytes", ""+inputSize);
-        addAnnotation("peak_mem_bytes", ""+peakMemory);
+        annotatePeakMemBytes(peakMemory);
 
-        addArgument(new PseudoText(String.format("peak_mem_bytes=%d,peak_memory_relative_time=%.3f", peakMemory, peakMemoryTimeRelative)));
+        addPeakMemoryArgument(peakMemoryTimeRelative);
 
     }
 
@@ -358,15 +372,14 @@ class VC_Build extends AppJob {
         for (AppFilename input : inputs)
             inputSize += input.getSize();
 
-        double runtime                = vc.generateDouble("BUILD_TIME") * vc.getRuntimeFactor();
-        long   peakMemory             = vc.memoryModels.get("BUILD_MEM").generate(inputSize);
+        annotateRuntime("BUILD_TIME", runtime -> runtime * vc.getRuntimeFactor());
+        long   peakMemory             = vc.memoryModels.get("VC_Build").generate(inputSize);
         double peakMemoryTimeRelative = vc.generateDouble("BUILD_peak_mem_relative_time");
 
-        addAnnotation("runtime", String.format("%.2f", runtime));
         addAnnotation("input_total_bytes", ""+inputSize);
-        addAnnotation("peak_mem_bytes", ""+peakMemory);
+        annotatePeakMemBytes(peakMemory);
 
-        addArgument(new PseudoText(String.format("peak_mem_bytes=%d,peak_memory_relative_time=%.3f", peakMemory, peakMemoryTimeRelative)));
+        addPeakMemoryArgument(peakMemoryTimeRelative);
 
     }
 
@@ -399,15 +412,14 @@ class VC_Align extends AppJob {
         for (AppFilename input : inputs)
             inputSize += input.getSize();
 
-        double runtime                = vc.generateDouble("ALIGN_TIME") * vc.getRuntimeFactor();
-        long   peakMemory             = vc.memoryModels.get("ALIGN_MEM").generate(inputSize);
+        annotateRuntime("ALIGN_TIME", runtime -> runtime * vc.getRuntimeFactor());
+        long   peakMemory             = vc.memoryModels.get("VC_Align").generate(inputSize);
         double peakMemoryTimeRelative = vc.generateDouble("ALIGN_peak_mem_relative_time");
 
-        addAnnotation("runtime", String.format("%.2f", runtime));
         addAnnotation("input_total_bytes", ""+inputSize);
-        addAnnotation("peak_mem_bytes", ""+peakMemory);
+        annotatePeakMemBytes(peakMemory);
 
-        addArgument(new PseudoText(String.format("peak_mem_bytes=%d,peak_memory_relative_time=%.3f", peakMemory, peakMemoryTimeRelative)));
+        addPeakMemoryArgument(peakMemoryTimeRelative);
 
     }
 
@@ -440,15 +452,14 @@ class VC_Sort extends AppJob {
         for (AppFilename input : inputs)
             inputSize += input.getSize();
 
-        double runtime                = vc.generateDouble("SORT_TIME") * vc.getRuntimeFactor();
-        long   peakMemory             = vc.memoryModels.get("SORT_MEM").generate(inputSize);
+        annotateRuntime("SORT_TIME", runtime -> runtime * vc.getRuntimeFactor());
+        long   peakMemory             = vc.memoryModels.get("VC_Sort").generate(inputSize);
         double peakMemoryTimeRelative = vc.generateDouble("SORT_peak_mem_relative_time");
 
-        addAnnotation("runtime", String.format("%.2f", runtime));
         addAnnotation("input_total_bytes", ""+inputSize);
-        addAnnotation("peak_mem_bytes", ""+peakMemory);
+        annotatePeakMemBytes(peakMemory);
 
-        addArgument(new PseudoText(String.format("peak_mem_bytes=%d,peak_memory_relative_time=%.3f", peakMemory, peakMemoryTimeRelative)));
+        addPeakMemoryArgument(peakMemoryTimeRelative);
 
     }
 
@@ -481,15 +492,14 @@ class VC_Pileup extends AppJob {
         for (AppFilename input : inputs)
             inputSize += input.getSize();
 
-        double runtime                = vc.generateDouble("PILEUP_TIME") * vc.getRuntimeFactor();
-        long   peakMemory             = vc.memoryModels.get("PILEUP_MEM").generate(inputSize);
+        annotateRuntime("PILEUP_TIME", runtime -> runtime * vc.getRuntimeFactor());
+        long   peakMemory             = vc.memoryModels.get("VC_Pileup").generate(inputSize);
         double peakMemoryTimeRelative = vc.generateDouble("PILEUP_peak_mem_relative_time");
 
-        addAnnotation("runtime", String.format("%.2f", runtime));
         addAnnotation("input_total_bytes", ""+inputSize);
-        addAnnotation("peak_mem_bytes", ""+peakMemory);
+        annotatePeakMemBytes(peakMemory);
 
-        addArgument(new PseudoText(String.format("peak_mem_bytes=%d,peak_memory_relative_time=%.3f", peakMemory, peakMemoryTimeRelative)));
+        addPeakMemoryArgument(peakMemoryTimeRelative);
 
     }
 
@@ -522,15 +532,14 @@ class VC_Varscan extends AppJob {
         for (AppFilename input : inputs)
             inputSize += input.getSize();
 
-        double runtime                = vc.generateDouble("VARSCAN_TIME") * vc.getRuntimeFactor();
-        long   peakMemory             = vc.memoryModels.get("VARSCAN_MEM").generate(inputSize);
+        annotateRuntime("VARSCAN_TIME", runtime -> runtime * vc.getRuntimeFactor());
+        long   peakMemory             = vc.memoryModels.get("VC_Varscan").generate(inputSize);
         double peakMemoryTimeRelative = vc.generateDouble("VARSCAN_peak_mem_relative_time");
 
-        addAnnotation("runtime", String.format("%.2f", runtime));
         addAnnotation("input_total_bytes", ""+inputSize);
-        addAnnotation("peak_mem_bytes", ""+peakMemory);
+        annotatePeakMemBytes(peakMemory);
 
-        addArgument(new PseudoText(String.format("peak_mem_bytes=%d,peak_memory_relative_time=%.3f", peakMemory, peakMemoryTimeRelative)));
+        addPeakMemoryArgument(peakMemoryTimeRelative);
 
     }
 
@@ -561,16 +570,15 @@ class VC_Annovar extends AppJob {
         output("table.variant_function", annovarSize);
 
         // Determine the runtime
-        double runtime = vc.generateDouble("ANNOVAR_TIME");
-        addAnnotation("runtime", String.format("%.2f", runtime));
+        annotateRuntime("ANNOVAR_TIME", runtime -> runtime);
 
         // Determine the peak memory consumption
-        long   peakMemory             = vc.memoryModels.get("ANNOVAR_MEM").generate(annovarSize);
+        long   peakMemory             = vc.memoryModels.get("VC_Annovar").generate(annovarSize);
         double peakMemoryTimeRelative = vc.generateDouble("ANNOVAR_peak_mem_relative_time");
 
         addAnnotation("input_total_bytes", inputSize+"");
-        addAnnotation("peak_mem_bytes", ""+peakMemory);
-        addArgument(new PseudoText(String.format("peak_mem_bytes=%d,peak_memory_relative_time=%.3f", peakMemory, peakMemoryTimeRelative)));
+        annotatePeakMemBytes(peakMemory);
+        addPeakMemoryArgument(peakMemoryTimeRelative);
     }
 }
 
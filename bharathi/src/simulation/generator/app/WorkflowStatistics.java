@@ -33,13 +33,8 @@
  ******************************************************************************/
 package simulation.generator.app;
 
-import jdk.nashorn.internal.runtime.WithObject;
-import org.apache.commons.math.stat.descriptive.DescriptiveStatistics;
-import org.griphyn.vdl.workflow.Workflow;
+import simulation.generator.util.DistributionSketch;
 
-import java.io.IOException;
-import java.nio.file.Files;
-import java.nio.file.Paths;
 import java.util.*;
 
 /**
@@ -74,17 +69,38 @@ public class WorkflowStatistics {
      * The former is {@link #totalRuntimeSeconds}/cores, the latter is {@link #totalSpacetimeMegabyteSeconds}/(cores*memPerCore), which boils down to runtimeSeconds * memCore / spaceTimeSeconds.
      * As value for memPerCore we use a fixed 4 GB. */
     public double cpuToMemRatio;
+
+    // structural statistics, NaN or -1 for workflows generated in statistics only mode, see AbstractApplication#setStatisticsOnly(boolean)
+    /** The largest sum of runtimes along a path of dependent tasks, in seconds. A lower bound on the makespan. */
+    public double criticalPathSeconds = Double.NaN;
+    /** The number of tasks on the longest path of dependent tasks (by number of tasks), i.e., the number of levels. */
+    public int depth = -1;
+    /** The number of tasks in each level, where the level of a task is the number of tasks on the longest path from an entry task to it. */
+    public int[] levelWidths = new int[0];
+    /** The largest number of tasks in a level. */
+    public int maximumLevelWidth = -1;
+    /** The largest number of tasks that run at the same time if each task starts as soon as its parents have finished. */
+    public int maximumParallelism = -1;
+    /** The total runtime divided by the critical path, i.e., the average number of running tasks in that schedule. */
+    public double averageParallelism = Double.NaN;
+    /** The largest number of distinct parents of a task. */
+    public int maximumFanIn = -1;
+    /** The largest number of distinct children of a task. */
+    public int maximumFanOut = -1;
+
     // per tasktype statistics
     /** For each task type, gives the mean average over the input file size sums. */
     public Map<String, Integer> numberOfTasksPerTaskType = new HashMap<>();
     /** For each task type, gives the mean average over the input file size sums. */
-    public Map<String, DescriptiveStatistics> inputSizesPerTaskType = new HashMap<>();
-    /** Summary statistics over the distribution of peak memory usages within a task type (min, max, mean, sd, etc.)*/
-    public Map<String, DescriptiveStatistics> memoryUsagesPerTaskType = new HashMap<>();
+    public Map<String, DistributionSketch> inputSizesPerTaskType = new HashMap<>();
+    /** Summary statistics over the distribution of peak memory usages within a task type (min, max, mean, sd, quantiles, etc.)*/
+    public Map<String, DistributionSketch> memoryUsagesPerTaskType = new HashMap<>();
+    /** Summary statistics over the peak memory usages of all tasks, the merge of {@link #memoryUsagesPerTaskType}.
+     * Serialized in the last column of {@link #toCsvRow(String)}, such that the summaries of a corpus can be merged. */
+    public DistributionSketch memoryUsages = new DistributionSketch();
 
-    // workflow corpus statistics
-    /** See {@link #addStatistics(String, WorkflowStatistics)} */
-    private static Map<String, WorkflowStatistics> statistics = new LinkedHashMap<>();
+    /** The columns of {@link #toCsvRow(String)} */
+    public static final String CSV_HEADER = "file,num_tasks,total_runtime_seconds,total_spacetime_megabyteseconds,minimum_peak_memory_mb,minimum_average_peak_mb,maximum_peak_memory_mb,maximum_average_peak_mb,memory_heterogeneity,cpu_to_mem_ratio_4GB,peak_memory_p50_mb,peak_memory_p95_mb,peak_memory_p99_mb,critical_path_seconds,depth,maximum_level_width,maximum_parallelism,average_parallelism,maximum_fan_in,maximum_fan_out,peak_memory_sketch";
 
 //    /** @return the standard deviation of all task's peak memory consumptions */
 //    public double getStdDev(){
@@ -95,27 +111,27 @@ public class WorkflowStatistics {
 //
 //    }
 
-    /** Used to assemble and output statistics for a collection of workflows.
+    /**
      * @param filename name of the file containing the workflow (task resource usage and dependencies in DAX format)
-     * @param statistics the descriptive statistics of the workflow in that file
+     * @return the aggregate statistics of this workflow as a line (without line break) of a csv file with the columns {@link #CSV_HEADER}.
+     * @see StatisticsWriter
      */
-    public static void addStatistics(String filename, WorkflowStatistics statistics){
-        WorkflowStatistics.statistics.put(filename, statistics);
+    public String toCsvRow(String filename){
+        return filename + ',' + numberOfTasks + ',' + totalRuntimeSeconds + ',' + totalSpacetimeMegabyteSeconds + ',' +
+                1e-6*minimumPeakMemory + ',' + 1e-6*smallestAveragePeakMemoryBytes + ',' +
+                1e-6*maximumPeakMemoryBytes + ',' + 1e-6*largestAveragePeakMemoryBytes + ',' +
+                memoryHeterogeneity + ',' + cpuToMemRatio + ',' +
+                1e-6*memoryUsages.getQuantile(0.5) + ',' + 1e-6*memoryUsages.getQuantile(0.95) + ',' + 1e-6*memoryUsages.getQuantile(0.99) + ',' +
+                criticalPathSeconds + ',' + depth + ',' + maximumLevelWidth + ',' + maximumParallelism + ',' + averageParallelism + ',' + maximumFanIn + ',' + maximumFanOut + ',' +
+                memoryUsages.serialize();
     }
 
-    /** Used to write the assembled workflow statistics to a csv file. */
-    public static void writeStatisticsCSV(String filename) throws IOException {
-        // contains the csv line per workflow file
-        StringBuilder workflowStatisticsCsv = new StringBuilder();
-        workflowStatisticsCsv.append("file,num_tasks,total_runtime_seconds,total_spacetime_megabyteseconds,minimum_peak_memory_mb,minimum_average_peak_mb,maximum_peak_memory_mb,maximum_average_peak_mb,memory_heterogeneity,cpu_to_mem_ratio_4GB\n");
-
-        for(String workflowFileName : statistics.keySet()){
-            WorkflowStatistics s = statistics.get(workflowFileName);
-            workflowStatisticsCsv.append(String.format("%s,%s,%s,%s,%s,%s,%s,%s,%s,%s\n", workflowFileName, s.numberOfTasks, s.totalRuntimeSeconds, s.totalSpacetimeMegabyteSeconds, 1e-6*s.minimumPeakMemory, 1e-6*s.smallestAveragePeakMemoryBytes, 1e-6*s.maximumPeakMemoryBytes, 1e-6*s.largestAveragePeakMemoryBytes, s.memoryHeterogeneity, s.cpuToMemRatio));
-        }
-
-        Files.write(Paths.get(filename), workflowStatisticsCsv.toString().getBytes());
-
+    /**
+     * @param csvRow a row written by {@link #toCsvRow(String)}
+     * @return the summary of the peak memory usages of the workflow's tasks, e.g., to merge the summaries of a corpus
+     */
+    public static DistributionSketch parsePeakMemorySketch(String csvRow) {
+        return DistributionSketch.parse(csvRow.substring(csvRow.lastIndexOf(',') + 1));
     }
 
 }
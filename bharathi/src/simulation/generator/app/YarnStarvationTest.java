@@ -36,6 +36,11 @@ public class YarnStarvationTest extends AbstractApplication {
         System.exit(exitCode);
     }
 
+    @Override
+    protected void resetParameters() {
+        minutes = 25;
+    }
+
     @Override
     protected void processArgs(String[] args) {
 
@@ -70,7 +75,7 @@ public class YarnStarvationTest extends AbstractApplication {
                 // create task
                 streakTasks[j] = new AppJob(this, NAMESPACE, taskName, "1.0", getNewJobID());
                 // set runtime and memory consumption
-                streakTasks[j].addAnnotation("runtime", String.format("%.2f", (double) runtimeSeconds[streakId]));
+                streakTasks[j].annotateRuntime(runtimeSeconds[streakId]);
                 streakTasks[j].addAnnotation("peak_mem_bytes", ""+(long)(memoryGB[streakId]*1e9));
 
                 // add this task as a child to the previous task
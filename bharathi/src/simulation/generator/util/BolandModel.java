@@ -34,132 +34,297 @@
  ******************************************************************************/
 package simulation.generator.util;
 
-import sun.reflect.generics.reflectiveObjects.NotImplementedException;
-
-import java.io.File;
-import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.Arrays;
 import java.util.Random;
-import java.util.Scanner;
-import java.util.regex.Pattern;
-import java.util.stream.DoubleStream;
+import java.util.stream.IntStream;
 
 /**
- * A class for sampling random numbers that potentially depend on an input size.
- * This is used to model the relationship between a task's read amount of data (sum of input file sizes) and
- * its peak memory consumption. We start from a linear model on input size and add unexplained variance.
+ * A memory model that samples peak memory consumptions from the genome assembly traces published by Boland et al.
+ * Given an input size, a trace is drawn at random from the traces with the most similar compressed input data size,
+ * i.e., peak memory is sampled from its empirical distribution conditioned on the input size.
+ *
+ * The traces are read from {@link #DATA_FILE} (or the file passed to {@link #BolandModel(Path, long)}) on first use,
+ * not when the class is initialized.
  *
- * peak mem = max(min value, slope * input size + intercept + random value sampled from Normal(0, variance))
+ * None of the applications in this package use the model, their memory models are {@link LinearModel}s. It is kept as a
+ * {@link MemoryModel} for simulations that annotate tasks with peak memory drawn from the traces, which are not part
+ * of this repository.
  *
  * Created by Carl Witt on 13.11.17.
  */
 public class BolandModel extends MemoryModel {
 
-    static TaskInstance[] data;
-    static {
-        data = parseData();
-    }
+    /** The location of the trace file, relative to the working directory. Columns are
+     * lineage1-5, base_count, read_count, compressed_data_size, library_layout, library_strategy, library_source, name, execution_time, peak_mem_gb */
+    static final String DATA_FILE = "profiling-data/boland-assembly-data.csv";
+
+    /** The number of traces with the closest compressed data size among which {@link #generate(long)} draws. */
+    private static final int NEIGHBORHOOD = 16;
+
+    /** The parsed traces, see {@link #getData()}. */
+    private static volatile TraceData data;
+
+    /** Draws the traces in {@link #generate(long)}. */
+    private final Random random;
+    /** The trace file of this model, null for the shared {@link #DATA_FILE}. */
+    private final Path traceFile;
+    /** The traces parsed from {@link #traceFile}, on first use. */
+    private TraceData traces;
+
+    /**
+     * Columnar representation of the traces. Only the numeric columns are kept, the textual ones are skipped during parsing.
+     */
+    static class TraceData {
+
+        // column indices in the csv file
+        private static final int BASE_COUNT = 5, READ_COUNT = 6, COMPRESSED_DATA_SIZE = 7, EXECUTION_TIME = 12, PEAK_MEM_GB = 13;
+        private static final int NUM_COLUMNS = 14;
+
+        final double[] baseCount, readCount, compressedDataSize, executionTime, peakMemGb;
+        /** Row indices of all traces with a known compressed data size and peak memory, sorted by compressed data size. */
+        final int[] bySize;
+        /** The compressed data sizes in the order of {@link #bySize}, used to binary search for the closest traces. */
+        final double[] sortedSize;
+
+        private TraceData(double[] baseCount, double[] readCount, double[] compressedDataSize, double[] executionTime, double[] peakMemGb) {
+            this.baseCount = baseCount;
+            this.readCount = readCount;
+            this.compressedDataSize = compressedDataSize;
+            this.executionTime = executionTime;
+            this.peakMemGb = peakMemGb;
+
+            // the index is built on boxed row numbers only once, it's a few thousand rows
+            bySize = IntStream.range(0, compressedDataSize.length)
+                    .filter(i -> !Double.isNaN(compressedDataSize[i]) && !Double.isNaN(peakMemGb[i]))
+                    .boxed()
+                    .sorted((a, b) -> Double.compare(compressedDataSize[a], compressedDataSize[b]))
+                    .mapToInt(Integer::intValue)
+                    .toArray();
+            sortedSize = new double[bySize.length];
+            for (int i = 0; i < bySize.length; i++) sortedSize[i] = compressedDataSize[bySize[i]];
+        }
+
+        int size() {
+            return compressedDataSize.length;
+        }
+
+        /**
+         * Parses the csv file by scanning the memory mapped bytes. Numbers are parsed in place, no strings are created.
+         * The first line is assumed to be a header. Empty or non-numeric values in numeric columns are stored as NaN.
+         */
+        static TraceData parse(Path file) throws IOException {
+
+            MappedByteBuffer buffer;
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                if (channel.size() > Integer.MAX_VALUE) throw new IOException("Trace file too large: " + file);
+                buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            }
+
+            int limit = buffer.limit();
+
+            // skip header
+            int start = 0;
+            while (start < limit && buffer.get(start) != '\n') start++;
+            start++;
+
+            // count rows to allocate the columns exactly once
+            int rows = 0;
+            boolean emptyLine = true;
+            for (int i = start; i < limit; i++) {
+                byte b = buffer.get(i);
+                if (b == '\n') {
+                    if (!emptyLine) rows++;
+                    emptyLine = true;
+                } else if (b != '\r') emptyLine = false;
+            }
+            if (!emptyLine) rows++;
+
+            double[][] columns = new double[NUM_COLUMNS][];
+            for (int column : new int[]{BASE_COUNT, READ_COUNT, COMPRESSED_DATA_SIZE, EXECUTION_TIME, PEAK_MEM_GB}) {
+                columns[column] = new double[rows];
+                Arrays.fill(columns[column], Double.NaN);
+            }
+
+            int row = 0, column = 0, fieldStart = start;
+            boolean rowHasContent = false;
+            for (int i = start; i <= limit && row < rows; i++) {
+                byte b = i < limit ? buffer.get(i) : (byte) '\n';
+                if (b != ',' && b != '\n') {
+                    if (b != '\r') rowHasContent = true;
+                    continue;
+                }
+
+                int fieldEnd = i;
+                if (fieldEnd > fieldStart && buffer.get(fieldEnd - 1) == '\r') fieldEnd--;
+                if (column < NUM_COLUMNS && columns[column] != null) {
+                    columns[column][row] = parseDouble(buffer, fieldStart, fieldEnd);
+                }
+                fieldStart = i + 1;
 
-    protected static class TaskInstance{
-        String lineage1, lineage2, lineage3, lineage4, lineage5;
-        double base_count, read_count, compressed_data_size;
-        String library_layout, library_strategy, library_source, name;
-        double execution_time, peak_mem_gb;
-
-        @Override
-        public String toString() {
-            return "TaskInstance{" +
-                    "lineage1='" + lineage1 + '\'' +
-                    ", lineage2='" + lineage2 + '\'' +
-                    ", lineage3='" + lineage3 + '\'' +
-                    ", lineage4='" + lineage4 + '\'' +
-                    ", lineage5='" + lineage5 + '\'' +
-                    ", base_count=" + base_count +
-                    ", read_count=" + read_count +
-                    ", compressed_data_size=" + compressed_data_size +
-                    ", library_layout='" + library_layout + '\'' +
-                    ", library_strategy='" + library_strategy + '\'' +
-                    ", library_source='" + library_source + '\'' +
-                    ", name='" + name + '\'' +
-                    ", execution_time=" + execution_time +
-                    ", peak_mem_gb=" + peak_mem_gb +
-                    '}';
+                if (b == ',') {
+                    column++;
+                    rowHasContent = true;
+                } else {
+                    // blank lines don't count as rows
+                    if (rowHasContent) row++;
+                    column = 0;
+                    rowHasContent = false;
+                }
+            }
+
+            return new TraceData(columns[BASE_COUNT], columns[READ_COUNT], columns[COMPRESSED_DATA_SIZE], columns[EXECUTION_TIME], columns[PEAK_MEM_GB]);
         }
 
-        public TaskInstance(String lineage1, String lineage2, String lineage3, String lineage4, String lineage5,
-                            String base_count, String read_count, String compressed_data_size,
-                            String library_layout, String library_strategy, String library_source, String name, String execution_time, String peak_mem_gb) {
-            try{
-
-                this.lineage1 = lineage1;
-                this.lineage2 = lineage2;
-                this.lineage3 = lineage3;
-                this.lineage4 = lineage4;
-                this.lineage5 = lineage5;
-                this.base_count = Double.parseDouble(base_count);
-                this.read_count = Double.parseDouble(read_count);
-                this.compressed_data_size = Double.parseDouble(compressed_data_size);
-                this.library_layout = library_layout;
-                this.library_strategy = library_strategy;
-                this.library_source = library_source;
-                this.name = name;
-                this.execution_time = Double.parseDouble(execution_time);
-                this.peak_mem_gb = Double.parseDouble(peak_mem_gb);
-            } catch (Exception e){
-                System.out.println("e = " + e);
-                System.exit(-1);
+        /**
+         * Parses a decimal number like -12.5e3 from the bytes in [from, to).
+         * @return the parsed number or NaN if the field is empty or not a plain decimal number.
+         */
+        static double parseDouble(MappedByteBuffer buffer, int from, int to) {
+            int i = from;
+            if (i >= to) return Double.NaN;
+
+            boolean negative = false;
+            byte b = buffer.get(i);
+            if (b == '-' || b == '+') {
+                negative = b == '-';
+                i++;
             }
+
+            long mantissa = 0;
+            int exponent = 0, digits = 0;
+            boolean fraction = false;
+            for (; i < to; i++) {
+                b = buffer.get(i);
+                if (b >= '0' && b <= '9') {
+                    // beyond 18 significant digits, further digits only change the magnitude
+                    if (mantissa < 100_000_000_000_000_000L) {
+                        mantissa = 10 * mantissa + (b - '0');
+                        if (fraction) exponent--;
+                    } else if (!fraction) {
+                        exponent++;
+                    }
+                    digits++;
+                } else if (b == '.' && !fraction) {
+                    fraction = true;
+                } else {
+                    break;
+                }
+            }
+            if (digits == 0) return Double.NaN;
+
+            if (i < to && (b == 'e' || b == 'E')) {
+                i++;
+                boolean negativeExponent = false;
+                if (i < to && (buffer.get(i) == '-' || buffer.get(i) == '+')) {
+                    negativeExponent = buffer.get(i) == '-';
+                    i++;
+                }
+                int e = 0, exponentDigits = 0;
+                for (; i < to && buffer.get(i) >= '0' && buffer.get(i) <= '9'; i++, exponentDigits++) {
+                    e = Math.min(10 * e + (buffer.get(i) - '0'), 10_000);
+                }
+                if (exponentDigits == 0) return Double.NaN;
+                exponent += negativeExponent ? -e : e;
+            }
+            if (i < to) return Double.NaN;
+
+            double value = exponent >= 0 ? mantissa * Math.pow(10, exponent) : mantissa / Math.pow(10, -exponent);
+            return negative ? -value : value;
         }
     }
 
+    /**
+     * @param numTasks not used, kept for compatibility
+     * @param userId not used, kept for compatibility
+     * @param randomSeed the seed for drawing traces in {@link #generate(long)}
+     */
     public BolandModel(int numTasks, int userId, long randomSeed){
-//        Random random = new Random(randomSeed);
-//        for (int i = 0; i < numTasks; i++) {
-//            int randomOffset = random.nextInt(data.length);
-//            TaskInstance randomInstance = data[randomOffset];
-//            Task t = new Task("assembly", ""+randomOffset, this, userId, i,
-//                    // execution times are cumulative measurements for 32 cores
-//                    // multiply with 1,000,000 to get seconds back when running on standard CPUs
-//                    (long) (randomInstance.execution_time/32.*1e6), 0, 0, 1, 0, 0, new UtilizationModelFull(), new UtilizationModelFull(), new UtilizationModelFull()
-//            );
-//            t.setPeakMemoryBytes((long) (randomInstance.peak_mem_gb*1e9));
-//            addTask(t);
-//
-//
-//        }
+        this(randomSeed);
     }
 
-    static protected TaskInstance[] parseData(){
-        Scanner scanner = null;
-        TaskInstance result[] = new TaskInstance[24580];
+    /** @param randomSeed the seed for drawing traces in {@link #generate(long)} */
+    public BolandModel(long randomSeed){
+        this(null, randomSeed);
+    }
 
-        try {
-            scanner = new Scanner(new File("profiling-data/boland-assembly-data.csv"));
+    /**
+     * @param traceFile a csv file with the columns of {@link #DATA_FILE}, null to use {@link #DATA_FILE}
+     * @param randomSeed the seed for drawing traces in {@link #generate(long)}
+     */
+    public BolandModel(Path traceFile, long randomSeed){
+        this.traceFile = traceFile;
+        this.random = new Random(randomSeed);
+    }
 
-            // skip header
-            scanner.nextLine();
+    private TraceData getTraces(){
+        if (traceFile == null) return getData();
+        if (traces == null) {
+            try {
+                traces = TraceData.parse(traceFile);
+            } catch (IOException e) {
+                throw new RuntimeException("Could not read Boland traces from " + traceFile.toAbsolutePath(), e);
+            }
+        }
+        return traces;
+    }
 
-            scanner.useDelimiter(Pattern.compile("[,\n]"));
-            int i = 0;
-            while(scanner.hasNext()){
-//                System.out.print(scanner.next()+"|");
-                result[i++] = new TaskInstance(scanner.next(),scanner.next(),scanner.next(),scanner.next(),scanner.next(),scanner.next(),scanner.next(),scanner.next(),scanner.next(),scanner.next(),scanner.next(),scanner.next(),scanner.next(),scanner.next());
+    /** @return the traces, parsing {@link #DATA_FILE} on the first call. */
+    static TraceData getData(){
+        TraceData result = data;
+        if (result == null) {
+            synchronized (BolandModel.class) {
+                result = data;
+                if (result == null) {
+                    try {
+                        result = data = TraceData.parse(Paths.get(DATA_FILE));
+                    } catch (IOException e) {
+                        throw new RuntimeException("Could not read Boland traces from " + Paths.get(DATA_FILE).toAbsolutePath(), e);
+                    }
+                }
             }
-//            System.out.println("result[0] = " + result[0]);
-//            System.out.println("result[1] = " + result[1]);
-//            System.out.println("result[24579] = " + result[24579]);
-            scanner.close();
-        } catch (FileNotFoundException e) {
-            e.printStackTrace();
         }
         return result;
     }
 
+    /**
+     * Draws one of the {@link #NEIGHBORHOOD} traces whose compressed data size is closest to the given input size.
+     * @param inputFileSize The total input size, in the unit of the compressed_data_size column.
+     * @return the peak memory consumption of the drawn trace in bytes.
+     */
     @Override
     public long generate(long inputFileSize) {
-        System.out.println("BolandModel.generate");
-        System.out.println("inputFileSize = [" + inputFileSize + "]");
-        throw new NotImplementedException();
+        TraceData traces = getTraces();
+        int n = traces.sortedSize.length;
+        if (n == 0) throw new RuntimeException("No usable traces in " + (traceFile == null ? DATA_FILE : traceFile));
+
+        int position = firstAtLeast(traces.sortedSize, inputFileSize);
+
+        int window = Math.min(NEIGHBORHOOD, n);
+        int from = Math.max(0, Math.min(position - window / 2, n - window));
+
+        int row = traces.bySize[from + random.nextInt(window)];
+        return (long) (traces.peakMemGb[row] * 1e9);
+    }
+
+    /**
+     * Unlike {@link Arrays#binarySearch(double[], double)}, this returns the first of several equal values.
+     * @param sorted values in ascending order
+     * @return the index of the first value ≥ key, sorted.length if there is none
+     */
+    static int firstAtLeast(double[] sorted, double key) {
+        int lo = 0, hi = sorted.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (sorted[mid] < key) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
     }
 
-}
\ No newline at end of file
+}
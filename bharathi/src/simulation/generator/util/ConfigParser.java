@@ -1,110 +1,125 @@
 package simulation.generator.util;
 
-import org.w3c.dom.*;
-
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-
-import java.util.Map;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
+ * Reads distribution profiles: xml files with one element per distribution, named after the distribution, e.g.
+ * {@code <distributions><mDiffFit type="truncatednormal" mean="10.59" variance="0.01"/></distributions>}.
+ * Names that are not valid element names are given as attribute, e.g., {@code <distribution name="2mass.fits" type="constant" value="4222080"/>}.
+ * Supported types are constant (value), uniform (min, max) and truncatednormal (mean, variance), each with an optional scalingFactor.
+ *
+ * Parsed profiles are cached by file and modification time. The returned maps are immutable and the distributions
+ * in them are stateless, so they can be shared by any number of applications, also across threads.
+ *
  * @author Shishir Bharathi
  */
-class ConfigParser {
-    private final Map<String, Distribution> vars;
+public class ConfigParser {
+
+    private static final XMLInputFactory XML_INPUT_FACTORY = XMLInputFactory.newInstance();
+
+    /** Parsed profiles by absolute path. A profile is parsed again if its modification time changed. */
+    private static final Map<Path, CachedProfile> cache = new ConcurrentHashMap<>();
+
+    private static class CachedProfile {
+        private final FileTime lastModified;
+        private final Map<String, Distribution> distributions;
+
+        private CachedProfile(FileTime lastModified, Map<String, Distribution> distributions) {
+            this.lastModified = lastModified;
+            this.distributions = distributions;
+        }
+    }
 
     private ConfigParser() {
-        this.vars = new HashMap<String, Distribution>();
     }
-    
-    /*
-     * Create <Variable type, Distribution> for all entries in the config file.
+
+    /**
+     * @return the distributions defined in the given profile, by name. The map is immutable and the same instance
+     * is returned as long as the file is not modified.
      */
-    private Map<String, Distribution> populate(String filename) throws Exception {
-        DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-        DocumentBuilder builder = factory.newDocumentBuilder();
-        Document document = builder.parse(filename);
-        process(document.getDocumentElement());
-        return vars;
-    }
-    
-    private void process(Node node) {
-        if (node == null) {
-            return;
-        }
+    public static Map<String, Distribution> parse(String filename) throws IOException, XMLStreamException {
+        Path path = Paths.get(filename).toAbsolutePath().normalize();
+        FileTime lastModified = Files.getLastModifiedTime(path);
 
-        String name = ((Element) node).getTagName().trim();
-        if (name.equals("distributions")) {
-            NodeList children = node.getChildNodes();
-            for (int i = 0; i < children.getLength(); i++) {
-                Node child = children.item(i);
-                process(child);
-            }
-        } else {
-            NamedNodeMap attrs = node.getAttributes();
-            Node nType = attrs.getNamedItem("type");
-            String type = nType.getNodeValue().trim();
-            if (type.equals("constant")) {
-                processConstant(name, node);
-            } else if (type.equals("uniform")) {
-                processUniform(name, node);
-            } else if (type.equals("truncatednormal")) {
-                processTruncatedNormal(name, node);
-            }
+        CachedProfile cached = cache.get(path);
+        if (cached != null && cached.lastModified.equals(lastModified)) {
+            return cached.distributions;
         }
 
+        Map<String, Distribution> distributions = Collections.unmodifiableMap(populate(path));
+        cache.put(path, new CachedProfile(lastModified, distributions));
+        return distributions;
     }
 
-    private void processConstant(String name, Node node) {
-        NamedNodeMap attrs = node.getAttributes();
-        Node nValue = attrs.getNamedItem("value");
-        double value = Double.parseDouble(nValue.getNodeValue().trim());
-        Node nScalingFactor = attrs.getNamedItem("scalingFactor");
-        double scalingFactor = 1.0;
-        if (nScalingFactor != null) {
-            scalingFactor = Double.parseDouble(nScalingFactor.getNodeValue().trim());
-
-        } else {
-            this.vars.put(name, Distribution.getConstantDistribution(value, scalingFactor));
+    /*
+     * Create <Variable type, Distribution> for all entries in the config file.
+     */
+    private static Map<String, Distribution> populate(Path path) throws IOException, XMLStreamException {
+        Map<String, Distribution> vars = new HashMap<>();
+        try (InputStream in = Files.newInputStream(path)) {
+            XMLStreamReader reader = XML_INPUT_FACTORY.createXMLStreamReader(in);
+            while (reader.hasNext()) {
+                if (reader.next() != XMLStreamConstants.START_ELEMENT) {
+                    continue;
+                }
+                String name = reader.getLocalName().trim();
+                // names that are not valid element names, e.g., 2mass.fits
+                if (name.equals("distribution")) name = attribute(name, reader, "name", true);
+                if (!name.equals("distributions")) {
+                    vars.put(name, process(name, reader));
+                }
+            }
+            reader.close();
         }
+        return vars;
     }
 
-    private void processUniform(String name, Node node) {
-        NamedNodeMap attrs = node.getAttributes();
-        Node nMin = attrs.getNamedItem("min");
-        double min = Double.parseDouble(nMin.getNodeValue().trim());
-        Node nMax = attrs.getNamedItem("max");
-        double max = Double.parseDouble(nMax.getNodeValue().trim());
-        Node nScalingFactor = attrs.getNamedItem("scalingFactor");
-        double scalingFactor = 1.0;
-        if (nScalingFactor != null) {
-            scalingFactor = Double.parseDouble(nScalingFactor.getNodeValue().trim());
-        } else {
-            this.vars.put(name, Distribution.getUniformDistribution(min, max, scalingFactor));
+    private static Distribution process(String name, XMLStreamReader reader) {
+        String type = attribute(name, reader, "type", true).trim();
+        String scalingFactorValue = attribute(name, reader, "scalingFactor", false);
+        double scalingFactor = scalingFactorValue == null ? 1.0 : Double.parseDouble(scalingFactorValue.trim());
+
+        switch (type) {
+            case "constant":
+                return Distribution.getConstantDistribution(number(name, reader, "value"), scalingFactor);
+            case "uniform":
+                return Distribution.getUniformDistribution(number(name, reader, "min"), number(name, reader, "max"), scalingFactor);
+            case "truncatednormal":
+                return Distribution.getTruncatedNormalDistribution(number(name, reader, "mean"), number(name, reader, "variance"), scalingFactor);
+            default:
+                throw new IllegalArgumentException("Unknown type " + type + " of distribution " + name);
         }
     }
 
-    private void processTruncatedNormal(String name, Node node) {
-        NamedNodeMap attrs = node.getAttributes();
-        Node nMean = attrs.getNamedItem("mean");
-        double mean = Double.parseDouble(nMean.getNodeValue().trim());
-        Node nVariance = attrs.getNamedItem("variance");
-        double variance = Double.parseDouble(nVariance.getNodeValue().trim());
-        Node nScalingFactor = attrs.getNamedItem("scalingFactor");
-        double scalingFactor = 1.0;
-        if (nScalingFactor != null) {
-            scalingFactor = Double.parseDouble(nScalingFactor.getNodeValue().trim());
-        } else {
-            this.vars.put(name, Distribution.getTruncatedNormalDistribution(mean, variance, scalingFactor));
+    private static double number(String name, XMLStreamReader reader, String attribute) {
+        return Double.parseDouble(attribute(name, reader, attribute, true).trim());
+    }
+
+    private static String attribute(String name, XMLStreamReader reader, String attribute, boolean required) {
+        String value = reader.getAttributeValue(null, attribute);
+        if (value == null && required) {
+            throw new IllegalArgumentException("Distribution " + name + " has no " + attribute + " attribute");
         }
+        return value;
     }
 
     public static void main(String[] args) throws Exception {
-        ConfigParser cp = new ConfigParser();
-        Map<String, Distribution> vars = cp.populate(args[0]);
+        Map<String, Distribution> vars = parse(args[0]);
         for (String var : vars.keySet()) {
             System.out.println(var + ": " + vars.get(var).getClass());
         }
     }
-}
\ No newline at end of file
+}
@@ -1,8 +1,8 @@
 package simulation.generator.util;
 
-import java.util.Random;
-
 /**
+ * Distributions don't hold mutable state (random numbers are drawn via {@link Misc}), so they can be shared between applications.
+ *
  * @author Shishir Bharathi
  */
 public abstract class Distribution {
@@ -60,7 +60,6 @@ class TruncatedNormalDistribution extends Distribution {
         this.scalingFactor = scalingFactor;
     }
 
-    Random random = new Random(1L);
     public double getDouble() {
 //        return Math.max(1, scalingFactor * random.nextGaussian() + mean * scalingFactor);
         return Misc.truncatedNormal(mean * scalingFactor, variance * scalingFactor * scalingFactor);
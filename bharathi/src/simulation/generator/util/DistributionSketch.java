@@ -0,0 +1,103 @@
+package simulation.generator.util;
+
+/**
+ * Summarizes a sequence of values in bounded memory: exact count, mean, variance, minimum and maximum ({@link Moments})
+ * and quantiles with a bounded relative error ({@link LogHistogram}). Sketches can be merged, e.g., the sketches of the
+ * task types of a workflow or of the workflows of a corpus.
+ */
+public class DistributionSketch {
+
+    private final Moments moments;
+    private final LogHistogram histogram;
+
+    public DistributionSketch() {
+        this(new Moments(), new LogHistogram());
+    }
+
+    /** Summarizes values that have been accumulated elsewhere. */
+    public DistributionSketch(Moments moments, LogHistogram histogram) {
+        if (moments.getN() != histogram.getN()) {
+            throw new IllegalArgumentException(String.format("Moments and histogram summarize different numbers of values (%d and %d).", moments.getN(), histogram.getN()));
+        }
+        this.moments = moments;
+        this.histogram = histogram;
+    }
+
+    public void addValue(double value) {
+        moments.addValue(value);
+        histogram.addValue(value);
+    }
+
+    /**
+     * Adds the values summarized by other to this sketch.
+     * @return this
+     */
+    public DistributionSketch merge(DistributionSketch other) {
+        moments.merge(other.moments);
+        histogram.merge(other.histogram);
+        return this;
+    }
+
+    public long getN() {
+        return moments.getN();
+    }
+
+    public double getMean() {
+        return moments.getMean();
+    }
+
+    public double getSum() {
+        return moments.getSum();
+    }
+
+    public double getVariance() {
+        return moments.getVariance();
+    }
+
+    public double getStandardDeviation() {
+        return moments.getStandardDeviation();
+    }
+
+    public double getMin() {
+        return moments.getMin();
+    }
+
+    public double getMax() {
+        return moments.getMax();
+    }
+
+    /**
+     * @param q the quantile, e.g., 0.5 for the median
+     * @return an estimate within the relative accuracy of the histogram, see {@link LogHistogram#getQuantile(double)}, and within [min, max].
+     */
+    public double getQuantile(double q) {
+        if (getN() == 0) return Double.NaN;
+        return Math.max(getMin(), Math.min(getMax(), histogram.getQuantile(q)));
+    }
+
+    /**
+     * @return the sketch as a single line without commas, e.g., for a column of a csv file, such that sketches written by
+     * different processes can be {@link #parse(String) read} and merged: n;mean;m2;min;max;{@link LogHistogram#serialize() histogram}
+     */
+    public String serialize() {
+        return moments.getN() + ";" + moments.getMean() + ";" + moments.getSumOfSquaredDeviations() + ";" + moments.getMin() + ";" + moments.getMax() + ";" + histogram.serialize();
+    }
+
+    /**
+     * @param serialized the output of {@link #serialize()}
+     * @throws IllegalArgumentException if the string is not a serialized sketch
+     */
+    public static DistributionSketch parse(String serialized) {
+        String[] fields = serialized.split(";", 6);
+        if (fields.length != 6) throw new IllegalArgumentException("Not a serialized sketch: " + serialized);
+        long n = Long.parseLong(fields[0]);
+        // an empty summary has no mean, minimum and maximum
+        Moments moments = n == 0 ? new Moments() : new Moments(n, Double.parseDouble(fields[1]), Double.parseDouble(fields[2]), Double.parseDouble(fields[3]), Double.parseDouble(fields[4]));
+        return new DistributionSketch(moments, LogHistogram.parse(fields[5]));
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s, p50=%s, p95=%s, p99=%s", moments, getQuantile(0.5), getQuantile(0.95), getQuantile(0.99));
+    }
+}
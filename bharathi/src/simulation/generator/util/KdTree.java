@@ -0,0 +1,160 @@
+package simulation.generator.util;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.PriorityQueue;
+import java.util.function.IntConsumer;
+import java.util.function.IntPredicate;
+
+/**
+ * A static k-d tree over points with a fixed number of dimensions, e.g., the statistics of the workflows of a corpus.
+ * The tree is stored implicitly: each subtree is a contiguous range of {@link #order} with its splitting point in the middle.
+ * Each node splits along the dimension in which the points of its subtree have the largest spread.
+ * Points are referred to by their index in the array passed to the constructor.
+ */
+public class KdTree {
+
+    private final double[][] points;
+    private final int dimensions;
+    /** The indices of the points, arranged such that the points in [lo, mid) are ≤ and those in (mid, hi) are ≥ the point at mid = (lo + hi) / 2 in its split dimension. */
+    private final int[] order;
+    /** The split dimension of the node at each position of {@link #order}. */
+    private final int[] splitDimension;
+
+    /** @param points the coordinates of each point, all of the same length */
+    public KdTree(double[][] points) {
+        this.points = points;
+        this.dimensions = points.length == 0 ? 0 : points[0].length;
+        for (double[] point : points) {
+            if (point.length != dimensions) throw new IllegalArgumentException(String.format("All points must have %d dimensions, found a point with %d.", dimensions, point.length));
+        }
+        this.order = new int[points.length];
+        for (int i = 0; i < order.length; i++) order[i] = i;
+        this.splitDimension = new int[points.length];
+        if (dimensions > 0) build(0, points.length);
+    }
+
+    private void build(int lo, int hi) {
+        if (hi - lo <= 0) return;
+        int mid = (lo + hi) >>> 1;
+        int dimension = widestDimension(lo, hi);
+        Integer[] range = new Integer[hi - lo];
+        for (int i = lo; i < hi; i++) range[i - lo] = order[i];
+        Arrays.sort(range, Comparator.comparingDouble(i -> points[i][dimension]));
+        for (int i = lo; i < hi; i++) order[i] = range[i - lo];
+        splitDimension[mid] = dimension;
+        build(lo, mid);
+        build(mid + 1, hi);
+    }
+
+    private int widestDimension(int lo, int hi) {
+        int widest = 0;
+        double widestSpread = -1;
+        for (int d = 0; d < dimensions; d++) {
+            double min = Double.POSITIVE_INFINITY, max = Double.NEGATIVE_INFINITY;
+            for (int i = lo; i < hi; i++) {
+                min = Math.min(min, points[order[i]][d]);
+                max = Math.max(max, points[order[i]][d]);
+            }
+            if (max - min > widestSpread) {
+                widestSpread = max - min;
+                widest = d;
+            }
+        }
+        return widest;
+    }
+
+    public int size() {
+        return points.length;
+    }
+
+    /**
+     * Passes the index of each point within the box [min, max] (inclusive) to the action.
+     * @param min the lower bound of each dimension, use Double.NEGATIVE_INFINITY for none
+     * @param max the upper bound of each dimension, use Double.POSITIVE_INFINITY for none
+     */
+    public void range(double[] min, double[] max, IntConsumer action) {
+        if (min.length != dimensions || max.length != dimensions) throw new IllegalArgumentException("The bounds must have " + dimensions + " dimensions.");
+        range(0, points.length, min, max, action);
+    }
+
+    private void range(int lo, int hi, double[] min, double[] max, IntConsumer action) {
+        if (hi - lo <= 0) return;
+        int mid = (lo + hi) >>> 1;
+        double[] point = points[order[mid]];
+        boolean inside = true;
+        for (int d = 0; d < dimensions && inside; d++) inside = point[d] >= min[d] && point[d] <= max[d];
+        if (inside) action.accept(order[mid]);
+        int d = splitDimension[mid];
+        if (min[d] <= point[d]) range(lo, mid, min, max, action);
+        if (max[d] >= point[d]) range(mid + 1, hi, min, max, action);
+    }
+
+    /**
+     * @param target the coordinates to search near. Dimensions that are NaN are ignored, e.g., to search by some of the dimensions only.
+     * @param k the number of neighbors
+     * @param accept which points may be returned, e.g., those matching other criteria
+     * @return the indices of the (at most) k accepted points with the smallest Euclidean distance to the target, nearest first
+     */
+    public int[] nearest(double[] target, int k, IntPredicate accept) {
+        if (target.length != dimensions) throw new IllegalArgumentException("The target must have " + dimensions + " dimensions.");
+        if (k <= 0) return new int[0];
+        // the worst of the current neighbors first, ties broken by index for deterministic results
+        PriorityQueue<Neighbor> neighbors = new PriorityQueue<>(k, (a, b) -> a.distance != b.distance ? Double.compare(b.distance, a.distance) : Integer.compare(b.index, a.index));
+        nearest(0, points.length, target, k, accept, neighbors);
+        int[] result = new int[neighbors.size()];
+        for (int i = result.length - 1; i >= 0; i--) result[i] = neighbors.poll().index;
+        return result;
+    }
+
+    private void nearest(int lo, int hi, double[] target, int k, IntPredicate accept, PriorityQueue<Neighbor> neighbors) {
+        if (hi - lo <= 0) return;
+        int mid = (lo + hi) >>> 1;
+        int index = order[mid];
+        if (accept.test(index)) {
+            double distance = squaredDistance(points[index], target);
+            if (neighbors.size() < k) {
+                neighbors.add(new Neighbor(index, distance));
+            } else if (distance < neighbors.peek().distance || distance == neighbors.peek().distance && index < neighbors.peek().index) {
+                neighbors.poll();
+                neighbors.add(new Neighbor(index, distance));
+            }
+        }
+        int d = splitDimension[mid];
+        double difference = target[d] - points[index][d];
+        if (Double.isNaN(difference)) {
+            nearest(lo, mid, target, k, accept, neighbors);
+            nearest(mid + 1, hi, target, k, accept, neighbors);
+            return;
+        }
+        // search the side of the target first, the other side only if it can contain nearer points
+        boolean left = difference <= 0;
+        if (left) nearest(lo, mid, target, k, accept, neighbors);
+        else nearest(mid + 1, hi, target, k, accept, neighbors);
+        if (neighbors.size() < k || difference * difference <= neighbors.peek().distance) {
+            if (left) nearest(mid + 1, hi, target, k, accept, neighbors);
+            else nearest(lo, mid, target, k, accept, neighbors);
+        }
+    }
+
+    /** @return the squared Euclidean distance over the dimensions in which the target is not NaN */
+    static double squaredDistance(double[] point, double[] target) {
+        double sum = 0;
+        for (int d = 0; d < point.length; d++) {
+            if (Double.isNaN(target[d])) continue;
+            double difference = point[d] - target[d];
+            sum += difference * difference;
+        }
+        return sum;
+    }
+
+    private static class Neighbor {
+        final int index;
+        final double distance;
+
+        Neighbor(int index, double distance) {
+            this.index = index;
+            this.distance = distance;
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package simulation.generator.util;
+
+import java.util.Random;
+
+/**
+ * Space filling designs over the unit hypercube, used to choose the parameters of randomly generated workflows.
+ * In a latin hypercube design with n points, each dimension is divided into n equally sized strata and each stratum
+ * contains exactly one point. Compared to independent sampling, n points cover the range of each parameter evenly.
+ */
+public class LatinHypercube {
+
+    /**
+     * @param numPoints the number of points in the design
+     * @param dimensions the number of parameters per point
+     * @param random the source of randomness for permuting the strata and placing the points within them
+     * @return a numPoints x dimensions array of values in [0, 1), each column hitting each of the numPoints strata exactly once.
+     */
+    public static double[][] sample(int numPoints, int dimensions, Random random) {
+        double[][] design = new double[numPoints][dimensions];
+        int[] strata = new int[numPoints];
+        for (int d = 0; d < dimensions; d++) {
+            // random permutation of the strata (Fisher-Yates)
+            for (int i = 0; i < numPoints; i++) strata[i] = i;
+            for (int i = numPoints - 1; i > 0; i--) {
+                int j = random.nextInt(i + 1);
+                int temp = strata[i];
+                strata[i] = strata[j];
+                strata[j] = temp;
+            }
+            // uniform position within the stratum
+            for (int i = 0; i < numPoints; i++) {
+                design[i][d] = (strata[i] + random.nextDouble()) / numPoints;
+            }
+        }
+        return design;
+    }
+
+    /**
+     * The baseline to {@link #sample(int, int, Random)}: all coordinates are drawn independently.
+     * @return a numPoints x dimensions array of values uniformly distributed in [0, 1)
+     */
+    public static double[][] independent(int numPoints, int dimensions, Random random) {
+        double[][] design = new double[numPoints][dimensions];
+        for (int i = 0; i < numPoints; i++) {
+            for (int d = 0; d < dimensions; d++) {
+                design[i][d] = random.nextDouble();
+            }
+        }
+        return design;
+    }
+
+}
@@ -35,8 +35,9 @@
 package simulation.generator.util;
 
 import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Random;
-import java.util.stream.DoubleStream;
 
 /**
  * A class for sampling random numbers that potentially depend on an input size.
@@ -54,13 +55,17 @@ public class LinearModel extends MemoryModel {
     /** The axis intercept of the linear function. */
     private final double intercept;
     /** The random number generator used to generate the unexplained variation of the peak memory consumption (as opposed to the explained variation by the input file size). */
-    private static Random error = new Random(129831239L);
+    private final Random error;
     /** The standard deviation of the error that is added to the linear model.*/
     private double errorStandardDeviation;
     /** The smallest number ever returned by this model, for instance to assure drawing positive random numbers. */
     private double minValue = Double.MIN_VALUE;
-
-    private static Random random = new Random();
+    /** The distribution of the input sizes drawn by {@link #nextSample()}, set by {@link #randomMemoryModel(int, double, double, double, double, double, double[], long)}. */
+    private double meanInputSize = Double.NaN;
+    private double inputSizeStandardDeviation;
+    private double minInputSize;
+    /** The largest peak memory consumption drawn by {@link #nextSample()} */
+    private double maxSampledValue;
 
     /**
      * peak mem will be sampled from slope * input size + intercept + random value in range [-err, +err]
@@ -70,10 +75,24 @@ public class LinearModel extends MemoryModel {
      * @param minValue when randomly generating a smaller value than minValue, minValue is returned instead
      */
     public LinearModel(double slope, double intercept, double errorStandardDeviation, double minValue) {
+        this(slope, intercept, errorStandardDeviation, minValue, nextSeed());
+    }
+
+    /**
+     * @param seed the seed of the random number generator for the error term of this model
+     * @see #LinearModel(double, double, double, double)
+     */
+    public LinearModel(double slope, double intercept, double errorStandardDeviation, double minValue, long seed) {
         this.slope = slope;
         this.intercept = intercept;
         this.errorStandardDeviation = errorStandardDeviation;
         this.minValue = minValue;
+        this.error = new Random(seed);
+    }
+
+    /** Models that are created without a seed draw it from the current thread's generator, see {@link Misc#setSeed(long)}. */
+    private static long nextSeed() {
+        return Misc.getRandom().nextLong();
     }
 
     /**
@@ -86,24 +105,111 @@ public class LinearModel extends MemoryModel {
         return (long) Math.max(minValue, inputFileSize*slope + intercept + error.nextGaussian()*errorStandardDeviation);
     }
 
+    @Override
+    public void generate(long[] inputSizes, long[] out){
+        Random error = this.error;
+        for (int i = 0; i < inputSizes.length; i++) {
+            out[i] = (long) Math.max(minValue, inputSizes[i]*slope + intercept + error.nextGaussian()*errorStandardDeviation);
+        }
+    }
+
+
+    /**
+     * Draws an input size and a peak memory consumption for that input size, like the {@link #getSamples() samples} of the model.
+     * Applications in {@link simulation.generator.app.AbstractApplication#setStatisticsOnly(boolean) statistics only} mode
+     * use this to annotate the tasks as they are added, instead of drawing a sample for each task after generating the workflow.
+     * @return the total input size and the peak memory consumption, in bytes
+     * @throws IllegalStateException if the model has no input size distribution, see {@link #samplesInputSizes()}
+     */
+    public double[] nextSample() {
+        if ( ! samplesInputSizes()) throw new IllegalStateException("The model has no input size distribution, use generate(inputFileSize).");
+        // generate input size and clip it
+        double x = Math.max(minInputSize, Math.abs(inputSizeStandardDeviation * error.nextGaussian() + meanInputSize));
+        // generate memory consumption: y = slope * input + intercept + error
+        // if slope = 0, we have independence
+        double y = slope * x + intercept + errorStandardDeviation * error.nextGaussian();
+        return new double[]{x, Math.min(maxSampledValue, Math.max(y, 10e6))};
+    }
+
+    /** @return whether the model draws input sizes along with the peak memory consumptions, see {@link #nextSample()} */
+    public boolean samplesInputSizes() {
+        return ! Double.isNaN(meanInputSize);
+    }
+
+    // the parameters of the random memory models used in Witt et al. 2018
+    public static final double MIN_FILE_SIZE = 10e3;
+    public static final double MAX_MEM_CONSUMPTION = 1.5e12;
+    public static final double LINEAR_TASK_CHANCE = 0.5;
+    public static final double MIN_SLOPE = 0.2;
+    public static final double MAX_SLOPE = 2;
+
+    /**
+     * Random memory models with the parameters of Witt et al. 2018 that draw their samples on demand, see {@link #nextSample()}.
+     * @param seed determines the parameters and the error terms of the models
+     * @return a model for each of the task types
+     */
+    public static Map<String, LinearModel> randomMemoryModels(String[] tasktypes, long seed) {
+        Random random = new Random(seed);
+        double[] parameters = new double[tasktypes.length * NUM_PARAMETERS];
+        for (int i = 0; i < parameters.length; i++) parameters[i] = random.nextDouble();
+        return randomMemoryModels(tasktypes, parameters, seed);
+    }
+
+    /**
+     * @param parameters {@link #NUM_PARAMETERS} coordinates for each task type, see {@link #randomMemoryModel(int, double, double, double, double, double, double[])}
+     * @see #randomMemoryModels(String[], long)
+     */
+    public static Map<String, LinearModel> randomMemoryModels(String[] tasktypes, double[] parameters, long seed) {
+        Map<String, LinearModel> models = new HashMap<>();
+        for (int t = 0; t < tasktypes.length; t++) {
+            double[] modelParameters = Arrays.copyOfRange(parameters, t * NUM_PARAMETERS, (t + 1) * NUM_PARAMETERS);
+            models.put(tasktypes[t], randomMemoryModel(0, MIN_FILE_SIZE, MAX_MEM_CONSUMPTION, LINEAR_TASK_CHANCE, MIN_SLOPE, MAX_SLOPE, modelParameters, Misc.deriveSeed(seed, t)));
+        }
+        return models;
+    }
+
+    /** The number of unit interval coordinates consumed by {@link #randomMemoryModel(int, double, double, double, double, double, double[])}. */
+    public static final int NUM_PARAMETERS = 5;
 
     /** This was used to generate the random memory models for each task type in Witt et al. 2018.
      * Initializes the {@link #samples} array. */
     public static LinearModel randomMemoryModel(int numSamples, double minFileSize, double maxMemConsumption, double linearTaskChance, double minSlope, double maxSlope){
+        double[] parameters = new double[NUM_PARAMETERS];
+        for (int i = 0; i < parameters.length; i++) parameters[i] = Math.random();
+        return randomMemoryModel(numSamples, minFileSize, maxMemConsumption, linearTaskChance, minSlope, maxSlope, parameters);
+    }
+
+    /**
+     * Same as {@link #randomMemoryModel(int, double, double, double, double, double)} but the model parameters are
+     * derived from the given coordinates instead of being drawn at random. This allows to choose the parameters of
+     * several models from a space filling design, see {@link LatinHypercube}.
+     * @param parameters {@link #NUM_PARAMETERS} values in [0, 1) that determine (in this order) the mean memory consumption,
+     *                   its relative standard deviation, whether the model is linear, the slope and the linearity.
+     */
+    public static LinearModel randomMemoryModel(int numSamples, double minFileSize, double maxMemConsumption, double linearTaskChance, double minSlope, double maxSlope, double[] parameters){
+        return randomMemoryModel(numSamples, minFileSize, maxMemConsumption, linearTaskChance, minSlope, maxSlope, parameters, nextSeed());
+    }
+
+    /**
+     * @param seed determines the samples and the error term of the returned model
+     * @see #randomMemoryModel(int, double, double, double, double, double, double[])
+     */
+    public static LinearModel randomMemoryModel(int numSamples, double minFileSize, double maxMemConsumption, double linearTaskChance, double minSlope, double maxSlope, double[] parameters, long seed){
 
         // average memory usage between 1GB and 1TB
-        double meanY = uniform(1e9, 500e9);
+        double meanY = uniform(1e9, 500e9, parameters[0]);
 //        System.out.println("meanY = " + meanY);
         // standard deviation between 3% and 10% of the mean (seems small, but produces realistic feeling models; otherwise we get very large memory ranges)
-        double varY = Math.pow(meanY * uniform(0.1, 0.5), 2.0);
+        double varY = Math.pow(meanY * uniform(0.1, 0.5, parameters[1]), 2.0);
 
         // zero slope in half of the cases, minSlope and maxSlope otherwise
-        double slope = Math.random() > linearTaskChance ? 0. : uniform(minSlope, maxSlope);
+        double slope = parameters[2] > linearTaskChance ? 0. : uniform(minSlope, maxSlope, parameters[3]);
         double intercept;
         double errorStandardDeviation;
 
-        // the input sizes
-        DoubleStream sampleX;
+        // the input sizes are normally distributed
+        double meanX;
+        double standardDeviationX;
 
         if (slope < 1e-6) {
             // input range orientation between 100MB and 1GB (actual input sizes vary beyond these limits), but
@@ -116,44 +222,43 @@ public class LinearModel extends MemoryModel {
             // all of the variance is caused by errors (i.e., is unexplained, since input size is the only explanatory factor we consider)
             errorStandardDeviation = Math.sqrt(varY);
 
-            sampleX = gaussian((minInput+maxInput)/2.0, (maxInput-minInput)/3.0);
+            meanX = (minInput+maxInput)/2.0;
+            standardDeviationX = (maxInput-minInput)/3.0;
 
         } else {
             intercept = 0;
 
             // the linearity determines the amount of output variable variance explained by the input (is related but not the same as correlation)
-            double linearity = uniform(0.25, 0.75);
+            double linearity = uniform(0.25, 0.75, parameters[4]);
 
-            double meanX = (meanY-intercept) / slope ; // since E[mX+n] = m*E[X] + n
+            meanX = (meanY-intercept) / slope ; // since E[mX+n] = m*E[X] + n
 
             // the variance of the input distribution depends on the variance of the output (more specifically, the variance explained by input)
             double varX = linearity * varY / Math.pow(slope, 2.0); // since Var[mX] = m^2 Var[X]
 
             errorStandardDeviation = Math.sqrt((1.-linearity) * varY);
 
-            sampleX = gaussian(meanX, Math.sqrt(varX));
+            standardDeviationX = Math.sqrt(varX);
 
         }
 
         // construct linear model
         // set parameters
-        LinearModel linearModel = new LinearModel(slope, intercept, errorStandardDeviation, 30e6);
-
-        // generate input sizes
-        // clip input sizes
-        linearModel.samples[0] = sampleX.limit(numSamples).map( d -> Math.max(minFileSize, Math.abs(d)) ).toArray();
-
-        // generate memory consumption
-        // if slope = 0, we have independence
-
-        // generate noise
-        // y = error + ...
-        linearModel.samples[1] = gaussian(0, errorStandardDeviation).limit(numSamples).toArray();
+        LinearModel linearModel = new LinearModel(slope, intercept, errorStandardDeviation, 30e6, seed);
+        linearModel.meanInputSize = meanX;
+        linearModel.inputSizeStandardDeviation = standardDeviationX;
+        linearModel.minInputSize = minFileSize;
+        linearModel.maxSampledValue = maxMemConsumption;
+
+        double[] inputSizes = new double[numSamples];
+        double[] memory = new double[numSamples];
         for (int i = 0; i < numSamples; i++) {
-            // ... slope * input + intercept
-            linearModel.samples[1][i] += slope * linearModel.samples[0][i] + intercept;
-            linearModel.samples[1][i] = Math.min(maxMemConsumption, Math.max(linearModel.samples[1][i], 10e6));
+            double[] sample = linearModel.nextSample();
+            inputSizes[i] = sample[0];
+            memory[i] = sample[1];
         }
+        linearModel.samples[0] = inputSizes;
+        linearModel.samples[1] = memory;
         return linearModel;
     }
 
@@ -161,12 +266,9 @@ public class LinearModel extends MemoryModel {
         return new LinearModel(0, value, errorStandardDeviation, minValue);
     }
 
-    private static double uniform(double lower, double upper){
-        return Math.random()*(upper-lower)+lower;
-    }
-
-    private static DoubleStream gaussian(double mu, double sigma){
-        return DoubleStream.generate(random::nextGaussian).map( normal -> sigma * normal + mu);
+    /** @return the value at the relative position u ∈ [0, 1) of the interval [lower, upper) */
+    private static double uniform(double lower, double upper, double u){
+        return u*(upper-lower)+lower;
     }
 
 
@@ -0,0 +1,186 @@
+package simulation.generator.util;
+
+import java.util.Arrays;
+
+/**
+ * Counts non-negative values in buckets whose boundaries grow geometrically, such that every quantile is estimated with
+ * a bounded relative error (as in DDSketch, Masson et al. 2019). Bucket i holds the values in (γ^(i-1), γ^i].
+ * Values can be added, removed and histograms with the same accuracy can be merged, e.g., to summarize a corpus from
+ * the histograms of its workflows. The memory needed grows with the logarithm of the range of the values, not with their number.
+ */
+public class LogHistogram {
+
+    /** The relative error of quantile estimates used by {@link #LogHistogram()}. */
+    public static final double DEFAULT_RELATIVE_ACCURACY = 0.01;
+
+    private final double relativeAccuracy;
+    private final double gamma;
+    private final double logGamma;
+
+    /** Counts of the values ≤ 0. */
+    private long zeroCount;
+    /** counts[j] is the count of bucket offset + j. */
+    private long[] counts = new long[0];
+    private int offset;
+    private long n;
+
+    public LogHistogram() {
+        this(DEFAULT_RELATIVE_ACCURACY);
+    }
+
+    /** @param relativeAccuracy the maximum relative error of quantile estimates, e.g., 0.01 for 1% */
+    public LogHistogram(double relativeAccuracy) {
+        if (relativeAccuracy <= 0 || relativeAccuracy >= 1) throw new IllegalArgumentException("Relative accuracy must be in (0,1), is " + relativeAccuracy);
+        this.relativeAccuracy = relativeAccuracy;
+        this.gamma = (1 + relativeAccuracy) / (1 - relativeAccuracy);
+        this.logGamma = Math.log(gamma);
+    }
+
+    /** @return a histogram with the same counts */
+    public LogHistogram copy() {
+        LogHistogram copy = new LogHistogram(relativeAccuracy);
+        copy.merge(this);
+        return copy;
+    }
+
+    public void addValue(double value) {
+        add(value, 1);
+    }
+
+    /** Removes a value that has been added before. */
+    public void removeValue(double value) {
+        add(value, -1);
+    }
+
+    private void add(double value, long count) {
+        n += count;
+        if (value <= 0) {
+            zeroCount += count;
+            return;
+        }
+        int bucket = (int) Math.ceil(Math.log(value) / logGamma);
+        ensureCapacity(bucket, bucket);
+        counts[bucket - offset] += count;
+    }
+
+    /**
+     * Adds the counts of the other histogram to this one.
+     * @return this
+     * @throws IllegalArgumentException if the histograms have different relative accuracies
+     */
+    public LogHistogram merge(LogHistogram other) {
+        if (other.relativeAccuracy != relativeAccuracy) {
+            throw new IllegalArgumentException(String.format("Can not merge histograms with relative accuracies %s and %s.", relativeAccuracy, other.relativeAccuracy));
+        }
+        n += other.n;
+        zeroCount += other.zeroCount;
+        if (other.counts.length == 0) return this;
+        ensureCapacity(other.offset, other.offset + other.counts.length - 1);
+        for (int j = 0; j < other.counts.length; j++) counts[other.offset + j - offset] += other.counts[j];
+        return this;
+    }
+
+    /** Grows the bucket array such that it covers the buckets from to to (inclusive). */
+    private void ensureCapacity(int from, int to) {
+        if (counts.length == 0) {
+            counts = new long[to - from + 1];
+            offset = from;
+            return;
+        }
+        int last = offset + counts.length - 1;
+        if (from >= offset && to <= last) return;
+        int newOffset = Math.min(from, offset);
+        int newLast = Math.max(to, last);
+        long[] grown = new long[newLast - newOffset + 1];
+        System.arraycopy(counts, 0, grown, offset - newOffset, counts.length);
+        counts = grown;
+        offset = newOffset;
+    }
+
+    public long getN() {
+        return n;
+    }
+
+    /**
+     * @param q the quantile, e.g., 0.95
+     * @return an estimate of the value with rank q·(n-1) that is within the relative accuracy of the true value, NaN for an empty histogram
+     */
+    public double getQuantile(double q) {
+        if (q < 0 || q > 1) throw new IllegalArgumentException("Quantile must be in [0,1], is " + q);
+        if (n == 0) return Double.NaN;
+        long rank = (long) (q * (n - 1));
+        if (rank < zeroCount) return 0;
+        long seen = zeroCount;
+        for (int j = 0; j < counts.length; j++) {
+            seen += counts[j];
+            // the estimate in the middle of the bucket (relative to its boundaries) has at most the relative error
+            if (seen > rank) return 2 * Math.pow(gamma, offset + j) / (gamma + 1);
+        }
+        return 2 * Math.pow(gamma, offset + counts.length - 1) / (gamma + 1);
+    }
+
+    /**
+     * @return the histogram as a single line without commas, e.g., for a column of a csv file, see {@link #parse(String)}.
+     * Only the non-empty buckets are listed, as bucket:count pairs: relativeAccuracy;zeroCount;bucket:count bucket:count ...
+     */
+    public String serialize() {
+        StringBuilder result = new StringBuilder().append(relativeAccuracy).append(';').append(zeroCount).append(';');
+        boolean first = true;
+        for (int j = 0; j < counts.length; j++) {
+            if (counts[j] == 0) continue;
+            if ( ! first) result.append(' ');
+            result.append(offset + j).append(':').append(counts[j]);
+            first = false;
+        }
+        return result.toString();
+    }
+
+    /**
+     * @param serialized the output of {@link #serialize()}
+     * @throws IllegalArgumentException if the string is not a serialized histogram
+     */
+    public static LogHistogram parse(String serialized) {
+        String[] fields = serialized.split(";", -1);
+        if (fields.length != 3) throw new IllegalArgumentException("Not a serialized histogram: " + serialized);
+        LogHistogram histogram = new LogHistogram(Double.parseDouble(fields[0]));
+        histogram.zeroCount = Long.parseLong(fields[1]);
+        histogram.n = histogram.zeroCount;
+        if (fields[2].isEmpty()) return histogram;
+        for (String bucket : fields[2].split(" ")) {
+            int colon = bucket.indexOf(':');
+            int index = Integer.parseInt(bucket.substring(0, colon));
+            long count = Long.parseLong(bucket.substring(colon + 1));
+            histogram.ensureCapacity(index, index);
+            histogram.counts[index - histogram.offset] += count;
+            histogram.n += count;
+        }
+        return histogram;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("n=%d, p50=%s, p95=%s, p99=%s, %d buckets", n, getQuantile(0.5), getQuantile(0.95), getQuantile(0.99), counts.length);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        LogHistogram that = (LogHistogram) o;
+        if (relativeAccuracy != that.relativeAccuracy || n != that.n || zeroCount != that.zeroCount) return false;
+        // compare the counts, regardless of empty buckets at either end
+        int from = Math.min(offset, that.offset), to = Math.max(offset + counts.length, that.offset + that.counts.length);
+        for (int bucket = from; bucket < to; bucket++) if (count(bucket) != that.count(bucket)) return false;
+        return true;
+    }
+
+    private long count(int bucket) {
+        int j = bucket - offset;
+        return j >= 0 && j < counts.length ? counts[j] : 0;
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(new double[]{relativeAccuracy, n, zeroCount});
+    }
+}
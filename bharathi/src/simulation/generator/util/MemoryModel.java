@@ -44,6 +44,17 @@ public abstract class MemoryModel {
 
     public abstract long generate(long inputFileSize);
 
+    /**
+     * Batch version of {@link #generate(long)}.
+     * @param inputSizes the total input sizes of the tasks
+     * @param out receives the peak memory consumption for each input size, must be at least as long as inputSizes
+     */
+    public void generate(long[] inputSizes, long[] out){
+        for (int i = 0; i < inputSizes.length; i++) {
+            out[i] = generate(inputSizes[i]);
+        }
+    }
+
     /**
      * @return an array of random input sizes and possibly correlated memory consumption.
      */
@@ -9,11 +9,54 @@ import java.util.Random;
  */
 public class Misc {
 
-    private static final Random random;
+    /** The initial seed of each thread's generator. */
+    public static final long DEFAULT_SEED = 129039123023L;
+    /** Each thread draws from its own generator, such that workflows generated concurrently are reproducible. See {@link #setSeed(long)} */
+    private static final ThreadLocal<Random> random = ThreadLocal.withInitial(() -> new Random(DEFAULT_SEED));
     private static final int MAX_TRIES = 100000;
-    
-    static {
-        random = new Random(129039123023L);
+
+    /** @return the random number generator of the current thread */
+    public static Random getRandom() {
+        return random.get();
+    }
+
+    /** Resets the random number generator of the current thread, e.g., before generating a workflow with a given seed. */
+    public static void setSeed(long seed) {
+        random.get().setSeed(seed);
+    }
+
+    /**
+     * Runs the given action with the current thread drawing from a new generator with the given seed and restores the
+     * thread's generator afterwards. This keeps one-off draws (e.g., when initializing shared state) out of the thread's sequence.
+     */
+    public static void withSeed(long seed, Runnable action) {
+        Random previous = random.get();
+        random.set(new Random(seed));
+        try {
+            action.run();
+        } finally {
+            random.set(previous);
+        }
+    }
+
+    /**
+     * Derives a seed from a base seed and a number of keys, e.g., (application, size, instance).
+     * Different keys give statistically independent seeds; the same keys always give the same seed.
+     */
+    public static long deriveSeed(long seed, long... keys) {
+        long result = mix(seed);
+        for (long key : keys) {
+            result = mix(result ^ key);
+        }
+        return result;
+    }
+
+    /** The finalizer of the SplitMix64 generator. */
+    private static long mix(long z) {
+        z += 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
     }
 
     /**
@@ -56,7 +99,7 @@ public class Misc {
         if (divisor > max) {
             throw new IllegalArgumentException("Divisor cannot be greater than limit.");
         }
-        int temp = random.nextInt(max);
+        int temp = getRandom().nextInt(max);
         if (temp % divisor != 0) {
             int difference = divisor - (temp % divisor);
             /*
@@ -84,7 +127,7 @@ public class Misc {
         int[] temp = new int[n];
 
         for (int i = 0; i < (n - 1); i++) {
-            temp[i] = random.nextInt(sum);
+            temp[i] = getRandom().nextInt(sum);
         }
 
         temp[n - 1] = sum;
@@ -114,7 +157,7 @@ public class Misc {
         long[] temp = new long[n];
 
         for (int i = 0; i < (n - 1); i++) {
-            temp[i] = random.nextLong() % sum;
+            temp[i] = getRandom().nextLong() % sum;
         }
 
         temp[n - 1] = sum;
@@ -203,7 +246,7 @@ public class Misc {
     public static int nonZeroRandom(int max) {
         assert (max > 0);
 
-        return 1 + random.nextInt(max - 1);
+        return 1 + getRandom().nextInt(max - 1);
     }
 
     /**
@@ -238,7 +281,7 @@ public class Misc {
                  * Get perturbation factor uniformly chosen between
                  * [-0.5 * tolerance, 0.5 * tolerance].
                  */
-                double factor = (2.0 * random.nextDouble() - 1.0) * 0.5 * tolerance;
+                double factor = (2.0 * getRandom().nextDouble() - 1.0) * 0.5 * tolerance;
 
                 temp[i] += (factor * (sum / n));
             }
@@ -305,7 +348,7 @@ public class Misc {
                  * Get perturbation factor uniformly chosen between
                  * [-0.5 * tolerance, 0.5 * tolerance].
                  */
-                double factor = (2.0 * random.nextDouble() - 1.0) * 0.5 * tolerance;
+                double factor = (2.0 * getRandom().nextDouble() - 1.0) * 0.5 * tolerance;
 
                 temp[i] += (factor * sum / n);
             }
@@ -358,7 +401,7 @@ public class Misc {
          */
 //      for (int i = 0; i < 100; i++) {
         for (int i = 0; i < 10000; i++) {
-            temp = random.nextGaussian();
+            temp = getRandom().nextGaussian();
             temp = temp * stddev + mean;
 //          if (Math.abs(mean - temp) <= tolerance * mean) {
             // why limit the value from above? avoiding negative values seems sufficient
@@ -377,13 +420,19 @@ public class Misc {
         if (start == end) {
             return start;
         } else {
-            return start + random.nextInt(end - start);
+            return start + getRandom().nextInt(end - start);
         }
     }
     
     public static int randomInt(int mean, double tolerance) {
-        return randomInt((int) (Math.ceil(mean * (1.0 - tolerance))),
-                (int) (Math.floor(mean * (1.0 + tolerance))));
+        return randomInt(getRandom(), mean, tolerance);
+    }
+
+    /** Same as {@link #randomInt(int, double)} but draws from the given random number generator. */
+    public static int randomInt(Random random, int mean, double tolerance) {
+        int start = (int) (Math.ceil(mean * (1.0 - tolerance)));
+        int end = (int) (Math.floor(mean * (1.0 + tolerance)));
+        return start == end ? start : start + random.nextInt(end - start);
     }
     
     /**
@@ -393,7 +442,7 @@ public class Misc {
         if (start == end) {
             return start;
         } else {
-            return start + random.nextLong() % (end - start);
+            return start + getRandom().nextLong() % (end - start);
         }
     }
     
@@ -403,14 +452,14 @@ public class Misc {
     }
     
     public static boolean randomToss(double bias) {
-        return random.nextDouble() <= bias;
+        return getRandom().nextDouble() <= bias;
     }
     
     public static double randomDouble(double min, double max) {
         if (min == max) {
             return min;
         } else {
-            return min + random.nextDouble() * (max - min);
+            return min + getRandom().nextDouble() * (max - min);
         }
     }
     
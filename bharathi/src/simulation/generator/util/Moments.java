@@ -0,0 +1,104 @@
+package simulation.generator.util;
+
+/**
+ * Streaming summary statistics (count, mean, variance, min, max) of a sequence of values.
+ * Values are accumulated with Welford's update, two accumulators can be combined with {@link #merge(Moments)},
+ * which allows to summarize parts of the data independently (e.g., one file per thread) and combine the results.
+ */
+public class Moments {
+
+    private long n;
+    private double mean;
+    /** Sum of squared differences from the mean. */
+    private double m2;
+    private double min = Double.POSITIVE_INFINITY;
+    private double max = Double.NEGATIVE_INFINITY;
+
+    public Moments() {
+    }
+
+    /**
+     * Summarizes values that have been accumulated elsewhere.
+     * @param m2 the sum of squared differences from the mean
+     */
+    public Moments(long n, double mean, double m2, double min, double max) {
+        this.n = n;
+        this.mean = mean;
+        this.m2 = m2;
+        this.min = min;
+        this.max = max;
+    }
+
+    public void addValue(double value) {
+        n++;
+        double delta = value - mean;
+        mean += delta / n;
+        m2 += delta * (value - mean);
+        min = Math.min(min, value);
+        max = Math.max(max, value);
+    }
+
+    /**
+     * Adds the values summarized by other to this accumulator (Chan et al.'s parallel update).
+     * @return this
+     */
+    public Moments merge(Moments other) {
+        if (other.n == 0) return this;
+        if (n == 0) {
+            n = other.n;
+            mean = other.mean;
+            m2 = other.m2;
+            min = other.min;
+            max = other.max;
+            return this;
+        }
+        long total = n + other.n;
+        double delta = other.mean - mean;
+        mean += delta * other.n / total;
+        m2 += other.m2 + delta * delta * ((double) n * other.n / total);
+        n = total;
+        min = Math.min(min, other.min);
+        max = Math.max(max, other.max);
+        return this;
+    }
+
+    public long getN() {
+        return n;
+    }
+
+    public double getMean() {
+        return n > 0 ? mean : Double.NaN;
+    }
+
+    public double getSum() {
+        return mean * n;
+    }
+
+    /** @return the sample variance (bias corrected), zero for a single value and NaN for no values. */
+    public double getVariance() {
+        if (n == 0) return Double.NaN;
+        return n > 1 ? m2 / (n - 1) : 0.;
+    }
+
+    public double getStandardDeviation() {
+        return Math.sqrt(getVariance());
+    }
+
+    /** @return the sum of squared differences from the mean, see {@link #Moments(long, double, double, double, double)} */
+    public double getSumOfSquaredDeviations() {
+        return m2;
+    }
+
+    public double getMin() {
+        return n > 0 ? min : Double.NaN;
+    }
+
+    public double getMax() {
+        return n > 0 ? max : Double.NaN;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("n=%d, µ=%s, σ=%s, [%s, %s]", n, getMean(), getStandardDeviation(), getMin(), getMax());
+    }
+}
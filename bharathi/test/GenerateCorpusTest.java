@@ -0,0 +1,87 @@
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import simulation.generator.app.AbstractApplication;
+import simulation.generator.app.Cybershake;
+import simulation.generator.app.Sipht;
+import simulation.generator.util.Misc;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+class GenerateCorpusTest {
+
+    /** The heap estimate covers the heap a workflow retains, for applications with few and with many file references per task. */
+    @Test
+    void heapEstimate() throws Exception {
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        for (Class<? extends AbstractApplication> appClass : Arrays.<Class<? extends AbstractApplication>>asList(Cybershake.class, Sipht.class)) {
+            long estimate = GenerateCorpus.estimateHeapBytes(appClass, 4000);
+            System.gc();
+            long before = memory.getHeapMemoryUsage().getUsed();
+            AbstractApplication app = appClass.getDeclaredConstructor().newInstance();
+            Misc.withSeed(1L, () -> app.generateWorkflow("-n", "4000"));
+            System.gc();
+            long retained = memory.getHeapMemoryUsage().getUsed() - before;
+            Assertions.assertTrue(app.getDAX().getJobCount() > 0);
+            Assertions.assertTrue(retained < estimate, appClass.getSimpleName() + " retains " + retained + " bytes, estimated " + estimate);
+            Assertions.assertTrue(estimate < 3 * GenerateCorpus.PEAK_FACTOR * retained, appClass.getSimpleName() + " retains " + retained + " bytes, estimated " + estimate);
+        }
+    }
+
+    /** The corpus does not depend on the parallelism, the distribution over shards or on resuming an interrupted run. */
+    @Test
+    void reproducible(@TempDir Path dir) throws Exception {
+        String sequential = dir.resolve("sequential").toString();
+        String parallel = dir.resolve("parallel").toString();
+        String sharded = dir.resolve("sharded").toString();
+        GenerateCorpus.main(new String[]{"-i", "2", "-p", "1", sequential});
+        GenerateCorpus.main(new String[]{"-i", "2", "-p", "4", parallel});
+        GenerateCorpus.main(new String[]{"-i", "2", "-p", "2", "-S", "0/2", sharded});
+        GenerateCorpus.main(new String[]{"-i", "2", "-p", "2", "-S", "1/2", sharded});
+        GenerateCorpus.main(new String[]{"-m", "2", sharded});
+        assertSameCorpus(dir.resolve("sequential"), dir.resolve("parallel"));
+        assertSameCorpus(dir.resolve("sequential"), dir.resolve("sharded"));
+
+        // an interrupted run lacks some workflows, resuming it generates only those
+        Path removed = dir.resolve("parallel").resolve("Montage.n.1000.1.dax");
+        Files.delete(removed);
+        GenerateCorpus.main(new String[]{"-i", "2", "-p", "4", parallel});
+        Assertions.assertTrue(Files.exists(removed));
+        assertSameCorpus(dir.resolve("sequential"), dir.resolve("parallel"));
+    }
+
+    /** Compares the workflows and statistics of two corpora, ignoring the generation timestamps and the manifests. */
+    private static void assertSameCorpus(Path expected, Path actual) throws IOException {
+        List<String> files = corpusFiles(expected);
+        Assertions.assertEquals(10, files.stream().filter(file -> file.endsWith(".dax")).count());
+        Assertions.assertTrue(files.contains("workflowStatistics.csv"));
+        Assertions.assertEquals(files, corpusFiles(actual));
+        for (String file : files) {
+            Assertions.assertEquals(contents(expected.resolve(file)), contents(actual.resolve(file)), file);
+        }
+    }
+
+    /** @return the names of the workflow and statistics files in the given directory, excluding those of single shards */
+    private static List<String> corpusFiles(Path dir) throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.map(file -> file.getFileName().toString())
+                    .filter(name -> ! name.startsWith("manifest") && ! name.contains(".shard-"))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+
+    private static List<String> contents(Path file) throws IOException {
+        try (Stream<String> lines = Files.lines(file)) {
+            return lines.filter(line -> ! line.contains("generated")).collect(Collectors.toList());
+        }
+    }
+}
@@ -1,12 +1,12 @@
 package simulation.generator;
 
-import org.apache.commons.math.stat.descriptive.DescriptiveStatistics;
 import org.griphyn.cPlanner.code.generator.Abstract;
 import org.griphyn.vdl.dax.Job;
 import org.griphyn.vdl.dax.PseudoText;
 import org.junit.jupiter.api.Test;
 import simulation.generator.app.*;
 import simulation.generator.util.LinearModel;
+import simulation.generator.util.DistributionSketch;
 
 import java.io.File;
 import java.io.FileOutputStream;
@@ -104,6 +104,8 @@ class AppGeneratorTest {
         // create a new workflow for each configuration (workflow type, num tasks, instance id)
         // write the dax output file
         // assemble workflow statistics
+        // write summary file that describes all generated workflows (e.g., their number of tasks, memory models, etc.)
+        StatisticsWriter statisticsWriter = new StatisticsWriter(targetDir.resolve("workflowStatistics.csv"));
         for (Integer workflowSize : workflowSizes) {
             for (int instanceID = 0; instanceID < numInstances; instanceID++) {
 
@@ -168,10 +170,10 @@ class AppGeneratorTest {
                 fop.close();
 
                 // add statistics for output in a file that describes the workflows
-                WorkflowStatistics.addStatistics(filename, statistics);
+                statisticsWriter.add(filename, statistics);
 
                 for(String tasktype : app.getTasktypes()){
-                    DescriptiveStatistics memory = statistics.memoryUsagesPerTaskType.get(tasktype);
+                    DistributionSketch memory = statistics.memoryUsagesPerTaskType.get(tasktype);
                     System.out.printf("%s,%s,%s,%s,%s,%.2f,%.2f %n", app.getClass().getSimpleName(), workflowSize, instanceID, tasktype, statistics.numberOfTasksPerTaskType.get(tasktype), memory.getMean()/1e9, memory.getStandardDeviation()/1e9);
 //            System.out.println("numberOfTasksPerTaskType = " + statistics.numberOfTasksPerTaskType.get(tasktype));
 //                        System.out.println("inputSizes = " + descriptiveStats(statistics.inputSizesPerTaskType.get(tasktype)));
@@ -181,12 +183,11 @@ class AppGeneratorTest {
             }
         }
 
-        // write summary file that describes all generated workflows (e.g., their number of tasks, memory models, etc.)
-        WorkflowStatistics.writeStatisticsCSV(targetDir.resolve("workflowStatistics.csv").toString());
+        statisticsWriter.close();
     }
 
 
-    private static String descriptiveStats(DescriptiveStatistics s){
+    private static String descriptiveStats(DistributionSketch s){
         return String.format("[%s, %s] µ=%s, σ=%s in MEGA", s.getMin()/1e6, s.getMax()/1e6, s.getMean()/1e6, s.getStandardDeviation()/1e6);
     }
 
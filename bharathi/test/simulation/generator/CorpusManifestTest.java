@@ -0,0 +1,55 @@
+package simulation.generator;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+class CorpusManifestTest {
+
+    @Test
+    void resume(@TempDir Path dir) throws Exception {
+        Path file = dir.resolve("manifest.csv");
+        try (CorpusManifest manifest = new CorpusManifest(file, "instances=2")) {
+            manifest.add("a.dax", 1L, 0xcafeL, "a.dax,10,1.5");
+        }
+        // a killed run leaves an incomplete line
+        Files.write(file, "b.dax,2,be".getBytes(), StandardOpenOption.APPEND);
+
+        try (CorpusManifest manifest = new CorpusManifest(file, "instances=2")) {
+            CorpusManifest.Entry a = manifest.get(1L);
+            Assertions.assertEquals("a.dax", a.file);
+            Assertions.assertEquals(0xcafeL, a.checksum);
+            Assertions.assertEquals("a.dax,10,1.5", a.statisticsRow);
+            Assertions.assertNull(manifest.get(2L));
+            manifest.add("b.dax", 2L, 0xbeefL, "b.dax,20,2.5");
+        }
+
+        try (CorpusManifest manifest = new CorpusManifest(file, "instances=2")) {
+            Assertions.assertEquals("b.dax,20,2.5", manifest.get(2L).statisticsRow);
+        }
+        Assertions.assertThrows(IllegalStateException.class, () -> new CorpusManifest(file, "instances=3"));
+    }
+
+    /** A finished shard is read without being opened for appending, e.g., to check its number of workflows. */
+    @Test
+    void read(@TempDir Path dir) throws Exception {
+        Path file = dir.resolve("manifest.shard-0-of-2.csv");
+        try (CorpusManifest manifest = new CorpusManifest(file, "instances=2,workflows=2")) {
+            manifest.add("a.dax", 1L, 0xcafeL, "a.dax,10,1.5");
+            // a regenerated workflow is listed again
+            manifest.add("a.dax", 1L, 0xbeefL, "a.dax,10,1.5");
+        }
+        Files.write(file, "b.dax,2,be".getBytes(), StandardOpenOption.APPEND);
+        long size = Files.size(file);
+
+        Assertions.assertEquals("instances=2,workflows=2", CorpusManifest.readOptions(file));
+        Assertions.assertEquals(1, CorpusManifest.readEntries(file).size());
+        Assertions.assertEquals(0xbeefL, CorpusManifest.readEntries(file).get(1L).checksum);
+        Assertions.assertEquals(size, Files.size(file));
+    }
+
+}
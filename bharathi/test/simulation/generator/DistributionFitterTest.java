@@ -0,0 +1,90 @@
+package simulation.generator;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import simulation.generator.app.AbstractApplication;
+import simulation.generator.app.AppFactory;
+import simulation.generator.util.Misc;
+import simulation.generator.util.Moments;
+
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+
+class DistributionFitterTest {
+
+    /** Fits a DAX, loads the profile into the application and fits the workflow generated from it. */
+    @Test
+    void roundTrip(@TempDir Path dir) throws Exception {
+        Path original = Files.createDirectory(dir.resolve("original"));
+        generate(null, original.resolve("montage.dax"), 1L);
+        Map<String, Moments> fitted = DistributionFitter.fit(original, 1, null);
+
+        // file sizes are keyed by the names of the distributions they are drawn from
+        for (String name : new String[]{"2mass.fits", "p2mass.fits", "diff.fits", "fit.txt", "region.hdr", "mProjectPP"}) {
+            Assertions.assertTrue(fitted.containsKey(name), name);
+        }
+        Assertions.assertFalse(fitted.keySet().stream().anyMatch(name -> name.endsWith(".input") || name.endsWith(".output")));
+
+        // shift the size of the input images, such that the profile is distinguishable from the built-in distributions
+        Moments images = fitted.get("2mass.fits");
+        Moments shifted = new Moments();
+        for (int i = 0; i < 1000; i++) shifted.addValue(2 * images.getMean() + (i % 2 == 0 ? -1 : 1) * Math.sqrt(images.getVariance()));
+        fitted.put("2mass.fits", shifted);
+        Path profile = dir.resolve("profile.xml");
+        try (PrintWriter writer = new PrintWriter(Files.newBufferedWriter(profile))) {
+            DistributionFitter.writeProfile(fitted, writer);
+        }
+
+        Path refitted = Files.createDirectory(dir.resolve("refitted"));
+        generate(profile.toString(), refitted.resolve("montage.dax"), 2L);
+        Map<String, Moments> second = DistributionFitter.fit(refitted, 1, "MONTAGE");
+        for (String name : new String[]{"2mass.fits", "p2mass.fits", "diff.fits", "fit.txt"}) {
+            Moments expected = fitted.get(name), actual = second.get(name);
+            double standardError = Math.sqrt(expected.getVariance() / expected.getN() + expected.getVariance() / actual.getN());
+            Assertions.assertEquals(expected.getMean(), actual.getMean(), 5 * standardError + 1e-6 * expected.getMean(), name);
+        }
+        Assertions.assertEquals(fitted.get("region.hdr").getMean(), second.get("region.hdr").getMean());
+    }
+
+    /** The applications multiply the runtimes drawn from the profile by their runtime factor, Cybershake's PeakValCalcOkaya twice. */
+    @Test
+    void runtimeRoundTrip(@TempDir Path dir) throws Exception {
+        String[][] jobs = {{"MONTAGE", "mProjectPP", "mDiffFit", "mBackground"}, {"CYBERSHAKE", "SeismogramSynthesis", "PeakValCalcOkaya"}};
+        for (String[] app : jobs) {
+            Path original = Files.createDirectory(dir.resolve(app[0]));
+            generate(app[0], null, original.resolve("workflow.dax"), 1L);
+            Map<String, Moments> fitted = DistributionFitter.fit(original, 1, null);
+            Path profile = dir.resolve(app[0] + ".xml");
+            try (PrintWriter writer = new PrintWriter(Files.newBufferedWriter(profile))) {
+                DistributionFitter.writeProfile(fitted, writer);
+            }
+
+            Path refitted = Files.createDirectory(dir.resolve(app[0] + ".refitted"));
+            generate(app[0], profile.toString(), refitted.resolve("workflow.dax"), 2L);
+            Map<String, Moments> second = DistributionFitter.fit(refitted, 1, null);
+            for (int i = 1; i < app.length; i++) {
+                Moments expected = fitted.get(app[i]), actual = second.get(app[i]);
+                double standardError = Math.sqrt(expected.getVariance() / expected.getN() + actual.getVariance() / actual.getN());
+                // runtimes are rounded to two decimals before they are fitted
+                Assertions.assertEquals(expected.getMean(), actual.getMean(), 5 * standardError + 0.01, app[i]);
+            }
+        }
+    }
+
+    private static void generate(String profile, Path file, long seed) throws Exception {
+        generate("MONTAGE", profile, file, seed);
+    }
+
+    private static void generate(String application, String profile, Path file, long seed) throws Exception {
+        AbstractApplication app = (AbstractApplication) AppFactory.createApp(application);
+        app.setDistributionProfile(profile);
+        Misc.withSeed(seed, () -> app.generateWorkflow("-n", "1000"));
+        try (OutputStream out = Files.newOutputStream(file)) {
+            app.printWorkflow(out);
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package simulation.generator;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+
+class GeneratorServerTest {
+
+    /** Invalid requests get an error response and don't stop the server from answering the following requests. */
+    @Test
+    void invalidRequests() throws Exception {
+        String requests = "MONTAGE 1 dax -x 3\n" +
+                "MONTAGE 1 dax -h\n" +
+                "MONTAGE 1 dax\n" +
+                "MONTAGE 1 dax -n abc\n" +
+                "NOSUCHAPP 1 dax -n 50\n" +
+                "MONTAGE 1 xml -n 50\n" +
+                "MONTAGE 1\n" +
+                "MONTAGE 1 dax -n 50\n";
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        GeneratorServer server = new GeneratorServer(2);
+        server.serve(new ByteArrayInputStream(requests.getBytes(StandardCharsets.UTF_8)), out);
+        server.shutdown();
+
+        String[] responses = out.toString("UTF-8").split("\n");
+        for (int i = 0; i < 7; i++) Assertions.assertTrue(responses[i].startsWith("ERROR "), responses[i]);
+        Assertions.assertTrue(responses[7].startsWith("OK "), responses[7]);
+        Assertions.assertTrue(responses[responses.length - 1].startsWith("</adag>"));
+    }
+}
@@ -0,0 +1,77 @@
+package simulation.generator;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+class MemoryAwareSchedulerTest {
+
+    @Test
+    void largeTasksRunOneAtATime() throws Exception {
+        MemoryAwareScheduler scheduler = new MemoryAwareScheduler(4, 0.8);
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            futures.add(scheduler.submit(scheduler.getBudget() / 2 + 1, () -> {
+                maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                Thread.sleep(50);
+                return running.decrementAndGet();
+            }));
+        }
+        for (Future<?> future : futures) future.get();
+        scheduler.shutdown();
+        Assertions.assertEquals(1, maxRunning.get());
+    }
+
+    /** A task that fits into the reservations waits while the observed heap is full and starts when it drops. */
+    @Test
+    void admissionFollowsHeapInUse() throws Exception {
+        AtomicLong heapInUse = new AtomicLong(1000);
+        MemoryAwareScheduler scheduler = new MemoryAwareScheduler(2, 1, 1000, heapInUse::get);
+        CountDownLatch release = new CountDownLatch(1), started = new CountDownLatch(1);
+        // admitted although the heap is full, because no task is running
+        Future<?> first = scheduler.submit(10, () -> release.await(10, TimeUnit.SECONDS));
+        Thread submitter = new Thread(() -> {
+            try {
+                scheduler.submit(10, () -> {
+                    started.countDown();
+                    return null;
+                });
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        submitter.start();
+        Assertions.assertFalse(started.await(300, TimeUnit.MILLISECONDS));
+        heapInUse.set(500);
+        Assertions.assertTrue(started.await(5, TimeUnit.SECONDS));
+        Assertions.assertFalse(first.isDone());
+        release.countDown();
+        first.get();
+        submitter.join();
+        scheduler.shutdown();
+    }
+
+    /** Garbage does not count as heap in use once it has been collected. */
+    @Test
+    void heapInUseAfterCollection() {
+        int size = 64 << 20;
+        byte[] live = new byte[size];
+        System.gc();
+        long withArray = MemoryAwareScheduler.heapInUseAfterCollection();
+        Assertions.assertTrue(withArray >= size, Long.toString(withArray));
+        Assertions.assertEquals(size, live.length);
+        live = null;
+        System.gc();
+        long withoutArray = MemoryAwareScheduler.heapInUseAfterCollection();
+        Assertions.assertTrue(withoutArray < withArray - size / 2, withoutArray + " " + withArray);
+    }
+}
@@ -0,0 +1,39 @@
+package simulation.generator;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+
+class WorkflowCacheTest {
+
+    @Test
+    void key() {
+        String key = WorkflowCache.key("Montage", new String[]{"-n", "100"}, null, 1L);
+        Assertions.assertEquals(key, WorkflowCache.key("Montage", new String[]{"-n", "100"}, null, 1L));
+        Assertions.assertNotEquals(key, WorkflowCache.key("Montage", new String[]{"-n", "100"}, null, 2L));
+        Assertions.assertNotEquals(key, WorkflowCache.key("Montage", new String[]{"-n1", "00"}, null, 1L));
+        Assertions.assertNotEquals(key, WorkflowCache.key("Montage", new String[]{"-n", "100"}, new byte[0], 1L));
+    }
+
+    @Test
+    void evictLeastRecentlyUsed(@TempDir Path dir) throws Exception {
+        Path cacheDir = dir.resolve("cache");
+        WorkflowCache cache = new WorkflowCache(cacheDir, 20, false);
+        cache.put("a", new byte[8]);
+        cache.put("b", new byte[8]);
+        // make a more recently used than b
+        Files.setLastModifiedTime(cacheDir.resolve("b.dax"), FileTime.fromMillis(0));
+        Assertions.assertTrue(cache.get("a", dir.resolve("a.dax")));
+        Assertions.assertEquals(8, Files.size(dir.resolve("a.dax")));
+
+        cache.put("c", new byte[8]);
+        Assertions.assertFalse(cache.get("b", dir.resolve("b.dax")));
+        Assertions.assertTrue(cache.get("a", dir.resolve("a.dax")));
+        Assertions.assertTrue(cache.get("c", dir.resolve("c.dax")));
+    }
+
+}
@@ -0,0 +1,79 @@
+package simulation.generator.app;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import simulation.generator.util.Misc;
+
+import java.io.ByteArrayOutputStream;
+
+class AppFactoryTest {
+
+    @Test
+    void namesAreCaseInsensitive() throws Exception {
+        Assertions.assertTrue(AppFactory.createApp("ligo") instanceof Ligo);
+        Assertions.assertTrue(AppFactory.createApp("Sipht") instanceof Sipht);
+        Assertions.assertNotSame(AppFactory.getApp("MONTAGE"), AppFactory.getApp("MONTAGE"));
+    }
+
+    @Test
+    void releasedInstanceGeneratesSameWorkflow() throws Exception {
+        Application fresh = AppFactory.createApp("MONTAGE");
+        byte[] expected = generate(fresh, "-n", "50");
+
+        Application pooled = AppFactory.acquire("MONTAGE");
+        generate(pooled, "-n", "100", "-f", "20");
+        AppFactory.release("MONTAGE", pooled);
+
+        Application reused = AppFactory.acquire("MONTAGE");
+        Assertions.assertSame(pooled, reused);
+        Assertions.assertArrayEquals(expected, generate(reused, "-n", "50"));
+    }
+
+    /** A pooled instance forgets the arguments of the previous workflows, whatever their combination of options. */
+    @Test
+    void pooledInstanceForgetsArguments() throws Exception {
+        String[][] montage = {
+                {"--square", "1.5", "-p", "0.1"},
+                // needs a degree, which the previous workflow had
+                {"-p", "0.1", "-i", "20"},
+                {"-n", "60", "-f", "20"},
+                {"--square", "1", "-p", "0.05", "-i", "30"},
+                {"-n", "50"},
+        };
+        String[][] genome = {
+                {"-e", "chr1", "-n", "60"},
+                {"-n", "60"},
+                {"-l", "2", "-s", "3"},
+                {"-d", "5000000000"},
+        };
+        assertPooledMatchesFresh("MONTAGE", montage);
+        assertPooledMatchesFresh("GENOME", genome);
+    }
+
+    private static void assertPooledMatchesFresh(String appName, String[][] argumentSequence) throws Exception {
+        for (String[] args : argumentSequence) {
+            String expected = outcome(AppFactory.createApp(appName), args);
+            Application pooled = AppFactory.acquire(appName);
+            String actual = outcome(pooled, args);
+            AppFactory.release(appName, pooled);
+            Assertions.assertEquals(expected, actual, appName + " " + String.join(" ", args));
+        }
+    }
+
+    /** @return the workflow or the type of exception thrown while generating it */
+    private static String outcome(Application app, String... args) throws Exception {
+        try {
+            return new String(generate(app, args), "UTF-8");
+        } catch (RuntimeException e) {
+            return e.getClass().getName();
+        }
+    }
+
+    private static byte[] generate(Application app, String... args) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Misc.withSeed(1L, () -> app.generateWorkflow(args));
+        app.printWorkflow(out);
+        // ignore the timestamp and the user in the header
+        return out.toString("UTF-8").replaceAll("generated=\"[^\"]*\"|<!-- generated[^>]*-->", "").getBytes("UTF-8");
+    }
+}
@@ -0,0 +1,62 @@
+package simulation.generator.app;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class TaskGraphTest {
+
+    /** A diamond 0 → {1, 2} → 3 with a duplicate dependency and an independent task 4. */
+    @Test
+    void structuralStatistics() {
+        TaskGraph graph = new TaskGraph();
+        double[] runtimes = {1, 2, 5, 1, 3};
+        for (int task = 0; task < runtimes.length; task++) graph.setRuntime(graph.addTask(), runtimes[task]);
+        graph.addEdge(0, 1, 0);
+        graph.addEdge(0, 1, 0);
+        graph.addEdge(0, 2, 0);
+        graph.addEdge(1, 3, 0);
+        graph.addEdge(2, 3, 0);
+
+        WorkflowStatistics statistics = new WorkflowStatistics();
+        graph.analyze(statistics);
+        Assertions.assertEquals(7, statistics.criticalPathSeconds);
+        Assertions.assertEquals(3, statistics.depth);
+        Assertions.assertArrayEquals(new int[]{2, 2, 1}, statistics.levelWidths);
+        Assertions.assertEquals(2, statistics.maximumLevelWidth);
+        // tasks 1, 2 and 4 run in [1, 3)
+        Assertions.assertEquals(3, statistics.maximumParallelism);
+        Assertions.assertEquals(12. / 7, statistics.averageParallelism, 1e-12);
+        Assertions.assertEquals(2, statistics.maximumFanIn);
+        Assertions.assertEquals(2, statistics.maximumFanOut);
+
+        // the topology is reused, only the timing changes
+        for (int task = 0; task < runtimes.length; task++) graph.setRuntime(task, 2 * runtimes[task]);
+        graph.analyze(statistics);
+        Assertions.assertEquals(14, statistics.criticalPathSeconds);
+
+        graph.addEdge(3, 0, 0);
+        Assertions.assertThrows(IllegalStateException.class, () -> graph.analyze(new WorkflowStatistics()));
+    }
+
+    /** The diamond with transfer times: 0 → 1 passes two files (3 s in total), 0 → 2 takes 3 s and 2 → 3 takes 1 s. */
+    @Test
+    void ranks() {
+        TaskGraph graph = new TaskGraph();
+        double[] runtimes = {1, 2, 5, 1, 3};
+        for (int task = 0; task < runtimes.length; task++) graph.setRuntime(graph.addTask(), runtimes[task]);
+        graph.addEdge(0, 1, 100);
+        graph.addEdge(0, 1, 200);
+        graph.addEdge(0, 2, 300);
+        graph.addEdge(1, 3, 0);
+        int last = graph.addEdge(2, 3, 0);
+        graph.setEdgeBytes(last, 100);
+
+        double[][] ranks = graph.ranks(100);
+        Assertions.assertArrayEquals(new double[]{11, 3, 7, 1, 3}, ranks[0], 1e-12);
+        Assertions.assertArrayEquals(new double[]{0, 4, 4, 10, 0}, ranks[1], 1e-12);
+        Assertions.assertArrayEquals(new double[]{0, 4, 0, 0, 8}, ranks[2], 1e-12);
+
+        // without transfers, the upward rank of the entry task is the critical path
+        Assertions.assertArrayEquals(new double[]{7, 3, 6, 1, 3}, graph.ranks(Double.POSITIVE_INFINITY)[0], 1e-12);
+    }
+}
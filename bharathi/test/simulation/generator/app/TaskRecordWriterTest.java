@@ -0,0 +1,63 @@
+package simulation.generator.app;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import simulation.generator.util.Misc;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+class TaskRecordWriterTest {
+
+    @Test
+    void csvAndBinaryRecords() throws Exception {
+        VariantCalling app = new VariantCalling();
+        Misc.withSeed(1L, () -> app.generateWorkflow());
+        int numTasks = app.getStatistics().numberOfTasks;
+
+        ByteArrayOutputStream csv = new ByteArrayOutputStream();
+        try (TaskRecordWriter writer = new TaskRecordWriter(csv, TaskRecordWriter.Format.CSV)) {
+            writer.writeWorkflow(app);
+        }
+        String[] lines = new String(csv.toByteArray(), StandardCharsets.US_ASCII).split("\n");
+        Assertions.assertEquals(TaskRecordWriter.CSV_HEADER, lines[0]);
+        Assertions.assertEquals(numTasks + 1, lines.length);
+        AppJob first = app.getTasks(lines[1].split(",")[1])[0];
+        Assertions.assertEquals(String.join(",", first.getID(), first.getClass().getSimpleName(), Long.toString(first.getInputBytes()),
+                first.getAnnotation("peak_mem_bytes"), first.getAnnotation("runtime")), lines[1]);
+        // the runtimes are written as in the DAX
+        Map<String, AppJob> tasksById = new HashMap<>();
+        for (String type : app.getTasktypes()) for (AppJob task : app.getTasks(type)) tasksById.put(task.getID(), task);
+        for (int line = 1; line < lines.length; line++) {
+            String[] fields = lines[line].split(",", -1);
+            Assertions.assertEquals(tasksById.get(fields[0]).getAnnotation("runtime"), fields[4], lines[line]);
+        }
+
+        // two workflows in one stream
+        ByteArrayOutputStream binary = new ByteArrayOutputStream();
+        try (TaskRecordWriter writer = new TaskRecordWriter(binary, TaskRecordWriter.Format.BINARY)) {
+            writer.writeWorkflow(app);
+            writer.writeWorkflow(app);
+        }
+        List<TaskRecordWriter.Columns> workflows = TaskRecordWriter.Columns.readAll(new ByteArrayInputStream(binary.toByteArray()));
+        Assertions.assertEquals(2, workflows.size());
+        TaskRecordWriter.Columns columns = workflows.get(1);
+        Assertions.assertEquals(numTasks, columns.runtimes.length);
+        int i = 0;
+        for (int t = 0; t < columns.tasktypes.length; t++) {
+            AppJob[] tasks = app.getTasks(columns.tasktypes[t]);
+            Assertions.assertEquals(tasks.length, columns.tasksPerType[t]);
+            for (AppJob task : tasks) {
+                Assertions.assertEquals(task.getID(), columns.taskIds[i]);
+                Assertions.assertEquals(task.getInputBytes(), columns.inputBytes[i]);
+                Assertions.assertEquals(task.getPeakMemBytes(), columns.peakMemBytes[i]);
+                Assertions.assertEquals(task.getRuntime(), columns.runtimes[i]);
+                i++;
+            }
+        }
+    }
+}
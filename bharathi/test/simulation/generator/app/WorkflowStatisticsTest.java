@@ -0,0 +1,273 @@
+package simulation.generator.app;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import simulation.generator.util.LinearModel;
+import simulation.generator.util.Misc;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+class WorkflowStatisticsTest {
+
+    /** The maintained statistics match those computed from the annotations after tasks have been annotated several times. */
+    @Test
+    void incrementalStatistics() {
+        Montage app = new Montage();
+        Misc.withSeed(1L, () -> app.generateWorkflow("-n", "200"));
+        Assertions.assertThrows(IllegalStateException.class, app::getStatistics);
+
+        Random random = new Random(2L);
+        for (int round = 0; round < 3; round++) {
+            for (Iterator<?> jobs = app.getDAX().iterateJob(); jobs.hasNext(); ) {
+                AppJob task = (AppJob) jobs.next();
+                task.addAnnotation("peak_mem_bytes", Long.toString(1 + random.nextInt(1 << 30)));
+                if (random.nextBoolean()) task.addAnnotation("runtime", String.format("%.2f", 1 + 100 * random.nextDouble()));
+                for (AppFilename input : task.getInputs()) input.setSize(random.nextInt(1 << 20));
+            }
+            assertMatchesAnnotations(app);
+        }
+    }
+
+    /** Bulk transforms update the annotations and the statistics consistently. */
+    @Test
+    void bulkTransforms() {
+        Montage app = new Montage();
+        Misc.withSeed(1L, () -> app.generateWorkflow("-n", "200"));
+        Random random = new Random(2L);
+        for (Iterator<?> jobs = app.getDAX().iterateJob(); jobs.hasNext(); ) {
+            AppJob task = (AppJob) jobs.next();
+            task.addAnnotation("peak_mem_bytes", Long.toString(1 + random.nextInt(1 << 30)));
+            task.addAnnotation("runtime", Double.toString(1 + 100 * random.nextDouble()));
+        }
+        double runtime = app.getStatistics().totalRuntimeSeconds;
+
+        app.scaleRuntimes(null, 0.5);
+        Assertions.assertEquals(runtime / 2, app.getStatistics().totalRuntimeSeconds, 0.005 * app.getStatistics().numberOfTasks);
+        for (Iterator<?> jobs = app.getDAX().iterateJob(); jobs.hasNext(); ) {
+            Assertions.assertTrue(((AppJob) jobs.next()).getAnnotation("runtime").matches("\\d+\\.\\d\\d"));
+        }
+        assertMatchesAnnotations(app);
+
+        app.clipRuntimes("MProjectPP", 10, 20);
+        for (AppJob task : app.getTasks("MProjectPP")) Assertions.assertTrue(task.getRuntime() >= 10 && task.getRuntime() <= 20);
+        assertMatchesAnnotations(app);
+
+        app.scalePeakMemory(null, 1.5);
+        app.capPeakMemory("MDiffFit", 1L << 29);
+        Assertions.assertTrue(app.getStatistics().memoryUsagesPerTaskType.get("MDiffFit").getMax() <= 1L << 29);
+        assertMatchesAnnotations(app);
+
+        app.scaleInputSizes(null, 3);
+        assertMatchesAnnotations(app);
+        // the parents write the files with the sizes their children read
+        Set<AppFilename> outputs = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (Iterator<?> jobs = app.getDAX().iterateJob(); jobs.hasNext(); ) outputs.addAll(((AppJob) jobs.next()).getOutputs());
+        for (Iterator<?> jobs = app.getDAX().iterateJob(); jobs.hasNext(); ) {
+            for (AppFilename input : ((AppJob) jobs.next()).getInputs()) {
+                if (input.linkEdge < 0) continue;
+                Assertions.assertTrue(outputs.contains(input.linkedOutput), input.getFilename());
+                Assertions.assertEquals(input.getSize(), input.linkedOutput.getSize(), input.getFilename());
+            }
+        }
+
+        // batch annotation from a memory model, the statistics of the type are rebuilt once
+        AppJob[] diffs = app.getTasks("MDiffFit");
+        app.annotatePeakMemory("MDiffFit", new LinearModel(2d, 1e8, 1e6, 1e6, 3L));
+        LinearModel scalar = new LinearModel(2d, 1e8, 1e6, 1e6, 3L);
+        for (AppJob task : diffs) Assertions.assertEquals(scalar.generate(task.getInputBytes()), task.getPeakMemBytes());
+        assertMatchesAnnotations(app);
+
+        // runtime scaling without the tasks rounds like the tasks do
+        VariantCalling workflow = new VariantCalling();
+        Misc.withSeed(1L, () -> workflow.generateWorkflow());
+        VariantCalling statisticsOnly = new VariantCalling();
+        statisticsOnly.setStatisticsOnly(true);
+        Misc.withSeed(1L, () -> statisticsOnly.generateWorkflow());
+        for (double factor : new double[]{0.0013, 7.1}) {
+            workflow.scaleRuntimes(null, factor);
+            statisticsOnly.scaleRuntimes(null, factor);
+            WorkflowStatistics expected = workflow.getStatistics(), actual = statisticsOnly.getStatistics();
+            Assertions.assertEquals(expected.totalRuntimeSeconds, actual.totalRuntimeSeconds, 1e-9 * expected.totalRuntimeSeconds);
+            Assertions.assertEquals(expected.totalSpacetimeMegabyteSeconds, actual.totalSpacetimeMegabyteSeconds, 1e-9 * expected.totalSpacetimeMegabyteSeconds);
+        }
+        Assertions.assertThrows(IllegalStateException.class, () -> statisticsOnly.capPeakMemory(null, 1));
+    }
+
+    /** The arguments that repeat the peak memory follow the scaled annotations. */
+    @Test
+    void redrawRuntimes() {
+        Montage app = new Montage();
+        Misc.withSeed(1L, () -> app.generateWorkflow("-n", "200"));
+        for (String tasktype : app.getTasktypes()) app.annotatePeakMemory(tasktype, new LinearModel(2d, 1e8, 1e6, 1e6, 3L));
+        Misc.withSeed(5L, app::redrawRuntimes);
+        app.rebuildStatistics();
+        double[] runtimes = runtimes(app, "MProjectPP");
+        String statistics = app.getStatistics().toCsvRow("x");
+        assertMatchesAnnotations(app);
+
+        // the runtimes and the rebuilt statistics only depend on the seed, not on the values they replaced
+        Misc.withSeed(7L, app::redrawRuntimes);
+        app.scaleRuntimes(null, 3.3);
+        Assertions.assertFalse(Arrays.equals(runtimes, runtimes(app, "MProjectPP")));
+        Misc.withSeed(5L, app::redrawRuntimes);
+        app.rebuildStatistics();
+        Assertions.assertArrayEquals(runtimes, runtimes(app, "MProjectPP"));
+        Assertions.assertEquals(statistics, app.getStatistics().toCsvRow("x"));
+
+        // a constant distribution stays constant
+        VariantCalling workflow = new VariantCalling();
+        Misc.withSeed(1L, () -> workflow.generateWorkflow());
+        double untar = workflow.getTasks("VC_Untar")[0].getRuntime();
+        Misc.withSeed(2L, workflow::redrawRuntimes);
+        Assertions.assertEquals(untar, workflow.getTasks("VC_Untar")[0].getRuntime());
+    }
+
+    private static double[] runtimes(AbstractApplication app, String tasktype) {
+        AppJob[] tasks = app.getTasks(tasktype);
+        double[] runtimes = new double[tasks.length];
+        for (int i = 0; i < tasks.length; i++) runtimes[i] = tasks[i].getRuntime();
+        return runtimes;
+    }
+
+    @Test
+    void peakMemoryArgument() throws Exception {
+        VariantCalling app = new VariantCalling();
+        Misc.withSeed(1L, () -> app.generateWorkflow());
+        app.scalePeakMemory(null, 2.5);
+        ByteArrayOutputStream dax = new ByteArrayOutputStream();
+        app.printWorkflow(dax);
+
+        Matcher job = Pattern.compile("peak_mem_bytes=\"(\\d+)\"[^>]*>\\s*<argument>peak_mem_bytes=(\\d+),").matcher(dax.toString("UTF-8"));
+        int jobs = 0;
+        for (; job.find(); jobs++) Assertions.assertEquals(job.group(1), job.group(2));
+        Assertions.assertEquals(app.getDAX().getJobCount(), jobs);
+    }
+
+    @Test
+    void statisticsOnly() {
+        VariantCalling workflow = new VariantCalling();
+        Misc.withSeed(1L, () -> workflow.generateWorkflow());
+        VariantCalling statisticsOnly = new VariantCalling();
+        statisticsOnly.setStatisticsOnly(true);
+        Misc.withSeed(1L, () -> statisticsOnly.generateWorkflow());
+
+        // the structural statistics are not computed
+        String row = workflow.getStatistics().toCsvRow("vc");
+        String resources = row.substring(0, row.indexOf(String.valueOf(workflow.getStatistics().criticalPathSeconds)));
+        Assertions.assertEquals(resources + "NaN,-1,-1,-1,NaN,-1,-1,", statisticsOnly.getStatistics().toCsvRow("vc").replaceFirst("[^,]*$", ""));
+        Assertions.assertEquals(0, statisticsOnly.getDAX().getJobCount());
+        Assertions.assertEquals(0, statisticsOnly.getTasks("VC_Align").length);
+        Assertions.assertThrows(IllegalStateException.class, () -> statisticsOnly.printWorkflow(new ByteArrayOutputStream()));
+
+        // applications without memory annotations use the memory models of the task types
+        Montage montage = new Montage();
+        montage.setStatisticsOnly(true);
+        Map<String, LinearModel> memoryModels = new HashMap<>();
+        for (String tasktype : montage.getTasktypes()) memoryModels.put(tasktype, new LinearModel(1, 1e8, 1e6, 1e7, 3L));
+        Misc.withSeed(1L, () -> montage.generateWorkflow(memoryModels, "-n", "1000"));
+        Assertions.assertEquals(1000, montage.getStatistics().numberOfTasks, 10);
+
+        // peak memory annotated after generating the workflow gives the resource statistics of the retained tasks
+        Montage retained = new Montage(), streamed = new Montage();
+        streamed.setStatisticsOnly(true);
+        Misc.withSeed(1L, () -> retained.generateWorkflow("-n", "1000"));
+        Misc.withSeed(1L, () -> streamed.generateWorkflow("-n", "1000"));
+        Random random = new Random(3L);
+        for (String tasktype : retained.getTasktypes()) {
+            Assertions.assertEquals(retained.getNumTasks(tasktype), streamed.getNumTasks(tasktype), tasktype);
+            long[] bytes = new long[retained.getNumTasks(tasktype)];
+            for (int i = 0; i < bytes.length; i++) bytes[i] = 1 + random.nextInt(1 << 30);
+            retained.annotatePeakMemory(tasktype, bytes);
+            streamed.annotatePeakMemory(tasktype, bytes);
+        }
+        retained.scaleRuntimes(null, 0.37);
+        streamed.scaleRuntimes(null, 0.37);
+        String[] expected = retained.getStatistics().toCsvRow("montage").split(","), actual = streamed.getStatistics().toCsvRow("montage").split(",");
+        // all but the structural statistics
+        Assertions.assertArrayEquals(Arrays.copyOf(expected, 13), Arrays.copyOf(actual, 13));
+        Assertions.assertEquals(expected[expected.length - 1], actual[actual.length - 1]);
+    }
+
+    /** The built-in applications that don't annotate peak memory draw it from random memory models while the tasks are added. */
+    @Test
+    void statisticsOnlyRandomMemoryModels() throws Exception {
+        for (String name : new String[]{"CYBERSHAKE", "GENOME", "LIGO", "MONTAGE", "SIPHT"}) {
+            AbstractApplication workflow = (AbstractApplication) AppFactory.getApp(name);
+            Misc.withSeed(1L, () -> workflow.generateWorkflow("-n", "300"));
+            AbstractApplication statisticsOnly = (AbstractApplication) AppFactory.getApp(name);
+            statisticsOnly.setStatisticsOnly(true);
+            Misc.withSeed(1L, () -> statisticsOnly.generateWorkflow(LinearModel.randomMemoryModels(statisticsOnly.getTasktypes(), 2L), "-n", "300"));
+            WorkflowStatistics statistics = statisticsOnly.getStatistics();
+
+            // the models don't change the workflow
+            double runtime = 0;
+            for (Iterator<?> jobs = workflow.getDAX().iterateJob(); jobs.hasNext(); ) runtime += ((AppJob) jobs.next()).getRuntime();
+            Assertions.assertEquals(workflow.getDAX().getJobCount(), statistics.numberOfTasks, name);
+            Assertions.assertEquals(runtime, statistics.totalRuntimeSeconds, 1e-9 * runtime, name);
+            Assertions.assertEquals(-1, statistics.depth);
+
+            // each task got the next sample of the model of its type
+            Map<String, LinearModel> models = LinearModel.randomMemoryModels(statisticsOnly.getTasktypes(), 2L);
+            for (Map.Entry<String, Integer> type : statistics.numberOfTasksPerTaskType.entrySet()) {
+                double peakMemory = 0, inputs = 0;
+                for (int i = 0; i < type.getValue(); i++) {
+                    double[] sample = models.get(type.getKey()).nextSample();
+                    inputs += (long) sample[0];
+                    peakMemory += (long) sample[1];
+                }
+                Assertions.assertEquals(peakMemory, statistics.memoryUsagesPerTaskType.get(type.getKey()).getSum(), 1e-9 * peakMemory, type.getKey());
+                Assertions.assertEquals(inputs, statistics.inputSizesPerTaskType.get(type.getKey()).getSum(), 1e-9 * inputs, type.getKey());
+            }
+        }
+    }
+
+    private static void assertMatchesAnnotations(AbstractApplication app) {
+        WorkflowStatistics statistics = app.getStatistics();
+
+        int tasks = 0;
+        double runtime = 0, spacetime = 0, wastage = 0;
+        long maxPeakMem = 0, minPeakMem = Long.MAX_VALUE;
+        for (Iterator<?> jobs = app.getDAX().iterateJob(); jobs.hasNext(); tasks++) {
+            AppJob task = (AppJob) jobs.next();
+            double taskRuntime = Double.parseDouble(task.getAnnotation("runtime"));
+            long peakMem = Long.parseLong(task.getAnnotation("peak_mem_bytes"));
+            runtime += taskRuntime;
+            spacetime += taskRuntime * 1e-6 * peakMem;
+            maxPeakMem = Math.max(maxPeakMem, peakMem);
+            minPeakMem = Math.min(minPeakMem, peakMem);
+        }
+        for (Iterator<?> jobs = app.getDAX().iterateJob(); jobs.hasNext(); ) {
+            AppJob task = (AppJob) jobs.next();
+            wastage += Double.parseDouble(task.getAnnotation("runtime")) * 1e-6 * (maxPeakMem - Long.parseLong(task.getAnnotation("peak_mem_bytes")));
+        }
+
+        Assertions.assertEquals(tasks, statistics.numberOfTasks);
+        Assertions.assertEquals(runtime, statistics.totalRuntimeSeconds, 1e-9 * runtime);
+        Assertions.assertEquals(spacetime, statistics.totalSpacetimeMegabyteSeconds, 1e-9 * spacetime);
+        Assertions.assertEquals(maxPeakMem, statistics.maximumPeakMemoryBytes);
+        Assertions.assertEquals(minPeakMem, statistics.minimumPeakMemory);
+        Assertions.assertEquals(spacetime / (spacetime + wastage), statistics.memoryHeterogeneity, 1e-9);
+
+        for (String tasktype : statistics.numberOfTasksPerTaskType.keySet()) {
+            long inputMax = 0;
+            double inputSum = 0;
+            for (AppJob task : app.getTasks(tasktype)) {
+                long inputBytes = task.getInputs().stream().mapToLong(AppFilename::getSize).sum();
+                inputMax = Math.max(inputMax, inputBytes);
+                inputSum += inputBytes;
+            }
+            Assertions.assertEquals(inputMax, statistics.inputSizesPerTaskType.get(tasktype).getMax());
+            Assertions.assertEquals(inputSum, statistics.inputSizesPerTaskType.get(tasktype).getSum(), 1e-6 * inputSum + 1);
+        }
+    }
+}
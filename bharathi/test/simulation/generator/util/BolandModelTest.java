@@ -0,0 +1,51 @@
+package simulation.generator.util;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+class BolandModelTest {
+
+    private static final String HEADER = "lineage1,lineage2,lineage3,lineage4,lineage5,base_count,read_count,compressed_data_size,library_layout,library_strategy,library_source,name,execution_time,peak_mem_gb";
+
+    @Test
+    void firstAtLeast() {
+        double[] sorted = {1, 2, 2, 2, 5};
+        Assertions.assertEquals(0, BolandModel.firstAtLeast(sorted, 0));
+        Assertions.assertEquals(1, BolandModel.firstAtLeast(sorted, 2));
+        Assertions.assertEquals(4, BolandModel.firstAtLeast(sorted, 3));
+        Assertions.assertEquals(5, BolandModel.firstAtLeast(sorted, 6));
+    }
+
+    @Test
+    void parseAndGenerate(@TempDir Path dir) throws Exception {
+        // rows without compressed size or peak memory are skipped by generate, blank lines are no rows
+        StringBuilder csv = new StringBuilder(HEADER).append("\r\n");
+        for (int i = 1; i <= 40; i++) {
+            csv.append(String.format("a,b,c,d,e,%d,%d,%d,PAIRED,WGS,GENOMIC,run%d,%d.5,%s%n", 100 * i, 10 * i, 1000 * i, i, i, i / 10.));
+        }
+        csv.append("a,b,c,d,e,1,1,,PAIRED,WGS,GENOMIC,missing,1,1e0\n\n");
+        Path file = dir.resolve("traces.csv");
+        Files.write(file, csv.toString().getBytes(StandardCharsets.US_ASCII));
+
+        BolandModel.TraceData data = BolandModel.TraceData.parse(file);
+        Assertions.assertEquals(41, data.size());
+        Assertions.assertEquals(40, data.bySize.length);
+        Assertions.assertEquals(4.5, data.executionTime[3]);
+        Assertions.assertEquals(1.0, data.peakMemGb[40]);
+        Assertions.assertTrue(Double.isNaN(data.compressedDataSize[40]));
+
+        // the 16 traces nearest to 20500 have sizes 13000 to 28000
+        BolandModel model = new BolandModel(file, 1L);
+        for (int i = 0; i < 200; i++) {
+            long peakMem = model.generate(20_500);
+            Assertions.assertTrue(peakMem >= 1_299_999_999L && peakMem <= 2_800_000_000L, Long.toString(peakMem));
+        }
+        // beyond the largest trace, the 16 largest traces are drawn
+        Assertions.assertTrue(model.generate(1_000_000) >= 2_499_999_999L);
+    }
+}
@@ -0,0 +1,46 @@
+package simulation.generator.util;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+class KdTreeTest {
+
+    /** Range and nearest neighbor queries give the same results as scanning all points. */
+    @Test
+    void matchesLinearScan() {
+        Random random = new Random(1L);
+        double[][] points = new double[2000][3];
+        for (double[] point : points) {
+            for (int d = 0; d < point.length; d++) point[d] = random.nextDouble();
+            // duplicate coordinates exercise ties at the splits
+            point[2] = Math.round(point[2] * 10) / 10.;
+        }
+        KdTree tree = new KdTree(points);
+
+        for (int query = 0; query < 50; query++) {
+            double[] min = {random.nextDouble() / 2, Double.NEGATIVE_INFINITY, 0.3};
+            double[] max = {min[0] + 0.3, random.nextDouble(), 0.5};
+            List<Integer> found = new ArrayList<>();
+            tree.range(min, max, found::add);
+            int[] expected = IntStream.range(0, points.length).filter(i -> {
+                for (int d = 0; d < 3; d++) if (points[i][d] < min[d] || points[i][d] > max[d]) return false;
+                return true;
+            }).toArray();
+            Assertions.assertArrayEquals(expected, found.stream().mapToInt(Integer::intValue).sorted().toArray());
+
+            // only some dimensions, only even points
+            double[] target = {random.nextDouble(), Double.NaN, random.nextDouble()};
+            int[] nearest = tree.nearest(target, 10, i -> i % 2 == 0);
+            Integer[] all = IntStream.range(0, points.length).filter(i -> i % 2 == 0).boxed().toArray(Integer[]::new);
+            Arrays.sort(all, Comparator.<Integer>comparingDouble(i -> KdTree.squaredDistance(points[i], target)).thenComparingInt(i -> i));
+            Assertions.assertArrayEquals(Arrays.stream(all).limit(10).mapToInt(Integer::intValue).toArray(), nearest);
+        }
+    }
+}
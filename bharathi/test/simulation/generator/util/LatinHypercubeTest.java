@@ -0,0 +1,25 @@
+package simulation.generator.util;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+class LatinHypercubeTest {
+
+    @Test
+    void eachStratumHitOnce() {
+        int numPoints = 50;
+        double[][] design = LatinHypercube.sample(numPoints, 7, new Random(1L));
+        for (int d = 0; d < 7; d++) {
+            boolean[] hit = new boolean[numPoints];
+            for (double[] point : design) {
+                Assertions.assertTrue(point[d] >= 0 && point[d] < 1);
+                int stratum = (int) (point[d] * numPoints);
+                Assertions.assertFalse(hit[stratum], "stratum " + stratum + " hit twice in dimension " + d);
+                hit[stratum] = true;
+            }
+        }
+    }
+
+}
@@ -40,4 +40,26 @@ class LinearModelTest {
         }
     }
 
-}
\ No newline at end of file
+    @Test
+    void generateBatch() {
+        long[] inputSizes = new long[1000];
+        for (int i = 0; i < inputSizes.length; i++) inputSizes[i] = i * 1000000L;
+        long[] batch = new long[inputSizes.length];
+        new LinearModel(2d, 10d, 5e6, 1e6, 42L).generate(inputSizes, batch);
+        // same seed, same sequence of errors
+        LinearModel scalar = new LinearModel(2d, 10d, 5e6, 1e6, 42L);
+        for (int i = 0; i < inputSizes.length; i++) {
+            Assertions.assertEquals(scalar.generate(inputSizes[i]), batch[i]);
+        }
+    }
+
+    @Test
+    void randomModelSeed() {
+        double[] parameters = {0.3, 0.6, 0.1, 0.5, 0.5};
+        LinearModel first = LinearModel.randomMemoryModel(100, 100e3, 24e9, 0.5, 0.5, 2.0, parameters, 7L);
+        LinearModel second = LinearModel.randomMemoryModel(100, 100e3, 24e9, 0.5, 0.5, 2.0, parameters, 7L);
+        Assertions.assertArrayEquals(first.getSamples()[0], second.getSamples()[0]);
+        Assertions.assertArrayEquals(first.getSamples()[1], second.getSamples()[1]);
+    }
+
+}
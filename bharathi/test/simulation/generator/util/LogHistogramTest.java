@@ -0,0 +1,71 @@
+package simulation.generator.util;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+class LogHistogramTest {
+
+    @Test
+    void quantilesWithinRelativeAccuracy() {
+        Random random = new Random(1L);
+        double[] values = new double[100_000];
+        LogHistogram histogram = new LogHistogram();
+        for (int i = 0; i < values.length; i++) {
+            // peak memory like values, spanning several orders of magnitude
+            values[i] = Math.exp(20 + 3 * random.nextGaussian());
+            histogram.addValue(values[i]);
+        }
+        Arrays.sort(values);
+        for (double q : new double[]{0, 0.01, 0.5, 0.95, 0.99, 1}) {
+            double exact = values[(int) (q * (values.length - 1))];
+            Assertions.assertEquals(exact, histogram.getQuantile(q), LogHistogram.DEFAULT_RELATIVE_ACCURACY * exact, "quantile " + q);
+        }
+    }
+
+    @Test
+    void mergeAndRemove() {
+        LogHistogram all = new LogHistogram(), first = new LogHistogram(), second = new LogHistogram();
+        Random random = new Random(2L);
+        for (int i = 0; i < 1000; i++) {
+            double value = random.nextInt(1 << 20);
+            all.addValue(value);
+            (i % 2 == 0 ? first : second).addValue(value);
+        }
+        Assertions.assertEquals(all, first.copy().merge(second));
+
+        first.addValue(1e12);
+        first.addValue(0);
+        first.removeValue(1e12);
+        first.removeValue(0);
+        Assertions.assertEquals(all, first.merge(second));
+
+        Assertions.assertThrows(IllegalArgumentException.class, () -> all.merge(new LogHistogram(0.05)));
+    }
+
+    /** Sketches written by different processes can be read and merged into the sketch of all values. */
+    @Test
+    void serializeAndMerge() {
+        Random random = new Random(3L);
+        DistributionSketch all = new DistributionSketch(), merged = new DistributionSketch();
+        for (int part = 0; part < 4; part++) {
+            DistributionSketch sketch = new DistributionSketch();
+            for (int i = 0; i < 1000 * part; i++) {
+                double value = i % 10 == 0 ? 0 : Math.exp(15 + 2 * random.nextGaussian());
+                sketch.addValue(value);
+                all.addValue(value);
+            }
+            String serialized = sketch.serialize();
+            Assertions.assertFalse(serialized.contains(","));
+            merged.merge(DistributionSketch.parse(serialized));
+        }
+        Assertions.assertEquals(all.getN(), merged.getN());
+        Assertions.assertEquals(all.getMean(), merged.getMean(), 1e-9 * all.getMean());
+        Assertions.assertEquals(all.getVariance(), merged.getVariance(), 1e-9 * all.getVariance());
+        Assertions.assertEquals(all.getMax(), merged.getMax());
+        for (double q : new double[]{0, 0.5, 0.95, 0.99, 1}) Assertions.assertEquals(all.getQuantile(q), merged.getQuantile(q), "quantile " + q);
+        Assertions.assertEquals(new LogHistogram(), LogHistogram.parse(new LogHistogram().serialize()));
+    }
+}
@@ -0,0 +1,30 @@
+package simulation.generator.util;
+
+import org.apache.commons.math.stat.descriptive.DescriptiveStatistics;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+class MomentsTest {
+
+    @Test
+    void mergeEqualsSequential() {
+        Random random = new Random(3L);
+        DescriptiveStatistics reference = new DescriptiveStatistics();
+        Moments[] parts = {new Moments(), new Moments(), new Moments()};
+        for (int i = 0; i < 1000; i++) {
+            double value = 1e9 + random.nextGaussian() * 1e7;
+            reference.addValue(value);
+            parts[i % 7 == 0 ? 0 : i % 2 + 1].addValue(value);
+        }
+        Moments merged = new Moments().merge(parts[0]).merge(parts[1]).merge(parts[2]);
+
+        Assertions.assertEquals(reference.getN(), merged.getN());
+        Assertions.assertEquals(reference.getMean(), merged.getMean(), 1e-3);
+        Assertions.assertEquals(reference.getVariance(), merged.getVariance(), reference.getVariance() * 1e-9);
+        Assertions.assertEquals(reference.getMin(), merged.getMin());
+        Assertions.assertEquals(reference.getMax(), merged.getMax());
+    }
+
+}